@@ -45,62 +45,54 @@ public class ParseXML {
             doc.getDocumentElement().normalize();
             NodeList nList = doc.getElementsByTagNameNS("http://www.loc.gov/zing/srw/","recordData");
 
+            // A single builder is reused for every record of the page
+            BookApi.Builder bookBuilder = BookApi.builder();
             for(int i=0; i<nList.getLength(); i++){
                 NodeList nodes = nList.item(i).getChildNodes();
                 for(int j=0; j<nodes.getLength(); j++){
                     if(nodes.item(j).getNodeName().equals("oai_dc:dc")){
-                        BookApi bookApi = new BookApi();
+                        bookBuilder.reset();
                         NodeList recordDatas = nodes.item(j).getChildNodes();
                         for(int k=0; k<recordDatas.getLength(); k++){
+                            String text = recordDatas.item(k).getTextContent();
                             switch(recordDatas.item(k).getNodeName()) {
                                 case "dc:identifier":
-                                    List<String> identifiers = bookApi.getIdentifiers();
-                                    if(recordDatas.item(k).getTextContent().contains("ISBN")){
-                                        bookApi.setIsbn(recordDatas.item(k).getTextContent().replace("ISBN ", ""));
+                                    if(text.contains("ISBN")){
+                                        bookBuilder.isbn(text.replace("ISBN ", ""));
                                     }else{
-                                        identifiers.add(recordDatas.item(k).getTextContent());
-                                        bookApi.setIdentifiers(identifiers);
+                                        bookBuilder.addIdentifier(text);
                                     }
                                     break;
                                 case "dc:creator":
-                                    List<String> authors = bookApi.getAuthors();
-                                    authors.add(recordDatas.item(k).getTextContent());
-                                    bookApi.setAuthors(authors);
+                                    bookBuilder.addAuthor(text);
                                     break;
                                 case "dc:title":
-                                    bookApi.setTitle(recordDatas.item(k).getTextContent());
+                                    bookBuilder.title(text);
                                     break;
                                 case "dc:publisher":
-                                    bookApi.setPublisher(recordDatas.item(k).getTextContent());
+                                    bookBuilder.publisher(text);
                                     break;
                                 case "dc:language":
-                                    List<String> languages = bookApi.getLanguages();
-                                    languages.add(recordDatas.item(k).getTextContent());
-                                    bookApi.setLanguages(languages);
+                                    bookBuilder.addLanguage(text);
+                                    break;
                                 case "dc:type":
-                                    List<String> types = bookApi.getTypes();
-                                    types.add(recordDatas.item(k).getTextContent());
-                                    bookApi.setTypes(types);
+                                    bookBuilder.addType(text);
                                     break;
                                 case "dc:format":
-                                    bookApi.setFormat(recordDatas.item(k).getTextContent());
+                                    bookBuilder.format(text);
                                     break;
                                 case "dc:date":
-                                    bookApi.setDate(recordDatas.item(k).getTextContent());
+                                    bookBuilder.date(text);
                                     break;
                                 case "dc:rights":
-                                    List<String> rights = bookApi.getRights();
-                                    rights.add(recordDatas.item(k).getTextContent());
-                                    bookApi.setRights(rights);
+                                    bookBuilder.addRight(text);
                                     break;
                                 default:
                                     break;
                             }
                         }
-                        if(bookApi.getIsbn().isEmpty()){
-                            continue;
-                        }else{
-                            bookApis.add(bookApi);
+                        if(!bookBuilder.getIsbn().isEmpty()){
+                            bookApis.add(bookBuilder.build());
                         }
                     }
                 }
@@ -0,0 +1,127 @@
+package com.example.cybooks.gui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.concurrent.Task;
+
+/**
+ * Runs the operations of the window away from the JavaFX Application Thread, each on its own virtual thread,
+ * so the window keeps responding while an operation waits for the database, the library server or the BNF.
+ * The results and failures are handed back on the JavaFX Application Thread, where the window can be updated.
+ * All the methods must be called on the JavaFX Application Thread.
+ */
+class BackgroundTasks {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // The running tasks with their descriptions, in the order they were started
+    private final Map<Task<?>, String> running = new LinkedHashMap<>();
+    private final ReadOnlyBooleanWrapper busy = new ReadOnlyBooleanWrapper(false);
+    private final ReadOnlyStringWrapper status = new ReadOnlyStringWrapper("");
+
+    /**
+     * Runs an operation in the background.
+     *
+     * @param description The description of the operation, shown while it runs.
+     * @param operation   The operation, which must not touch the window.
+     * @param onSuccess   Called on the JavaFX Application Thread with the result of the operation.
+     * @param onFailure   Called on the JavaFX Application Thread with the exception of the operation.
+     * @param <T>         The type of the result.
+     * @return The task of the operation.
+     */
+    <T> Task<T> submit(String description, Callable<T> operation, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        Task<T> task = new Task<>() {
+            @Override
+            protected T call() throws Exception {
+                T result = operation.call();
+                // A cancelled operation runs to its end, but its result is dropped
+                return isCancelled() ? null : result;
+            }
+        };
+        task.setOnSucceeded(e -> onSuccess.accept(task.getValue()));
+        task.setOnFailed(e -> onFailure.accept(task.getException()));
+        return execute(description, task);
+    }
+
+    /**
+     * Runs a task in the background, such as a task reporting its own progress.
+     * The handlers of the task are called on the JavaFX Application Thread.
+     *
+     * @param description The description of the task, shown while it runs.
+     * @param task        The task.
+     * @param <T>         The type of the result.
+     * @return The task.
+     */
+    <T> Task<T> execute(String description, Task<T> task) {
+        // The task is removed before its own handlers run, so they see the state without it
+        task.stateProperty().addListener((observable, oldState, newState) -> {
+            if (task.isDone()) {
+                running.remove(task);
+                update();
+            }
+        });
+        running.put(task, description);
+        update();
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Cancels all the running operations. Their results are dropped, and the operations checking
+     * {@link Task#isCancelled()} stop at their next check.
+     * The threads are never interrupted: interrupting a virtual thread blocked in a read of the database
+     * closes its socket, which would close the connection shared by the whole window.
+     */
+    void cancelAll() {
+        for (Task<?> task : running.keySet().toArray(new Task<?>[0])) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Cancels the running operations and refuses new ones, without interrupting them.
+     */
+    void shutdown() {
+        cancelAll();
+        executor.shutdown();
+    }
+
+    /**
+     * Gets whether operations are running.
+     *
+     * @return The property, true while at least one operation runs.
+     */
+    ReadOnlyBooleanProperty busyProperty() {
+        return busy.getReadOnlyProperty();
+    }
+
+    /**
+     * Gets the description of the running operations.
+     *
+     * @return The property, empty when no operation runs.
+     */
+    ReadOnlyStringProperty statusProperty() {
+        return status.getReadOnlyProperty();
+    }
+
+    /**
+     * Updates the busy flag and the status after a task started or ended.
+     */
+    private void update() {
+        busy.set(!running.isEmpty());
+        if (running.isEmpty()) {
+            status.set("");
+        } else if (running.size() == 1) {
+            status.set(running.values().iterator().next() + "...");
+        } else {
+            status.set(running.size() + " operations running...");
+        }
+    }
+}
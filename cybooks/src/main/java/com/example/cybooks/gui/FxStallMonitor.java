@@ -0,0 +1,105 @@
+package com.example.cybooks.gui;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+
+/**
+ * Reports the stalls of the JavaFX Application Thread, when it does not process its events for longer than a threshold.
+ * A watchdog thread posts a heartbeat to the application thread and measures how long it waits before running.
+ * When a heartbeat is late, the stack of the application thread is printed once, to show what blocks it,
+ * and the length of the stall is printed when the heartbeat finally runs.
+ */
+class FxStallMonitor {
+    private final long thresholdNanos;
+    private final long checkMillis;
+    private ScheduledExecutorService watchdog;
+    private volatile Thread fxThread;
+    // The time the pending heartbeat was posted, 0 when none is pending
+    private volatile long postedAt;
+    private volatile boolean reported;
+    private volatile int stalls;
+
+    /**
+     * Constructs a monitor.
+     *
+     * @param thresholdMillis The longest wait of a heartbeat that is not a stall, in milliseconds.
+     * @param checkMillis     The delay between two checks of the watchdog, in milliseconds.
+     */
+    FxStallMonitor(long thresholdMillis, long checkMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.checkMillis = checkMillis;
+    }
+
+    /**
+     * Starts watching the JavaFX Application Thread.
+     */
+    synchronized void start() {
+        if (watchdog != null) {
+            return;
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fx-stall-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Platform.runLater(() -> fxThread = Thread.currentThread());
+        watchdog.scheduleWithFixedDelay(() -> {
+            try {
+                check();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching and prints the number of stalls seen.
+     */
+    synchronized void stop() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+            watchdog = null;
+            System.out.println("JavaFX thread stalls over " + TimeUnit.NANOSECONDS.toMillis(thresholdNanos) + " ms: " + stalls);
+        }
+    }
+
+    /**
+     * Posts a heartbeat if none is pending, or reports the pending one if it is late.
+     */
+    private void check() {
+        long pending = postedAt;
+        long now = System.nanoTime();
+        if (pending == 0) {
+            reported = false;
+            postedAt = now;
+            Platform.runLater(this::beat);
+        } else if (!reported && now - pending > thresholdNanos) {
+            reported = true;
+            Thread thread = fxThread;
+            if (thread != null) {
+                StringBuilder stack = new StringBuilder("JavaFX thread blocked for more than "
+                        + TimeUnit.NANOSECONDS.toMillis(now - pending) + " ms in:");
+                StackTraceElement[] frames = thread.getStackTrace();
+                for (int i = 0; i < Math.min(frames.length, 12); i++) {
+                    stack.append("\n\tat ").append(frames[i]);
+                }
+                System.out.println(stack);
+            }
+        }
+    }
+
+    /**
+     * Runs on the JavaFX Application Thread when the heartbeat is processed.
+     */
+    private void beat() {
+        long waited = System.nanoTime() - postedAt;
+        if (waited > thresholdNanos) {
+            stalls++;
+            System.out.println("JavaFX thread stalled for " + TimeUnit.NANOSECONDS.toMillis(waited) + " ms.");
+        }
+        postedAt = 0;
+    }
+}
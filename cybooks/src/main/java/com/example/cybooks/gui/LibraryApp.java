@@ -1,22 +1,36 @@
 package com.example.cybooks.gui;
 
+import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import com.example.cybooks.manager.LibraryManager;
+import com.example.cybooks.manager.LibraryService;
+import com.example.cybooks.model.BookApi;
 import com.example.cybooks.model.DataBase;
-import com.example.cybooks.model.User;
+import com.example.cybooks.model.ExportReport;
+import com.example.cybooks.model.LoanFilter;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.SearchResult;
+import com.example.cybooks.server.LibraryClient;
+import com.example.cybooks.utils.Config;
+import com.example.cybooks.utils.RowEncoder;
 
 import javafx.application.Application;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 /**
@@ -24,8 +38,10 @@ import javafx.stage.Stage;
 * This class is responsible for initializing the application and setting up the user interface.
 */
 public class LibraryApp extends Application {
-    private LibraryManager libraryManager;
+    private LibraryService libraryManager;
     private VBox centerBox;
+    private final BackgroundTasks tasks = new BackgroundTasks();
+    private final FxStallMonitor stallMonitor = new FxStallMonitor(Config.FX_STALL_THRESHOLD_MILLIS, Config.FX_STALL_CHECK_MILLIS);
 
     /**
     * The main method that launches the application.
@@ -41,11 +57,7 @@ public class LibraryApp extends Application {
     */
     @Override
     public void start(@SuppressWarnings("exports") Stage primaryStage) {
-        // Initialize the LibraryManager with your database connection
-        DataBase db = new DataBase(); 
-        libraryManager = new LibraryManager(db);
-        db.startServer();
-       
+        stallMonitor.start();
         primaryStage.setTitle("Library Management System");
 
         // Create main buttons
@@ -65,8 +77,20 @@ public class LibraryApp extends Application {
         Label footerLabel = new Label("CY-BOOKS © 2024");
         footerLabel.getStyleClass().add("footer");
 
+        // Status bar, shown while operations run in the background
+        ProgressIndicator progressIndicator = new ProgressIndicator();
+        progressIndicator.setPrefSize(18, 18);
+        Label statusLabel = new Label();
+        statusLabel.textProperty().bind(tasks.statusProperty());
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(e -> tasks.cancelAll());
+        HBox statusBox = new HBox(10, progressIndicator, statusLabel, cancelButton);
+        statusBox.setAlignment(Pos.CENTER);
+        statusBox.visibleProperty().bind(tasks.busyProperty());
+        statusBox.managedProperty().bind(tasks.busyProperty());
+
         // VBox to hold footer
-        VBox footerBox = new VBox(footerLabel);
+        VBox footerBox = new VBox(5, statusBox, footerLabel);
         footerBox.setAlignment(Pos.CENTER);
 
         // VBox to display operation buttons
@@ -92,6 +116,69 @@ public class LibraryApp extends Application {
         
 
         primaryStage.show();
+
+        // Works on the database directly, or through the library server when one is configured.
+        // The library is loaded in the background, and the menu is enabled once it is ready.
+        mainButtonsBox.setDisable(true);
+        Task<Void> loading = tasks.submit("Loading the library", () -> {
+            LibraryService service;
+            if (Config.SERVER_URL.isEmpty()) {
+                DataBase db = new DataBase();
+                service = new LibraryManager(db);
+                db.startServer();
+            } else {
+                service = new LibraryClient(Config.SERVER_URL);
+            }
+            service.initialize();
+            libraryManager = service;
+            return null;
+        }, result -> mainButtonsBox.setDisable(false), error -> showAlert("Error", "The library could not be loaded: " + error.getMessage()));
+        loading.setOnCancelled(e -> showAlert("Error", "The library was not loaded. Restart the application."));
+    }
+
+    /**
+    * The stop method is called when the application is closed.
+    * It cancels the operations still running and stops the background tasks of the library.
+    */
+    @Override
+    public void stop() {
+        tasks.shutdown();
+        stallMonitor.stop();
+        if (libraryManager != null) {
+            libraryManager.shutdown();
+        }
+    }
+
+    /**
+    * This method is used to run an operation of the library in the background, so the window keeps responding.
+    * The trigger is disabled while the operation runs, and an alert shows the error if the operation fails.
+    * @param trigger the control that started the operation, or null
+    * @param description the description of the operation, shown in the status bar
+    * @param operation the operation, which must not touch the window
+    * @param onSuccess called on the JavaFX thread with the result of the operation
+    */
+    private <T> void runInBackground(Node trigger, String description, Callable<T> operation, Consumer<T> onSuccess) {
+        if (trigger != null) {
+            trigger.setDisable(true);
+        }
+        Task<T> task = tasks.submit(description, operation, result -> {
+            enable(trigger);
+            onSuccess.accept(result);
+        }, error -> {
+            enable(trigger);
+            showAlert("Error", error instanceof NumberFormatException ? "Invalid number: " + error.getMessage() : error.getMessage());
+        });
+        task.setOnCancelled(e -> enable(trigger));
+    }
+
+    /**
+    * This method is used to enable again the control of an operation once it is finished.
+    * @param trigger the control, or null
+    */
+    private void enable(Node trigger) {
+        if (trigger != null) {
+            trigger.setDisable(false);
+        }
     }
 
     /**
@@ -138,13 +225,13 @@ public class LibraryApp extends Application {
             String email = emailField.getText();
             String address = addressField.getText();
 
-            try {
+            runInBackground(submitButton, "Registering the user", () -> {
                 libraryManager.registerUser(name, email, address);
+                return null;
+            }, result -> {
                 showAlert("Success", "User registered successfully!");
                 dialog.close();
-            } catch (Exception ex) {
-                showAlert("Error", ex.getMessage());
-            }
+            });
         });
 
         VBox dialogVBox = new VBox(10, nameField, emailField, addressField, submitButton);
@@ -178,18 +265,18 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
 
         submitButton.setOnAction(e -> {
-            int userId = Integer.parseInt(idField.getText());
+            String userId = idField.getText();
             String name = nameField.getText();
             String email = emailField.getText();
             String address = addressField.getText();
 
-            try {
-                libraryManager.updateUser(userId, name, email, address);
+            runInBackground(submitButton, "Updating the user", () -> {
+                libraryManager.updateUser(Integer.parseInt(userId.trim()), name, email, address);
+                return null;
+            }, result -> {
                 showAlert("Success", "User updated successfully!");
                 dialog.close();
-            } catch (Exception ex) {
-                showAlert("Error", ex.getMessage());
-            }
+            });
         });
 
         VBox dialogVBox = new VBox(10, idField, nameField, emailField, addressField, submitButton);
@@ -214,15 +301,15 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
 
         submitButton.setOnAction(e -> {
-            int userId = Integer.parseInt(idField.getText());
+            String userId = idField.getText();
 
-            try {
-                libraryManager.deleteUser(userId);
+            runInBackground(submitButton, "Deleting the user", () -> {
+                libraryManager.deleteUser(Integer.parseInt(userId.trim()));
+                return null;
+            }, result -> {
                 showAlert("Success", "User deleted successfully!");
                 dialog.close();
-            } catch (Exception ex) {
-                showAlert("Error", ex.getMessage());
-            }
+            });
         });
 
         VBox dialogVBox = new VBox(10, idField, submitButton);
@@ -260,16 +347,9 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
     
         submitButton.setOnAction(e -> {
-            User user = null;
-            try{
-                int userId = Integer.parseInt(IdField.getText());
-                user = libraryManager.searchUser(userId);
-            }
-            catch (Exception ex){
-                showAlert("Error", ex.getMessage());
-            }
-    
-            if (user != null) {
+            String userId = IdField.getText();
+            runInBackground(submitButton, "Searching for the user",
+                    () -> libraryManager.searchUser(Integer.parseInt(userId.trim())), user -> {
                 TextArea loansTextArea = new TextArea(user.toString());
                 loansTextArea.setEditable(false);
                 loansTextArea.setWrapText(true);
@@ -284,7 +364,7 @@ public class LibraryApp extends Application {
                 dialogScene.getStylesheets().add(url.toExternalForm());
                 dialog2.setScene(dialogScene);
                 dialog2.show();
-            }
+            });
         });
     
         VBox dialogVBox = new VBox(10, IdField, submitButton);
@@ -310,16 +390,8 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
     
         submitButton.setOnAction(e -> {
-            User user = null;
-            try{
-                String userEmail = EmailField.getText();
-                user = libraryManager.searchUser(userEmail);
-            }
-            catch (Exception ex){
-                showAlert("Error", ex.getMessage());
-            }
-    
-            if (user != null) {
+            String userEmail = EmailField.getText();
+            runInBackground(submitButton, "Searching for the user", () -> libraryManager.searchUser(userEmail), user -> {
                 TextArea loansTextArea = new TextArea(user.toString());
                 loansTextArea.setEditable(false);
                 loansTextArea.setWrapText(true);
@@ -334,7 +406,7 @@ public class LibraryApp extends Application {
                 dialogScene.getStylesheets().add(url.toExternalForm());
                 dialog2.setScene(dialogScene);
                 dialog2.show();
-            }
+            });
         });
     
         VBox dialogVBox = new VBox(10, EmailField, submitButton);
@@ -360,19 +432,10 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
     
         submitButton.setOnAction(e -> {
-            User user = null;
-            String userLoans = null;
-            try{
-                int userId = Integer.parseInt(IdField.getText());
-                user = libraryManager.searchUser(userId);
-                userLoans = libraryManager.getUserLoans(userId);
-            }
-            catch (Exception ex){
-                showAlert("Error", ex.getMessage());
-            }
-    
-            if (user != null && userLoans != null) {
-                TextArea loansTextArea = new TextArea(user.toString() + "\nLoans:\n" + userLoans);
+            String userId = IdField.getText();
+            runInBackground(submitButton, "Loading the profile",
+                    () -> libraryManager.getPatronProfile(Integer.parseInt(userId.trim())), profile -> {
+                TextArea loansTextArea = new TextArea(profile.toString());
                 loansTextArea.setEditable(false);
                 loansTextArea.setWrapText(true);
     
@@ -386,7 +449,7 @@ public class LibraryApp extends Application {
                 dialogScene.getStylesheets().add(url.toExternalForm());
                 dialog2.setScene(dialogScene);
                 dialog2.show();
-            }
+            });
         });
     
         VBox dialogVBox = new VBox(10, IdField, submitButton);
@@ -448,44 +511,9 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
     
         submitButton.setOnAction(e -> {
-            String books = null;
-            try {
-                String isbn = ISBNField.getText();
-                books = libraryManager.searchBook(isbn, "isbn");
-            } catch (Exception ex) {
-                showAlert("Error", ex.getMessage());
-            }
-    
-            if (books != null) {
-                List<String> bookList = new ArrayList<>(Arrays.asList(books.split("(?=Title)"))); // split before each "Title"
-                
-                if (bookList.get(0).isEmpty()) { // if the first element is empty
-                    bookList.remove(0); // remove it
-                }
-    
-                Pagination pagination = new Pagination((int) Math.ceil((double) bookList.size() / 4), 0); 
-                pagination.getStyleClass().add("dialog-pagination");
-                pagination.setPageFactory((pageIndex) -> {
-                    int fromIndex = pageIndex * 4; 
-                    int toIndex = Math.min(fromIndex + 4, bookList.size()); 
-    
-                    ListView<String> listView = new ListView<>();
-                    listView.getStyleClass().add("dialog-listview");
-                    listView.setItems(FXCollections.observableArrayList(bookList.subList(fromIndex, toIndex)));
-                    return new BorderPane(listView);
-                });
-    
-                Stage dialog2 = new Stage();
-                dialog2.setTitle("View Book");
-    
-                VBox dialogVBox = new VBox(10, pagination);
-                dialogVBox.setAlignment(Pos.CENTER);
-                Scene dialogScene = new Scene(dialogVBox, 620, 400); 
-                URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
-                dialogScene.getStylesheets().add(url.toExternalForm());
-                dialog2.setScene(dialogScene);
-                dialog2.show();
-            }
+            String isbn = ISBNField.getText();
+            runInBackground(submitButton, "Searching the catalogue", () -> libraryManager.searchBook(isbn, "isbn"),
+                    books -> showBookResults(books, 620, 400));
         });
     
         VBox dialogVBox = new VBox(10, ISBNField, submitButton);
@@ -514,45 +542,9 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
 
         submitButton.setOnAction(e -> {
-            String books = null;
-            try{
-                String title = titleField.getText();
-                books = libraryManager.searchBook(title, "title");
-            }
-            catch (Exception ex){
-                showAlert("Error", ex.getMessage());
-            }
-
-            if (books != null) {
-                List<String> bookList = new ArrayList<>(Arrays.asList(books.split("(?=Title)"))); // split before each "Title"
-                
-                if (bookList.get(0).isEmpty()) { // if the first element is empty
-                    bookList.remove(0); // remove it
-                }
-
-                Pagination pagination = new Pagination((int) Math.ceil((double) bookList.size() / 4), 0);
-                pagination.getStyleClass().add("dialog-pagination");
-                pagination.setPageFactory((pageIndex) -> {
-                    int fromIndex = pageIndex * 4;
-                    int toIndex = Math.min(fromIndex + 4, bookList.size());
-
-                    ListView<String> listView = new ListView<>();
-                    listView.getStyleClass().add("dialog-listview");
-                    listView.setItems(FXCollections.observableArrayList(bookList.subList(fromIndex, toIndex)));
-                    return new BorderPane(listView);
-                });
-
-                Stage dialog2 = new Stage();
-                dialog2.setTitle("View Book");
-
-                VBox dialogVBox = new VBox(10, pagination);
-                dialogVBox.setAlignment(Pos.CENTER);
-                Scene dialogScene = new Scene(dialogVBox, 800, 425);
-                URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
-                dialogScene.getStylesheets().add(url.toExternalForm());
-                dialog2.setScene(dialogScene);
-                dialog2.show();
-            }
+            String title = titleField.getText();
+            runInBackground(submitButton, "Searching the catalogue", () -> libraryManager.searchBook(title, "title"),
+                    books -> showBookResults(books, 800, 425));
         });
 
         VBox dialogVBox = new VBox(10, titleField, submitButton);
@@ -581,44 +573,9 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
     
         submitButton.setOnAction(e -> {
-            String books = null;
-            try {
-                String author = AuthorField.getText();
-                books = libraryManager.searchBook(author, "author");
-            } catch (Exception ex) {
-                showAlert("Error", ex.getMessage());
-            }
-    
-            if (books != null) {
-                List<String> bookList = new ArrayList<>(Arrays.asList(books.split("(?=Title)"))); // split before each "Title"
-                
-                if (bookList.get(0).isEmpty()) { // if the first element is empty
-                    bookList.remove(0); // remove it
-                }
-    
-                Pagination pagination = new Pagination((int) Math.ceil((double) bookList.size() / 4), 0); 
-                pagination.getStyleClass().add("dialog-pagination");
-                pagination.setPageFactory((pageIndex) -> {
-                    int fromIndex = pageIndex * 4; 
-                    int toIndex = Math.min(fromIndex + 4, bookList.size()); 
-    
-                    ListView<String> listView = new ListView<>();
-                    listView.getStyleClass().add("dialog-listview");
-                    listView.setItems(FXCollections.observableArrayList(bookList.subList(fromIndex, toIndex)));
-                    return new BorderPane(listView);
-                });
-    
-                Stage dialog2 = new Stage();
-                dialog2.setTitle("View Book");
-    
-                VBox dialogVBox = new VBox(10, pagination);
-                dialogVBox.setAlignment(Pos.CENTER);
-                Scene dialogScene = new Scene(dialogVBox, 800, 425);
-                URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
-                dialogScene.getStylesheets().add(url.toExternalForm());
-                dialog2.setScene(dialogScene);
-                dialog2.show();
-            }
+            String author = AuthorField.getText();
+            runInBackground(submitButton, "Searching the catalogue", () -> libraryManager.searchBook(author, "author"),
+                    books -> showBookResults(books, 800, 425));
         });
     
         VBox dialogVBox = new VBox(10, AuthorField, submitButton);
@@ -648,44 +605,9 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
     
         submitButton.setOnAction(e -> {
-            String books = null;
-            try {
-                String date = DateField.getText();
-                books = libraryManager.searchBook(date, "date");
-            } catch (Exception ex) {
-                showAlert("Error", ex.getMessage());
-            }
-    
-            if (books != null) {
-                List<String> bookList = new ArrayList<>(Arrays.asList(books.split("(?=Title)"))); // split before each "Title"
-                
-                if (bookList.get(0).isEmpty()) { // if the first element is empty
-                    bookList.remove(0); // remove it
-                }
-    
-                Pagination pagination = new Pagination((int) Math.ceil((double) bookList.size() / 4), 0); 
-                pagination.getStyleClass().add("dialog-pagination");
-                pagination.setPageFactory((pageIndex) -> {
-                    int fromIndex = pageIndex * 4; 
-                    int toIndex = Math.min(fromIndex + 4, bookList.size()); 
-    
-                    ListView<String> listView = new ListView<>();
-                    listView.getStyleClass().add("dialog-listview");
-                    listView.setItems(FXCollections.observableArrayList(bookList.subList(fromIndex, toIndex)));
-                    return new BorderPane(listView);
-                });
-    
-                Stage dialog2 = new Stage();
-                dialog2.setTitle("View Book");
-    
-                VBox dialogVBox = new VBox(10, pagination);
-                dialogVBox.setAlignment(Pos.CENTER);
-                Scene dialogScene = new Scene(dialogVBox, 800, 425);
-                URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
-                dialogScene.getStylesheets().add(url.toExternalForm());
-                dialog2.setScene(dialogScene);
-                dialog2.show();
-            }
+            String date = DateField.getText();
+            runInBackground(submitButton, "Searching the catalogue", () -> libraryManager.searchBook(date, "date"),
+                    books -> showBookResults(books, 800, 425));
         });
     
         VBox dialogVBox = new VBox(10, DateField, submitButton);
@@ -697,6 +619,44 @@ public class LibraryApp extends Application {
         dialog.show();
     }
 
+    /**
+    * This method is used to show the books found by a search, 4 books per page.
+    * Only the books of the visible page are rendered as text.
+    * @param books the books found
+    * @param width the width of the dialog
+    * @param height the height of the dialog
+    */
+    private void showBookResults(SearchResult<BookApi> books, double width, double height) {
+        Pagination pagination = new Pagination(books.getPageCount(4), 0);
+        pagination.getStyleClass().add("dialog-pagination");
+        pagination.setPageFactory((pageIndex) -> {
+            ListView<BookApi> listView = new ListView<>();
+            listView.getStyleClass().add("dialog-listview");
+            listView.setCellFactory(list -> new ListCell<>() {
+                @Override
+                protected void updateItem(BookApi book, boolean empty) {
+                    super.updateItem(book, empty);
+                    setText(empty || book == null ? null : books.render(book));
+                }
+            });
+            listView.setItems(FXCollections.observableArrayList(books.getPage(pageIndex, 4)));
+            return new BorderPane(listView);
+        });
+
+        Label summaryLabel = new Label(books.toString());
+
+        Stage dialog2 = new Stage();
+        dialog2.setTitle("View Book");
+
+        VBox dialogVBox = new VBox(10, summaryLabel, pagination);
+        dialogVBox.setAlignment(Pos.CENTER);
+        Scene dialogScene = new Scene(dialogVBox, width, height);
+        URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
+        dialogScene.getStylesheets().add(url.toExternalForm());
+        dialog2.setScene(dialogScene);
+        dialog2.show();
+    }
+
     /**
     * This method is used to show a dialog for returning a book.
     * It creates a new dialog window with TextFields for the user ID and ISBN of the book, and a submit button.
@@ -717,16 +677,16 @@ public class LibraryApp extends Application {
         Button submitButton = new Button("Submit");
 
         submitButton.setOnAction(e -> {
-            int userId = Integer.parseInt(userIdField.getText());
+            String userId = userIdField.getText();
             String isbn = isbnField.getText();
 
-            try {
-                libraryManager.returnBook(userId, isbn);
+            runInBackground(submitButton, "Returning the book", () -> {
+                libraryManager.returnBook(Integer.parseInt(userId.trim()), isbn);
+                return null;
+            }, result -> {
                 showAlert("Success", "Book returned successfully!");
                 dialog.close();
-            } catch (Exception ex) {
-                showAlert("Error", ex.getMessage());
-            }
+            });
         });
 
         VBox dialogVBox = new VBox(10, userIdField, isbnField, submitButton);
@@ -740,18 +700,42 @@ public class LibraryApp extends Application {
 
     /**
     * This method is used to show a dialog with a list of all loaned books.
-    * It retrieves the list of loaned books and shows it in a TextArea in the dialog.
+    * It shows the loaned books page by page in a TextArea in the dialog.
     */
     private void showPrintLoanBookDialog() {
-        String books = libraryManager.viewLoans(true,false); // Modifier les paramètres selon vos besoins
-        TextArea booksTextArea = new TextArea(books);
-        booksTextArea.setEditable(false);
-        booksTextArea.setWrapText(true);
+        showLoanPagesDialog("View Books", cursor -> libraryManager.listLoans(LoanFilter.CURRENT, cursor, Config.LOAN_PAGE_SIZE));
+    }
+
+    /**
+    * This method is used to show a dialog with a list of loans, one page at a time.
+    * The first page is shown in a TextArea, and the "Load more" button appends the next page.
+    * @param title the title of the dialog
+    * @param pages the function returning the page of loans of a cursor
+    */
+    private void showLoanPagesDialog(String title, Function<String, LoanPage> pages) {
+        TextArea loansTextArea = new TextArea();
+        loansTextArea.setEditable(false);
+        loansTextArea.setWrapText(true);
+        Button moreButton = new Button("Load more");
+        String[] cursor = { null };
+
+        // The page is read in the background, then appended on the JavaFX thread
+        Runnable loadPage = () -> runInBackground(moreButton, "Loading loans", () -> pages.apply(cursor[0]), page -> {
+            StringBuilder text = new StringBuilder();
+            for (LoanPage.Item item : page.getItems()) {
+                text.append(item).append("\n");
+            }
+            loansTextArea.appendText(text.toString());
+            cursor[0] = page.getNextCursor();
+            moreButton.setDisable(!page.hasNext());
+        });
+        moreButton.setOnAction(e -> loadPage.run());
+        loadPage.run();
 
         Stage dialog = new Stage();
-        dialog.setTitle("View Books");
+        dialog.setTitle(title);
 
-        VBox dialogVBox = new VBox(10, booksTextArea);
+        VBox dialogVBox = new VBox(10, loansTextArea, moreButton);
         dialogVBox.setAlignment(Pos.CENTER);
         Scene dialogScene = new Scene(dialogVBox, 600, 400);
         URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
@@ -765,20 +749,25 @@ public class LibraryApp extends Application {
         Button btnLoanBook = new Button("Loan Book");
         Button btnPrintLoan = new Button("Print all Loan");
         Button btnReturnLoan = new Button("Print Overdue Loan");
-        Button btnRenewLoan = new Button("Print Most Loaned Books Last 30d");
+        Button btnRenewLoan = new Button("Renew Loan");
+        Button btnMostLoaned = new Button("Print Most Loaned Books Last 30d");
+        Button btnExportLoans = new Button("Export Loans");
 
         btnLoanBook.setOnAction(e -> showLoanBookDialog());
         btnPrintLoan.setOnAction(e -> showPrintLoanDialog());
         btnReturnLoan.setOnAction(e -> showReturnLoanDialog());
         btnRenewLoan.setOnAction(e -> showRenewLoanDialog());
+        btnMostLoaned.setOnAction(e -> showMostLoanedBooksDialog());
+        btnExportLoans.setOnAction(e -> showExportDialog(ExportReport.LOANS));
 
-        centerBox.getChildren().addAll(btnLoanBook,btnPrintLoan, btnReturnLoan, btnRenewLoan);
+        centerBox.getChildren().addAll(btnLoanBook,btnPrintLoan, btnReturnLoan, btnRenewLoan, btnMostLoaned, btnExportLoans);
     }
 
     /**
     * This method is used to show a dialog for loaning a book.
     * It creates a new dialog window with TextFields for the user ID and ISBN of the book, and a submit button.
     * When the submit button is clicked, it attempts to loan the book.
+    * Several ISBNs separated by commas are loaned together, and the outcome of each book is shown.
     * If the book is loaned successfully, it shows an alert with a success message.
     * If an error occurs during the loan, it shows an alert with the error message.
     */
@@ -790,21 +779,36 @@ public class LibraryApp extends Application {
             userIdField.setPromptText("User ID");
             userIdField.getStyleClass().add("dialog-textfield");
             TextField isbnField = new TextField();
-            isbnField.setPromptText("ISBN");
+            isbnField.setPromptText("ISBN, or several separated by commas");
             isbnField.getStyleClass().add("dialog-textfield");
             Button submitButton = new Button("Submit");
 
             submitButton.setOnAction(e -> {
-                int userId = Integer.parseInt(userIdField.getText());
+                String userId = userIdField.getText();
                 String isbn = isbnField.getText();
 
-                try {
-                    libraryManager.loanBook(userId, isbn);
+                if (isbn.contains(",")) {
+                    // Several ISBNs are loaned together, as one basket
+                    List<String> isbns = new ArrayList<>();
+                    for (String item : isbn.split(",")) {
+                        if (!item.isBlank()) {
+                            isbns.add(item.trim());
+                        }
+                    }
+                    runInBackground(submitButton, "Loaning the books",
+                            () -> libraryManager.checkoutBasket(Integer.parseInt(userId.trim()), isbns), result -> {
+                        showAlert("Loan Books", result.toString());
+                        dialog.close();
+                    });
+                    return;
+                }
+                runInBackground(submitButton, "Loaning the book", () -> {
+                    libraryManager.loanBook(Integer.parseInt(userId.trim()), isbn);
+                    return null;
+                }, result -> {
                     showAlert("Success", "Book loaned successfully!");
                     dialog.close();
-                } catch (Exception ex) {
-                    showAlert("Error", ex.getMessage());
-                }
+                });
             });
 
             VBox dialogVBox = new VBox(10, userIdField, isbnField, submitButton);
@@ -818,24 +822,10 @@ public class LibraryApp extends Application {
     
     /**
     * This method is used to show a dialog with a list of all loans.
-    * It retrieves the list of loans and shows it in a TextArea in the dialog.
+    * It shows the loans page by page in a TextArea in the dialog.
     */
     private void showPrintLoanDialog() {
-        String loans = libraryManager.viewLoans(false, false); // Modifier les paramètres selon vos besoins
-        TextArea loansTextArea = new TextArea(loans);
-        loansTextArea.setEditable(false);
-        loansTextArea.setWrapText(true);
-
-        Stage dialog = new Stage();
-        dialog.setTitle("View Loans");
-
-        VBox dialogVBox = new VBox(10, loansTextArea);
-        dialogVBox.setAlignment(Pos.CENTER);
-        Scene dialogScene = new Scene(dialogVBox, 600, 400);
-        URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
-        dialogScene.getStylesheets().add(url.toExternalForm());
-        dialog.setScene(dialogScene);
-        dialog.show();
+        showLoanPagesDialog("View Loans", cursor -> libraryManager.listLoans(LoanFilter.ALL, cursor, Config.LOAN_PAGE_SIZE));
     }
 
     /**
@@ -843,7 +833,14 @@ public class LibraryApp extends Application {
     * It retrieves the list of overdue loans and shows it in a TextArea in the dialog.
     */
     private void showReturnLoanDialog() {
-        String loans = libraryManager.viewLoans(true, true); // Modifier les paramètres selon vos besoins
+        runInBackground(null, "Loading overdue loans", () -> libraryManager.viewLoans(true, true), this::showLoansText);
+    }
+
+    /**
+    * This method is used to show a text of loans in a TextArea in a dialog.
+    * @param loans the text of the loans
+    */
+    private void showLoansText(String loans) {
         TextArea loansTextAreaa = new TextArea(loans);
         loansTextAreaa.setEditable(false);
         loansTextAreaa.setWrapText(true);
@@ -860,26 +857,106 @@ public class LibraryApp extends Application {
         dialog.show();
     }
 
+    /**
+    * This method is used to show a dialog for renewing loans.
+    * It creates a new dialog window with TextFields for the user ID and ISBN of the book, and a submit button.
+    * When the submit button is clicked, it renews the loan of the book, or all the loans of the user if the ISBN is empty,
+    * and shows an alert with the number of loans renewed.
+    */
+    private void showRenewLoanDialog() {
+        Stage dialog = new Stage();
+        dialog.setTitle("Renew Loan");
+
+        TextField userIdField = new TextField();
+        userIdField.setPromptText("User ID");
+        userIdField.getStyleClass().add("dialog-textfield");
+        TextField isbnField = new TextField();
+        isbnField.setPromptText("ISBN (empty to renew all loans)");
+        isbnField.getStyleClass().add("dialog-textfield");
+        Button submitButton = new Button("Submit");
+
+        submitButton.setOnAction(e -> {
+            String userId = userIdField.getText().trim();
+            String isbn = isbnField.getText().trim();
+            runInBackground(submitButton, "Renewing loans", () -> isbn.isEmpty()
+                    ? libraryManager.renewUserLoans(Integer.parseInt(userId))
+                    : libraryManager.renewLoan(Integer.parseInt(userId), isbn), result -> {
+                showAlert(result.getRenewed() > 0 ? "Success" : "Renewal", result.toString());
+                dialog.close();
+            });
+        });
+
+        VBox dialogVBox = new VBox(10, userIdField, isbnField, submitButton);
+        dialogVBox.setAlignment(Pos.CENTER);
+        Scene dialogScene = new Scene(dialogVBox, 300, 200);
+        URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
+        dialogScene.getStylesheets().add(url.toExternalForm());
+        dialog.setScene(dialogScene);
+        dialog.show();
+    }
+
     /**
     * This method is used to show a dialog with a list of the most loaned books in the last 30 days.
     * It retrieves the list of the most loaned books in the last 30 days and shows it in a TextArea in the dialog.
     */
-    private void showRenewLoanDialog() {
-        String loans = libraryManager.mostLoanedBooksLast30d(); // Modifier les paramètres selon vos besoins
-        TextArea loansTextAreaa = new TextArea(loans);
-        loansTextAreaa.setEditable(false);
-        loansTextAreaa.setWrapText(true);
+    private void showMostLoanedBooksDialog() {
+        runInBackground(null, "Loading the most loaned books", () -> libraryManager.mostLoanedBooksLast30d(), this::showLoansText);
+    }
+
+    /**
+    * This method is used to export a report to a file chosen by the user.
+    * The format is chosen from the extension of the file, CSV unless it ends with .jsonl.
+    * The export runs in the background while the dialog shows the progress, and can be cancelled.
+    * @param report the report to export
+    */
+    private void showExportDialog(ExportReport report) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export " + report.name().toLowerCase());
+        chooser.setInitialFileName(report.name().toLowerCase() + ".csv");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl"));
+        File file = chooser.showSaveDialog(null);
+        if (file == null) {
+            return;
+        }
+        RowEncoder encoder = RowEncoder.forFormat(file.getName().endsWith(".jsonl") ? "jsonl" : "csv");
+
+        Task<Long> task = new Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                return libraryManager.exportReport(report, file.toPath(), encoder,
+                        rows -> updateMessage(rows + " rows written..."), this::isCancelled);
+            }
+        };
+
+        Label progressLabel = new Label("Exporting...");
+        progressLabel.textProperty().bind(task.messageProperty());
+        Button cancelButton = new Button("Cancel");
+        // The export checks isCancelled between rows; interrupting it would close its database connection
+        cancelButton.setOnAction(e -> task.cancel(false));
 
         Stage dialog = new Stage();
-        dialog.setTitle("View Loans");
+        dialog.setTitle("Export");
+        task.setOnSucceeded(e -> {
+            dialog.close();
+            showAlert("Success", "Exported " + task.getValue() + " rows to " + file.getAbsolutePath());
+        });
+        task.setOnCancelled(e -> dialog.close());
+        task.setOnFailed(e -> {
+            dialog.close();
+            showAlert("Error", "Export failed: " + task.getException().getMessage());
+        });
 
-        VBox dialogVBox = new VBox(10, loansTextAreaa);
+        VBox dialogVBox = new VBox(10, progressLabel, cancelButton);
         dialogVBox.setAlignment(Pos.CENTER);
-        Scene dialogScene = new Scene(dialogVBox, 600, 400);
+        Scene dialogScene = new Scene(dialogVBox, 300, 150);
         URL url = getClass().getResource("/com/example/cybooks/gui/css/styles.css");
         dialogScene.getStylesheets().add(url.toExternalForm());
         dialog.setScene(dialogScene);
         dialog.show();
+
+        tasks.execute("Exporting " + report.name().toLowerCase(), task);
     }
 
     /**
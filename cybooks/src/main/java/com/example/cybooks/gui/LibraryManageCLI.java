@@ -1,7 +1,12 @@
 package com.example.cybooks.gui;
 
+import java.util.ArrayList;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import com.example.cybooks.exception.BookNotFoundException;
 import com.example.cybooks.exception.EmailAlreadyExistsException;
@@ -10,26 +15,49 @@ import com.example.cybooks.exception.NoCopyAvailableException;
 import com.example.cybooks.exception.UserHasLoansException;
 import com.example.cybooks.exception.UserNotFoundException;
 import com.example.cybooks.manager.LibraryManager;
+import com.example.cybooks.manager.LibraryService;
+import com.example.cybooks.model.CatalogHit;
 import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.ExportReport;
+import com.example.cybooks.model.ImportResult;
+import com.example.cybooks.model.LoanFilter;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.PatronProfile;
+import com.example.cybooks.model.RenewalResult;
+import com.example.cybooks.model.ReportPeriod;
+import com.example.cybooks.model.SearchResult;
 import com.example.cybooks.model.User;
-
+import com.example.cybooks.server.LibraryClient;
+import com.example.cybooks.utils.Config;
+import com.example.cybooks.utils.RowEncoder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
 /**
  * This class provides a command line interface to interact with the library management system.
  * It serves as a precursor to the development of a graphical interface using JavaFX.
  */
 public class LibraryManageCLI {
-    private DataBase db;
-    private LibraryManager libraryManager;
+    private LibraryService libraryManager;
 
     /**
      * Constructor to initialize the database and library manager.
      */
     public LibraryManageCLI() {
-        db = new DataBase();
-        db.startServer();
-        libraryManager = new LibraryManager(db);
+        // Works on the database directly, or through the library server when one is configured
+        if (Config.SERVER_URL.isEmpty()) {
+            DataBase db = new DataBase();
+            db.startServer();
+            libraryManager = new LibraryManager(db);
+        } else {
+            libraryManager = new LibraryClient(Config.SERVER_URL);
+        }
+        libraryManager.initialize();
     }
 
     /**
@@ -68,7 +96,7 @@ public class LibraryManageCLI {
                     searchBook(scanner);
                     break;
                 case 8:
-                    printAllLoans();
+                    printAllLoans(scanner);
                     break;
                 case 9:
                     printOverdueLoans(scanner);
@@ -77,12 +105,34 @@ public class LibraryManageCLI {
                     printUserProfile(scanner);
                     break;
                 case 11:
-                    printAllBookLoaned();
+                    printAllBookLoaned(scanner);
                     break;
                 case 12:
                     printMostLoanedBooksLast30d();
                     break;
                 case 13:
+                    printCirculationReport(scanner);
+                    break;
+                case 14:
+                    exportReport(scanner);
+                    break;
+                case 15:
+                    renewLoans(scanner);
+                    break;
+                case 16:
+                    generateOverdueNotices();
+                    break;
+                case 17:
+                    checkoutBasket(scanner);
+                    break;
+                case 18:
+                    returnCopies(scanner);
+                    break;
+                case 19:
+                    importUsers(scanner);
+                    break;
+                case 20:
+                    libraryManager.shutdown();
                     exit = true;
                     break;
                 default:
@@ -109,7 +159,14 @@ public class LibraryManageCLI {
         System.out.println("10. Print a user's profile.");
         System.out.println("11. Print all books loaned.");
         System.out.println("12. Print most loaned books in the last 30 days.");
-        System.out.println("13. Exit.");
+        System.out.println("13. Print circulation statistics.");
+        System.out.println("14. Export a report to a file.");
+        System.out.println("15. Renew loans.");
+        System.out.println("16. Write the overdue notices.");
+        System.out.println("17. Lend several books.");
+        System.out.println("18. Return several books by copy ID.");
+        System.out.println("19. Import users from a CSV file.");
+        System.out.println("20. Exit.");
     }
 
     /**
@@ -207,7 +264,42 @@ public class LibraryManageCLI {
         try {
             libraryManager.loanBook(userID, isbn);
             System.out.println("Loan added successfully.");
-        } catch (UserNotFoundException | NoCopyAvailableException e) {
+        } catch (UserNotFoundException | NoCopyAvailableException | IllegalArgumentException | IllegalStateException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lends several books to a user at once, and prints the outcome of each book.
+     *
+     * @param scanner the Scanner object for input
+     */
+    private void checkoutBasket(Scanner scanner) {
+        System.out.print("Enter user ID: ");
+        int userID = 0;
+        try {
+            userID = scanner.nextInt();
+            scanner.nextLine();  // Consume the newline character
+        } catch (InputMismatchException e) {
+            System.out.println("Invalid input. User ID must be an integer.");
+            scanner.nextLine();  // Consume the invalid input
+            return;
+        }
+        System.out.print("Enter the ISBNs, separated by commas: ");
+        List<String> isbns = new ArrayList<>();
+        for (String isbn : scanner.nextLine().split(",")) {
+            if (!isbn.isBlank()) {
+                isbns.add(isbn.trim());
+            }
+        }
+        if (isbns.isEmpty()) {
+            System.out.println("No ISBN entered.");
+            return;
+        }
+
+        try {
+            System.out.println(libraryManager.checkoutBasket(userID, isbns));
+        } catch (UserNotFoundException e) {
             System.out.println("Error: " + e.getMessage());
         }
     }
@@ -246,6 +338,78 @@ public class LibraryManageCLI {
         }
     }
 
+    /**
+     * Registers the users of a CSV file in bulk, and writes the rejected rows to an error report.
+     *
+     * @param scanner the Scanner object for input
+     */
+    private void importUsers(Scanner scanner) {
+        System.out.print("Enter the CSV file of users (with a name,email,address header): ");
+        Path csv = Paths.get(scanner.nextLine().trim());
+        System.out.print("Enter the error report file (leave empty for import-errors.csv): ");
+        String path = scanner.nextLine().trim();
+        Path errorReport = Paths.get(path.isEmpty() ? "import-errors.csv" : path);
+
+        try {
+            ImportResult result = libraryManager.importUsers(csv, errorReport,
+                    rows -> System.out.println(rows + " rows read..."));
+            System.out.println(result);
+            if (result.getRejected() > 0) {
+                System.out.println("The rejected rows are listed in " + errorReport.toAbsolutePath() + ".");
+            }
+        } catch (IOException e) {
+            System.out.println("Error: Import failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns several copies at once, such as the content of the returns bin.
+     * The copy IDs are read from a file, or scanned one per line until an empty line.
+     *
+     * @param scanner the Scanner object for input
+     */
+    private void returnCopies(Scanner scanner) {
+        System.out.print("Enter a file of copy IDs (leave empty to scan them here): ");
+        String path = scanner.nextLine().trim();
+        List<String> lines = new ArrayList<>();
+        if (!path.isEmpty()) {
+            try {
+                lines = Files.readAllLines(Paths.get(path));
+            } catch (IOException e) {
+                System.out.println("Error: Cannot read " + path + ": " + e.getMessage());
+                return;
+            }
+        } else {
+            System.out.println("Scan the copy IDs, one per line, and end with an empty line:");
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (line.isBlank()) {
+                    break;
+                }
+                lines.add(line);
+            }
+        }
+
+        List<Integer> copyIDs = new ArrayList<>();
+        for (String line : lines) {
+            for (String token : line.trim().split("[\\s,;]+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                try {
+                    copyIDs.add(Integer.parseInt(token));
+                } catch (NumberFormatException e) {
+                    System.out.println("Ignored invalid copy ID: " + token);
+                }
+            }
+        }
+        if (copyIDs.isEmpty()) {
+            System.out.println("No copy ID entered.");
+            return;
+        }
+        System.out.println(libraryManager.returnCopies(copyIDs));
+    }
+
     /**
      * Searches for a user by ID or email.
      *
@@ -344,8 +508,9 @@ public class LibraryManageCLI {
         String searchTerm = scanner.nextLine();
 
         try {
-            String result = libraryManager.searchBook2(searchTerm, searchType);
-            System.out.println(result);
+            // Hits are printed as they arrive, books held by the library first
+            SearchResult<CatalogHit> result = libraryManager.federatedSearch(searchTerm, searchType, hit -> System.out.println("\n" + hit));
+            System.out.println("\n" + result);
         } catch (BookNotFoundException e) {
             System.out.println("Error: " + e.getMessage());
         }
@@ -353,10 +518,34 @@ public class LibraryManageCLI {
 
     /**
      * Prints all loans.
+     *
+     * @param scanner the Scanner object for input
      */
-    private void printAllLoans() {
-        String result = libraryManager.viewLoans(false, false);
-        System.out.println(result);
+    private void printAllLoans(Scanner scanner) {
+        printLoanPages(scanner, cursor -> libraryManager.listLoans(LoanFilter.ALL, cursor, Config.LOAN_PAGE_SIZE));
+    }
+
+    /**
+     * Prints loans page by page, asking before each new page.
+     *
+     * @param scanner the Scanner object for input
+     * @param pages   the function returning the page of a cursor
+     */
+    private void printLoanPages(Scanner scanner, Function<String, LoanPage> pages) {
+        String cursor = null;
+        do {
+            LoanPage page = pages.apply(cursor);
+            for (LoanPage.Item item : page.getItems()) {
+                System.out.println(item);
+            }
+            cursor = page.getNextCursor();
+            if (cursor != null) {
+                System.out.print("Press Enter for the next page, or q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
+                }
+            }
+        } while (cursor != null);
     }
 
     /**
@@ -388,13 +577,14 @@ public class LibraryManageCLI {
         scanner.nextLine();  // Consume newline
 
         try {
-            User user = libraryManager.searchUser(userID);
-            String userLoans = libraryManager.getUserLoans(userID);
+            PatronProfile profile = libraryManager.getPatronProfile(userID);
 
             System.out.println("\nHere are the user's informations:");
-            System.out.println(user.toString() + "\n");
-            System.out.println("Here are the user's loans:");
-            System.out.println(userLoans);
+            System.out.println(profile);
+            System.out.print("Show the full loan history? (y/n): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                printLoanPages(scanner, cursor -> libraryManager.listUserLoans(userID, cursor, Config.LOAN_PAGE_SIZE));
+            }
 
         } catch (UserNotFoundException e) {
             System.out.println("Error: " + e.getMessage());
@@ -403,11 +593,132 @@ public class LibraryManageCLI {
 
     /**
      * Prints all books that are currently loaned.
+     *
+     * @param scanner the Scanner object for input
      */
-    private void printAllBookLoaned() {
+    private void printAllBookLoaned(Scanner scanner) {
         System.out.println("Here are all the books currently loaned:");
-        String result = libraryManager.viewLoans(true, false);
-        System.out.println(result);
+        printLoanPages(scanner, cursor -> libraryManager.listLoans(LoanFilter.CURRENT, cursor, Config.LOAN_PAGE_SIZE));
+    }
+
+    /**
+     * Prints the circulation statistics between two dates, per day, week or month.
+     *
+     * @param scanner the Scanner object for input
+     */
+    private void printCirculationReport(Scanner scanner) {
+        try {
+            System.out.print("Enter start date (YYYY-MM-DD): ");
+            LocalDate from = LocalDate.parse(scanner.nextLine().trim());
+            System.out.print("Enter end date (YYYY-MM-DD, leave empty for today): ");
+            String end = scanner.nextLine().trim();
+            LocalDate to = end.isEmpty() ? LocalDate.now() : LocalDate.parse(end);
+            System.out.print("Enter period (day, week or month): ");
+            ReportPeriod period = ReportPeriod.valueOf(scanner.nextLine().trim().toUpperCase());
+
+            System.out.println(libraryManager.circulationReport(from, to, period));
+            System.out.println(libraryManager.analyticsReport(to.getYear()));
+        } catch (DateTimeParseException e) {
+            System.out.println("Error: Invalid date format.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: Invalid period.");
+        }
+    }
+
+    /**
+     * Writes the overdue notices of today to the outbox directory.
+     */
+    private void generateOverdueNotices() {
+        int notices = libraryManager.generateOverdueNotices();
+        System.out.println(notices + " notice(s) written to " + Paths.get(Config.NOTICE_OUTBOX_DIR).toAbsolutePath());
+    }
+
+    /**
+     * Renews the loan of a book, all the loans of a user, or all the loans due on or before a date.
+     *
+     * @param scanner the Scanner object for input
+     */
+    private void renewLoans(Scanner scanner) {
+        System.out.println("Renew: 1. One loan, 2. All loans of a user, 3. All loans due by a date");
+        try {
+            int choice = scanner.nextInt();
+            scanner.nextLine();
+            RenewalResult result;
+            switch (choice) {
+                case 1:
+                    System.out.print("Enter user ID: ");
+                    int userID = scanner.nextInt();
+                    scanner.nextLine();
+                    System.out.print("Enter ISBN: ");
+                    result = libraryManager.renewLoan(userID, scanner.nextLine());
+                    break;
+                case 2:
+                    System.out.print("Enter user ID: ");
+                    result = libraryManager.renewUserLoans(scanner.nextInt());
+                    scanner.nextLine();
+                    break;
+                case 3:
+                    System.out.print("Enter last due date (YYYY-MM-DD): ");
+                    result = libraryManager.renewLoansDueBefore(LocalDate.parse(scanner.nextLine().trim()));
+                    break;
+                default:
+                    System.out.println("Invalid choice.");
+                    return;
+            }
+            System.out.println(result);
+        } catch (InputMismatchException e) {
+            System.out.println("Error: Invalid number.");
+            scanner.nextLine();
+        } catch (DateTimeParseException e) {
+            System.out.println("Error: Invalid date format.");
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exports a report to a CSV or JSON Lines file, printing the progress.
+     * The export can be cancelled by pressing Enter.
+     *
+     * @param scanner the Scanner object for input
+     */
+    private void exportReport(Scanner scanner) {
+        ExportReport report;
+        RowEncoder encoder;
+        try {
+            System.out.print("Enter report (loans, circulation or users): ");
+            report = ExportReport.valueOf(scanner.nextLine().trim().toUpperCase());
+            System.out.print("Enter format (csv or jsonl): ");
+            encoder = RowEncoder.forFormat(scanner.nextLine());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        System.out.print("Enter file path (leave empty for " + report.name().toLowerCase() + "." + encoder.getExtension() + "): ");
+        String path = scanner.nextLine().trim();
+        Path file = Paths.get(path.isEmpty() ? report.name().toLowerCase() + "." + encoder.getExtension() : path);
+
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        Thread worker = new Thread(() -> {
+            try {
+                long rows = libraryManager.exportReport(report, file, encoder,
+                        count -> System.out.println(count + " rows written..."), cancelled::get);
+                System.out.println("Exported " + rows + " rows to " + file.toAbsolutePath() + ". Press Enter to continue.");
+            } catch (CancellationException e) {
+                System.out.println("Export cancelled.");
+            } catch (IOException e) {
+                System.out.println("Error: Export failed: " + e.getMessage() + ". Press Enter to continue.");
+            }
+        }, "report-export");
+        System.out.println("Exporting, press Enter to cancel...");
+        worker.start();
+        scanner.nextLine();
+        cancelled.set(worker.isAlive());
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -0,0 +1,266 @@
+package com.example.cybooks.manager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Isbn;
+
+/**
+ * Keeps the number of copies available of every book, as stored in the Books table.
+ * Reads are served from atomic counters in memory, without locking or querying the database.
+ * Writes update the counter and the table with a single atomic statement,
+ * so that concurrent loans and returns cannot overwrite each other.
+ * A background reconciler compares the stored counts with the unloaned copies of BookCopies
+ * and repairs the books that drifted, a batch of ISBNs at a time. A book is checked again and repaired
+ * under its lock, so a loan or return in progress cannot be overwritten by the repair.
+ */
+public class AvailabilityCounters {
+    private final DataBase db;
+    private final StripedLocks locks;
+    private final ConcurrentHashMap<Long, AtomicInteger> counters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reconciler;
+    private long reconcileCursor = Long.MIN_VALUE;
+
+    /**
+     * Constructs the counters of the given database.
+     * The counters are empty until {@link #load()} is called.
+     *
+     * @param db    the database connection object
+     * @param locks The locks taken by the loans and returns, held while a book is repaired.
+     */
+    public AvailabilityCounters(DataBase db, StripedLocks locks) {
+        this.db = db;
+        this.locks = locks;
+    }
+
+    /**
+     * Loads the counters from the Books table with a single streaming scan.
+     */
+    public void load() {
+        counters.clear();
+        db.forEachRow("SELECT isbn, copiesAvailable FROM Books",
+                rs -> counters.put(rs.getLong("isbn"), new AtomicInteger(rs.getInt("copiesAvailable"))));
+        System.out.println("Availability counters loaded: " + counters.size() + " books.");
+    }
+
+    /**
+     * Gets the number of copies available of a book.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return The number of copies available, or 0 if the book is unknown.
+     */
+    public int get(long isbn) {
+        AtomicInteger counter = counters.get(isbn);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Registers the counter of a newly added book.
+     *
+     * @param isbn            The canonical ISBN key of the book.
+     * @param copiesAvailable The number of copies available.
+     */
+    public void register(long isbn, int copiesAvailable) {
+        counters.put(isbn, new AtomicInteger(copiesAvailable));
+    }
+
+    /**
+     * Reloads the counter of a book from the Books table, such as after another desk added the book.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     */
+    public void reload(long isbn) {
+        ResultSet rs = db.executeQuery("SELECT copiesAvailable FROM Books WHERE isbn = ?", isbn);
+        try {
+            if (rs != null && rs.next()) {
+                counterFor(isbn).set(rs.getInt("copiesAvailable"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records that a copy of a book was loaned.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     */
+    public void decrement(long isbn) {
+        counterFor(isbn).decrementAndGet();
+        db.executeUpdate("UPDATE Books SET copiesAvailable = copiesAvailable - 1 WHERE isbn = ?", isbn);
+    }
+
+    /**
+     * Records that a copy of a book was returned.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     */
+    public void increment(long isbn) {
+        counterFor(isbn).incrementAndGet();
+        db.executeUpdate("UPDATE Books SET copiesAvailable = copiesAvailable + 1 WHERE isbn = ?", isbn);
+    }
+
+    /**
+     * Records that copies of several books were returned, with one statement for all the books.
+     *
+     * @param returned The number of copies returned, by canonical ISBN key.
+     */
+    public void incrementAll(Map<Long, Integer> returned) {
+        if (returned.isEmpty()) {
+            return;
+        }
+        StringBuilder cases = new StringBuilder();
+        StringBuilder in = new StringBuilder();
+        Object[] params = new Object[returned.size() * 3];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : returned.entrySet()) {
+            counterFor(entry.getKey()).addAndGet(entry.getValue());
+            cases.append(" WHEN ? THEN ?");
+            in.append(i == 0 ? "?" : ", ?");
+            params[2 * i] = entry.getKey();
+            params[2 * i + 1] = entry.getValue();
+            params[2 * returned.size() + i] = entry.getKey();
+            i++;
+        }
+        db.executeUpdate("UPDATE Books SET copiesAvailable = copiesAvailable + CASE isbn" + cases +
+                " ELSE 0 END WHERE isbn IN (" + in + ")", params);
+    }
+
+    /**
+     * Starts reconciling the counters in the background.
+     * Each run checks the next batch of ISBNs, and wraps around at the end of the table.
+     *
+     * @param intervalSeconds The delay between two runs, in seconds.
+     * @param batchSize       The number of ISBNs checked per run.
+     */
+    public synchronized void startReconciler(long intervalSeconds, int batchSize) {
+        if (reconciler != null) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "availability-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcileBatch(batchSize);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the background reconciler.
+     */
+    public synchronized void stopReconciler() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+
+    /**
+     * Checks the next batch of ISBNs and repairs the ones whose stored count differs
+     * from the number of unloaned copies.
+     *
+     * @param batchSize The number of ISBNs to check.
+     * @return The number of books repaired.
+     */
+    public synchronized int reconcileBatch(int batchSize) {
+        String query = "SELECT b.isbn, b.copiesAvailable, " +
+                "(SELECT COUNT(*) FROM BookCopies bc WHERE bc.isbn = b.isbn AND bc.isLoaned = FALSE) AS actual " +
+                "FROM Books b WHERE b.isbn > ? ORDER BY b.isbn LIMIT ?";
+        ResultSet rs = db.executeQuery(query, reconcileCursor, batchSize);
+        int checked = 0;
+        int repaired = 0;
+        try {
+            while (rs != null && rs.next()) {
+                long isbn = rs.getLong("isbn");
+                checked++;
+                reconcileCursor = isbn;
+                // A loan between the claim of its copy and the update of the count also looks drifted here
+                if ((rs.getInt("copiesAvailable") != rs.getInt("actual") || get(isbn) != rs.getInt("actual"))
+                        && repairIfDrifted(isbn)) {
+                    repaired++;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        if (checked < batchSize) {
+            reconcileCursor = Long.MIN_VALUE;
+        }
+        if (repaired > 0) {
+            System.out.println("Availability reconciler repaired " + repaired + " book(s).");
+        }
+        return repaired;
+    }
+
+    /**
+     * Checks a book again under its lock, and repairs it if its counts still differ from its unloaned copies.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return True if the book was repaired, false otherwise.
+     */
+    private boolean repairIfDrifted(long isbn) {
+        StripedLocks.Held held = locks.lockBook(isbn);
+        try {
+            ResultSet rs = db.executeQuery("SELECT b.copiesAvailable, " +
+                    "(SELECT COUNT(*) FROM BookCopies bc WHERE bc.isbn = b.isbn AND bc.isLoaned = FALSE) AS actual " +
+                    "FROM Books b WHERE b.isbn = ?", isbn);
+            try {
+                if (rs == null || !rs.next() || (rs.getInt("copiesAvailable") == rs.getInt("actual")
+                        && get(isbn) == rs.getInt("actual"))) {
+                    return false;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return false;
+            }
+            repair(isbn);
+            return true;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * Recomputes the stored count of a book from its copies in one statement,
+     * then reloads the counter from the stored value.
+     * The caller must hold the lock of the book.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     */
+    private void repair(long isbn) {
+        db.executeUpdate("UPDATE Books SET copiesAvailable = " +
+                "(SELECT COUNT(*) FROM BookCopies WHERE isbn = ? AND isLoaned = FALSE) WHERE isbn = ?", isbn, isbn);
+        ResultSet rs = db.executeQuery("SELECT copiesAvailable FROM Books WHERE isbn = ?", isbn);
+        try {
+            if (rs != null && rs.next()) {
+                counterFor(isbn).set(rs.getInt("copiesAvailable"));
+                System.out.println("Repaired availability of ISBN " + Isbn.format(isbn));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the counter of a book, creating it if needed.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return The counter of the book.
+     */
+    private AtomicInteger counterFor(long isbn) {
+        return counters.computeIfAbsent(isbn, key -> new AtomicInteger());
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.cybooks.manager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Loan;
+
+/**
+ * Loans several books to a user at once, in one transaction.
+ * The copies are chosen from the in-memory index, marked as loaned with one batch,
+ * and the loans are inserted with one multi-row statement, so a basket of ten books
+ * costs about the same round trips as a single loan.
+ */
+public class BasketCheckout {
+    private final DataBase db;
+    private final CopyAvailabilityIndex copyIndex;
+
+    /**
+     * Constructs the checkout over the given database.
+     *
+     * @param db        the database connection object
+     * @param copyIndex The index of the copies, kept in sync with the copies claimed.
+     */
+    public BasketCheckout(DataBase db, CopyAvailabilityIndex copyIndex) {
+        this.db = db;
+        this.copyIndex = copyIndex;
+    }
+
+    /**
+     * Claims a copy of each book and records the loans in one transaction.
+     * The caller must hold the locks of the user and of the books.
+     *
+     * @param userID The ID of the user.
+     * @param isbns  The canonical ISBN keys of the books; the same book can be asked for more than once.
+     * @return The loans, in the order of the books, with null for the books without an available copy.
+     * @throws SQLException if the transaction failed; no loan was made and the copies are released.
+     */
+    public Loan[] checkout(int userID, long[] isbns) throws SQLException {
+        int[] copyIDs = new int[isbns.length];
+        try {
+            return db.inTransaction(connection -> {
+                claimCopies(connection, isbns, copyIDs);
+                return insertLoans(connection, userID, copyIDs);
+            });
+        } catch (SQLException | RuntimeException e) {
+            // The copies marked in the rolled back transaction are available again
+            for (int i = 0; i < isbns.length; i++) {
+                if (copyIDs[i] != CopyAvailabilityIndex.NO_COPY) {
+                    copyIndex.setLoaned(isbns[i], copyIDs[i], false);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Marks a copy of each book as loaned.
+     * The copies chosen by the index are marked with one batch; a copy that the table shows as loaned
+     * already is replaced by the next copy of the index, in another batch.
+     *
+     * @param connection The connection of the transaction.
+     * @param isbns      The canonical ISBN keys of the books.
+     * @param copyIDs    Filled with the copy claimed for each book, or {@link CopyAvailabilityIndex#NO_COPY}.
+     * @throws SQLException if the copies cannot be marked.
+     */
+    private void claimCopies(Connection connection, long[] isbns, int[] copyIDs) throws SQLException {
+        List<Integer> pending = new ArrayList<>(isbns.length);
+        for (int i = 0; i < isbns.length; i++) {
+            copyIDs[i] = CopyAvailabilityIndex.NO_COPY;
+            pending.add(i);
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "UPDATE BookCopies SET isLoaned = TRUE WHERE copyID = ? AND isLoaned = FALSE")) {
+            while (!pending.isEmpty()) {
+                List<Integer> batch = new ArrayList<>(pending.size());
+                for (int i : pending) {
+                    int copyID = copyIndex.claim(isbns[i]);
+                    if (copyID != CopyAvailabilityIndex.NO_COPY) {
+                        copyIDs[i] = copyID;
+                        stmt.setInt(1, copyID);
+                        stmt.addBatch();
+                        batch.add(i);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                int[] counts = stmt.executeBatch();
+                pending.clear();
+                for (int k = 0; k < batch.size(); k++) {
+                    if (counts[k] == 0) {
+                        // Loaned in the table but not in the index: the index now knows, so try the next copy
+                        int i = batch.get(k);
+                        copyIDs[i] = CopyAvailabilityIndex.NO_COPY;
+                        pending.add(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the loans of the claimed copies with one statement.
+     *
+     * @param connection The connection of the transaction.
+     * @param userID     The ID of the user.
+     * @param copyIDs    The copy claimed for each book, or {@link CopyAvailabilityIndex#NO_COPY}.
+     * @return The loans, in the order of the books, with null for the books without a copy.
+     * @throws SQLException if the loans cannot be inserted.
+     */
+    private Loan[] insertLoans(Connection connection, int userID, int[] copyIDs) throws SQLException {
+        Loan[] loans = new Loan[copyIDs.length];
+        LocalDate today = LocalDate.now();
+        StringBuilder query = new StringBuilder(
+                "INSERT INTO Loans (userID, copyID, loanDate, numberOfDays, dueDate, isReturned) VALUES ");
+        int count = 0;
+        for (int i = 0; i < copyIDs.length; i++) {
+            if (copyIDs[i] != CopyAvailabilityIndex.NO_COPY) {
+                Loan loan = new Loan(userID, copyIDs[i]);
+                // All the loans of the basket share the same day, even across midnight
+                loan.setLoanDate(today);
+                loan.setDueDate(today.plusDays(loan.getNumberOfDays()));
+                loans[i] = loan;
+                query.append(count++ == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+            }
+        }
+        if (count == 0) {
+            return loans;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(query.toString(), Statement.RETURN_GENERATED_KEYS)) {
+            int param = 1;
+            for (Loan loan : loans) {
+                if (loan != null) {
+                    stmt.setInt(param++, loan.getUserID());
+                    stmt.setInt(param++, loan.getCopyID());
+                    stmt.setObject(param++, loan.getLoanDate());
+                    stmt.setInt(param++, loan.getNumberOfDays());
+                    stmt.setObject(param++, loan.getDueDate());
+                    stmt.setBoolean(param++, false);
+                }
+            }
+            stmt.executeUpdate();
+            // The keys of a multi-row insert come back in the order of the rows
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                for (Loan loan : loans) {
+                    if (loan != null) {
+                        if (!keys.next()) {
+                            throw new SQLException("Missing generated key for the loan of copy " + loan.getCopyID());
+                        }
+                        loan.setLoanID(keys.getInt(1));
+                    }
+                }
+            }
+        }
+        return loans;
+    }
+}
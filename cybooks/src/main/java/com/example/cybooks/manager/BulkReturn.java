@@ -0,0 +1,144 @@
+package com.example.cybooks.manager;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Loan;
+
+/**
+ * Returns a batch of copies at once, as when the returns bin is emptied.
+ * The open loans of all the copies are found with one query, and closed with one
+ * set-based update of the loans and their copies, whatever the number of copies.
+ */
+public class BulkReturn {
+    private final DataBase db;
+
+    /**
+     * Constructs the bulk return over the given database.
+     *
+     * @param db the database connection object
+     */
+    public BulkReturn(DataBase db) {
+        this.db = db;
+    }
+
+    /**
+     * Finds the open loans of some copies with one query.
+     *
+     * @param copyIDs The IDs of the copies.
+     * @param isbns   Filled with the canonical ISBN key of the copy of each loan found, by copy ID.
+     * @return The open loans found, at most one per copy.
+     */
+    public List<Loan> findOpenLoans(int[] copyIDs, Map<Integer, Long> isbns) {
+        List<Loan> loans = new ArrayList<>(copyIDs.length);
+        if (copyIDs.length == 0) {
+            return loans;
+        }
+        Object[] params = new Object[copyIDs.length];
+        for (int i = 0; i < copyIDs.length; i++) {
+            params[i] = copyIDs[i];
+        }
+        ResultSet rs = db.executeQuery("SELECT l.loanID, l.userID, l.copyID, l.loanDate, l.numberOfDays, l.dueDate, bc.isbn " +
+                "FROM Loans l JOIN BookCopies bc ON bc.copyID = l.copyID " +
+                "WHERE l.copyID IN (" + placeholders(copyIDs.length) + ") AND l.isReturned = FALSE", params);
+        try {
+            while (rs != null && rs.next()) {
+                Loan loan = new Loan(rs.getInt("userID"), rs.getInt("copyID"));
+                loan.setLoanID(rs.getInt("loanID"));
+                loan.setLoanDate(rs.getObject("loanDate", LocalDate.class));
+                loan.setNumberOfDays(rs.getInt("numberOfDays"));
+                loan.setDueDate(rs.getObject("dueDate", LocalDate.class));
+                loans.add(loan);
+                isbns.put(loan.getCopyID(), rs.getLong("isbn"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return loans;
+    }
+
+    /**
+     * Closes some loans and releases their copies in one transaction.
+     * The caller must hold the locks of the users and of the books of the loans.
+     * A loan closed since it was found is skipped.
+     *
+     * @param loans      The loans to close.
+     * @param returnDate The day of the return.
+     * @return The loans closed, with their return date set.
+     * @throws SQLException if the transaction failed; no loan was closed.
+     */
+    public List<Loan> close(List<Loan> loans, LocalDate returnDate) throws SQLException {
+        if (loans.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String ids = placeholders(loans.size());
+        return db.inTransaction(connection -> {
+            Set<Integer> open = new HashSet<>();
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT loanID FROM Loans WHERE loanID IN (" + ids + ") AND isReturned = FALSE FOR UPDATE")) {
+                setLoanIDs(stmt, 1, loans);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        open.add(rs.getInt(1));
+                    }
+                }
+            }
+            List<Loan> closed = new ArrayList<>(open.size());
+            if (open.isEmpty()) {
+                return closed;
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "UPDATE Loans l JOIN BookCopies bc ON bc.copyID = l.copyID " +
+                    "SET l.returnDate = ?, l.isReturned = TRUE, bc.isLoaned = FALSE " +
+                    "WHERE l.loanID IN (" + ids + ") AND l.isReturned = FALSE")) {
+                stmt.setObject(1, returnDate);
+                setLoanIDs(stmt, 2, loans);
+                stmt.executeUpdate();
+            }
+            for (Loan loan : loans) {
+                if (open.contains(loan.getLoanID())) {
+                    loan.setReturnDate(returnDate);
+                    loan.setIsReturned(true);
+                    closed.add(loan);
+                }
+            }
+            return closed;
+        });
+    }
+
+    /**
+     * Sets the IDs of some loans as parameters of a statement.
+     *
+     * @param stmt  The statement.
+     * @param first The index of the first parameter.
+     * @param loans The loans.
+     * @throws SQLException if a parameter cannot be set.
+     */
+    private static void setLoanIDs(PreparedStatement stmt, int first, List<Loan> loans) throws SQLException {
+        for (int i = 0; i < loans.size(); i++) {
+            stmt.setInt(first + i, loans.get(i).getLoanID());
+        }
+    }
+
+    /**
+     * Builds the placeholders of an IN list.
+     *
+     * @param count The number of values.
+     * @return The placeholders, separated by commas.
+     */
+    private static String placeholders(int count) {
+        StringBuilder result = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            result.append(i == 0 ? "?" : ", ?");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.cybooks.manager;
+
+import java.util.List;
+
+import com.example.cybooks.model.Loan;
+
+/**
+ * Receives the loans and returns handled by the library manager,
+ * so that the in-memory statistics can be maintained without querying the Loans table.
+ * Listeners are called on the thread of the operation, after the database was updated.
+ */
+public interface CirculationListener {
+    /**
+     * Called when a book was loaned.
+     *
+     * @param loan The new loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    void onLoan(Loan loan, long isbn);
+
+    /**
+     * Called when several books were loaned at once to one user, on the same day.
+     * Listeners writing to the database can override it to write the whole basket at once.
+     *
+     * @param loans The new loans, all of the same user and loan date.
+     * @param isbns The canonical ISBN keys of the loaned books, in the order of the loans.
+     */
+    default void onLoans(List<Loan> loans, long[] isbns) {
+        for (int i = 0; i < loans.size(); i++) {
+            onLoan(loans.get(i), isbns[i]);
+        }
+    }
+
+    /**
+     * Called when a book was returned.
+     *
+     * @param loan The returned loan.
+     * @param isbn The canonical ISBN key of the returned book.
+     */
+    void onReturn(Loan loan, long isbn);
+
+    /**
+     * Called when several books were returned at once, on the same day, possibly by several users.
+     * Listeners writing to the database can override it to write the whole batch at once.
+     *
+     * @param loans The returned loans, all with the same return date.
+     * @param isbns The canonical ISBN keys of the returned books, in the order of the loans.
+     */
+    default void onReturns(List<Loan> loans, long[] isbns) {
+        for (int i = 0; i < loans.size(); i++) {
+            onReturn(loans.get(i), isbns[i]);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.cybooks.manager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.cybooks.model.CirculationStats;
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Isbn;
+import com.example.cybooks.model.Loan;
+import com.example.cybooks.model.ReportPeriod;
+
+/**
+ * Maintains daily aggregates of the circulation, so that reports do not scan the Loans table.
+ * Each loan and return adds to the rows of its day in DailyCirculation (loans, returns, overdue loans,
+ * distinct patrons), DailyBookLoans (loans per ISBN) and DailyPatronLoans (loans per patron).
+ * The rollups are backfilled from the current and archived loans once, when they are empty.
+ */
+public class CirculationRollups implements CirculationListener {
+    private final DataBase db;
+
+    /**
+     * Constructs the rollups of the given database.
+     *
+     * @param db the database connection object
+     */
+    public CirculationRollups(DataBase db) {
+        this.db = db;
+    }
+
+    /**
+     * Fills the rollups from the loans if they were never filled.
+     */
+    public void backfillIfEmpty() {
+        ResultSet rs = db.executeQuery("SELECT (SELECT COUNT(*) FROM DailyCirculation), (SELECT COUNT(*) FROM AllLoans)");
+        try {
+            if (rs == null || !rs.next() || rs.getInt(1) > 0 || rs.getInt(2) == 0) {
+                return;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        backfill();
+    }
+
+    /**
+     * Recomputes the rollups from the current and archived loans, with one aggregate query per rollup table.
+     */
+    public synchronized void backfill() {
+        long start = System.currentTimeMillis();
+        db.executeUpdate("DELETE FROM DailyPatronLoans");
+        db.executeUpdate("DELETE FROM DailyBookLoans");
+        db.executeUpdate("DELETE FROM DailyCirculation");
+        db.executeUpdate("INSERT INTO DailyPatronLoans (day, userID, loans) " +
+                "SELECT loanDate, userID, COUNT(*) FROM AllLoans GROUP BY loanDate, userID");
+        db.executeUpdate("INSERT INTO DailyBookLoans (day, isbn, loans) " +
+                "SELECT l.loanDate, bc.isbn, COUNT(*) FROM AllLoans l JOIN BookCopies bc ON l.copyID = bc.copyID " +
+                "GROUP BY l.loanDate, bc.isbn");
+        db.executeUpdate("INSERT INTO DailyCirculation (day, loans, distinctPatrons) " +
+                "SELECT day, SUM(loans), COUNT(*) FROM DailyPatronLoans GROUP BY day");
+        db.executeUpdate("INSERT INTO DailyCirculation (day, returns) " +
+                "SELECT * FROM (SELECT returnDate, COUNT(*) AS n FROM AllLoans WHERE isReturned = TRUE GROUP BY returnDate) r " +
+                "ON DUPLICATE KEY UPDATE returns = r.n");
+        // A loan becomes overdue on its due date unless it was returned before
+        db.executeUpdate("INSERT INTO DailyCirculation (day, overdues) " +
+                "SELECT * FROM (SELECT dueDate, COUNT(*) AS n FROM AllLoans WHERE dueDate <= ? " +
+                "AND (returnDate IS NULL OR returnDate >= dueDate) GROUP BY dueDate) o " +
+                "ON DUPLICATE KEY UPDATE overdues = o.n", LocalDate.now());
+        System.out.println("Circulation rollups backfilled in " + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    /**
+     * Adds a loan to the rollups of its loan date.
+     *
+     * @param loan The new loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    @Override
+    public synchronized void onLoan(Loan loan, long isbn) {
+        LocalDate day = loan.getLoanDate();
+        // MySQL reports 1 affected row for an insert and 2 for an update, so 1 means a new patron of the day
+        int patronRows = db.executeUpdate("INSERT INTO DailyPatronLoans (day, userID, loans) VALUES (?, ?, 1) " +
+                "ON DUPLICATE KEY UPDATE loans = loans + 1", day, loan.getUserID());
+        db.executeUpdate("INSERT INTO DailyBookLoans (day, isbn, loans) VALUES (?, ?, 1) " +
+                "ON DUPLICATE KEY UPDATE loans = loans + 1", day, isbn);
+        int newPatron = patronRows == 1 ? 1 : 0;
+        db.executeUpdate("INSERT INTO DailyCirculation (day, loans, distinctPatrons) VALUES (?, 1, ?) " +
+                "ON DUPLICATE KEY UPDATE loans = loans + 1, distinctPatrons = distinctPatrons + ?", day, newPatron, newPatron);
+    }
+
+    /**
+     * Adds the loans of a basket to the rollups of their loan date, with one statement per rollup table.
+     *
+     * @param loans The new loans, all of the same user and loan date.
+     * @param isbns The canonical ISBN keys of the loaned books, in the order of the loans.
+     */
+    @Override
+    public synchronized void onLoans(List<Loan> loans, long[] isbns) {
+        if (loans.isEmpty()) {
+            return;
+        }
+        LocalDate day = loans.get(0).getLoanDate();
+        int count = loans.size();
+        int patronRows = db.executeUpdate("INSERT INTO DailyPatronLoans (day, userID, loans) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE loans = loans + VALUES(loans)", day, loans.get(0).getUserID(), count);
+        StringBuilder query = new StringBuilder("INSERT INTO DailyBookLoans (day, isbn, loans) VALUES ");
+        Object[] params = new Object[count * 2];
+        for (int i = 0; i < count; i++) {
+            query.append(i == 0 ? "(?, ?, 1)" : ", (?, ?, 1)");
+            params[2 * i] = day;
+            params[2 * i + 1] = isbns[i];
+        }
+        // A book asked for twice in the basket updates the row inserted by its first copy
+        query.append(" ON DUPLICATE KEY UPDATE loans = loans + 1");
+        db.executeUpdate(query.toString(), params);
+        int newPatron = patronRows == 1 ? 1 : 0;
+        db.executeUpdate("INSERT INTO DailyCirculation (day, loans, distinctPatrons) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE loans = loans + VALUES(loans), distinctPatrons = distinctPatrons + ?",
+                day, count, newPatron, newPatron);
+    }
+
+    /**
+     * Adds a return to the rollups of its return date.
+     *
+     * @param loan The returned loan.
+     * @param isbn The canonical ISBN key of the returned book.
+     */
+    @Override
+    public synchronized void onReturn(Loan loan, long isbn) {
+        LocalDate day = loan.getReturnDate() != null ? loan.getReturnDate() : LocalDate.now();
+        db.executeUpdate("INSERT INTO DailyCirculation (day, returns) VALUES (?, 1) " +
+                "ON DUPLICATE KEY UPDATE returns = returns + 1", day);
+    }
+
+    /**
+     * Adds a batch of returns to the rollups of their return date with one statement.
+     *
+     * @param loans The returned loans, all with the same return date.
+     * @param isbns The canonical ISBN keys of the returned books, in the order of the loans.
+     */
+    @Override
+    public synchronized void onReturns(List<Loan> loans, long[] isbns) {
+        if (loans.isEmpty()) {
+            return;
+        }
+        LocalDate day = loans.get(0).getReturnDate() != null ? loans.get(0).getReturnDate() : LocalDate.now();
+        db.executeUpdate("INSERT INTO DailyCirculation (day, returns) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE returns = returns + VALUES(returns)", day, loans.size());
+    }
+
+    /**
+     * Adds a loan that became overdue to the rollups of its due date.
+     *
+     * @param loan The overdue loan.
+     */
+    public synchronized void onOverdue(Loan loan) {
+        db.executeUpdate("INSERT INTO DailyCirculation (day, overdues) VALUES (?, 1) " +
+                "ON DUPLICATE KEY UPDATE overdues = overdues + 1", loan.getDueDate());
+    }
+
+    /**
+     * Gets the circulation of each period between two days.
+     *
+     * @param from   The first day, included.
+     * @param to     The last day, included.
+     * @param period The length of the periods.
+     * @return The statistics of each period that had activity, in chronological order.
+     */
+    public List<CirculationStats> getStats(LocalDate from, LocalDate to, ReportPeriod period) {
+        Map<String, CirculationStats> stats = new LinkedHashMap<>();
+        String label = period.getSqlLabel();
+        ResultSet rs = db.executeQuery("SELECT " + label + " AS period, SUM(loans) AS loans, SUM(returns) AS returns, " +
+                "SUM(overdues) AS overdues FROM DailyCirculation WHERE day BETWEEN ? AND ? " +
+                "GROUP BY period ORDER BY period", from, to);
+        try {
+            while (rs != null && rs.next()) {
+                String name = rs.getString("period");
+                stats.put(name, new CirculationStats(name, rs.getInt("loans"), rs.getInt("returns"), rs.getInt("overdues")));
+            }
+            if (period == ReportPeriod.DAY) {
+                rs = db.executeQuery("SELECT " + label + " AS period, distinctPatrons FROM DailyCirculation " +
+                        "WHERE day BETWEEN ? AND ?", from, to);
+            } else {
+                // Patrons of several days cannot be summed, so they are counted from the per-patron rollup
+                rs = db.executeQuery("SELECT " + label + " AS period, COUNT(DISTINCT userID) AS distinctPatrons " +
+                        "FROM DailyPatronLoans WHERE day BETWEEN ? AND ? GROUP BY period", from, to);
+            }
+            while (rs != null && rs.next()) {
+                CirculationStats row = stats.get(rs.getString("period"));
+                if (row != null) {
+                    row.setDistinctPatrons(rs.getInt("distinctPatrons"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>(stats.values());
+    }
+
+    /**
+     * Gets the most loaned books between two days.
+     *
+     * @param from  The first day, included.
+     * @param to    The last day, included.
+     * @param limit The maximum number of books.
+     * @return One line per book with its loan count, most loaned first.
+     */
+    public List<String> getTopBooks(LocalDate from, LocalDate to, int limit) {
+        List<String> result = new ArrayList<>();
+        ResultSet rs = db.executeQuery("SELECT isbn, SUM(loans) AS loanCount FROM DailyBookLoans " +
+                "WHERE day BETWEEN ? AND ? GROUP BY isbn ORDER BY loanCount DESC LIMIT ?", from, to, limit);
+        try {
+            while (rs != null && rs.next()) {
+                result.add("ISBN: " + Isbn.format(rs.getLong("isbn")) + ", Loan Count: " + rs.getInt("loanCount"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * Gets the patrons who borrowed the most between two days.
+     *
+     * @param from  The first day, included.
+     * @param to    The last day, included.
+     * @param limit The maximum number of patrons.
+     * @return One line per patron with their loan count, most active first.
+     */
+    public List<String> getTopPatrons(LocalDate from, LocalDate to, int limit) {
+        List<String> result = new ArrayList<>();
+        ResultSet rs = db.executeQuery("SELECT userID, SUM(loans) AS loanCount FROM DailyPatronLoans " +
+                "WHERE day BETWEEN ? AND ? GROUP BY userID ORDER BY loanCount DESC LIMIT ?", from, to, limit);
+        try {
+            while (rs != null && rs.next()) {
+                result.add("User ID: " + rs.getInt("userID") + ", Loan Count: " + rs.getInt("loanCount"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.cybooks.manager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.utils.LongObjectMap;
+
+/**
+ * Keeps the loan state of every book copy in memory.
+ * Each ISBN maps to the sorted IDs of its copies and a bitset of the copies that are loaned,
+ * so that checking availability and choosing a copy need no query and no allocation.
+ * Copies are handed out in round-robin order so that loans are spread over all the copies.
+ * The index must be kept in sync with the BookCopies table by the loan and return paths.
+ * Copies added, loaned or returned by another desk are only learned when the copies of their book
+ * are reloaded with {@link #reload(long)}, which the loan paths do when the index has no copy to offer.
+ */
+public class CopyAvailabilityIndex {
+    /** The value returned by {@link #claim(long)} when no copy is available. */
+    public static final int NO_COPY = -1;
+
+    private final DataBase db;
+    private final LongObjectMap<Copies> copiesByIsbn = new LongObjectMap<>();
+    private boolean loaded;
+
+    /**
+     * Constructs an index over the copies of the given database.
+     * The index is loaded on first use, or by {@link #rebuild()}.
+     *
+     * @param db the database connection object
+     */
+    public CopyAvailabilityIndex(DataBase db) {
+        this.db = db;
+    }
+
+    /**
+     * Reloads the index from the BookCopies table with a single streaming scan.
+     */
+    public synchronized void rebuild() {
+        copiesByIsbn.clear();
+        int rows = db.forEachRow("SELECT copyID, isbn, isLoaned FROM BookCopies " +
+                "WHERE isbn IS NOT NULL ORDER BY isbn, copyID", rs -> {
+            copiesFor(rs.getLong("isbn")).add(rs.getInt("copyID"), rs.getBoolean("isLoaned"));
+        });
+        loaded = rows >= 0;
+        System.out.println("Copy availability index loaded: " + copiesByIsbn.size() + " books.");
+    }
+
+    /**
+     * Reloads the copies of one book from the BookCopies table with one indexed query.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return True if the book has copies, false otherwise.
+     */
+    public synchronized boolean reload(long isbn) {
+        ensureLoaded();
+        ResultSet rs = db.executeQuery("SELECT copyID, isLoaned FROM BookCopies WHERE isbn = ? ORDER BY copyID", isbn);
+        Copies copies = new Copies();
+        try {
+            while (rs != null && rs.next()) {
+                copies.add(rs.getInt("copyID"), rs.getBoolean("isLoaned"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return copiesByIsbn.get(isbn) != null;
+        }
+        if (rs == null || copies.size == 0) {
+            return copiesByIsbn.get(isbn) != null;
+        }
+        Copies previous = copiesByIsbn.get(isbn);
+        if (previous != null) {
+            copies.cursor = previous.cursor < copies.size ? previous.cursor : 0;
+        }
+        copiesByIsbn.put(isbn, copies);
+        return true;
+    }
+
+    /**
+     * Checks if the library owns at least one copy of a book.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return True if the book has copies, false otherwise.
+     */
+    public synchronized boolean contains(long isbn) {
+        ensureLoaded();
+        return copiesByIsbn.get(isbn) != null;
+    }
+
+    /**
+     * Gets the number of copies of a book that are not loaned.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return The number of copies available.
+     */
+    public synchronized int getAvailableCount(long isbn) {
+        ensureLoaded();
+        Copies copies = copiesByIsbn.get(isbn);
+        return copies == null ? 0 : copies.available;
+    }
+
+    /**
+     * Chooses an available copy of a book and marks it as loaned.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return The ID of the copy, or {@link #NO_COPY} if every copy is loaned.
+     */
+    public synchronized int claim(long isbn) {
+        ensureLoaded();
+        Copies copies = copiesByIsbn.get(isbn);
+        return copies == null ? NO_COPY : copies.claim();
+    }
+
+    /**
+     * Marks a copy as loaned, or as available again.
+     *
+     * @param isbn   The canonical ISBN key of the book.
+     * @param copyID The ID of the copy.
+     * @param loaned True if the copy is loaned, false if it is available.
+     */
+    public synchronized void setLoaned(long isbn, int copyID, boolean loaned) {
+        ensureLoaded();
+        Copies copies = copiesByIsbn.get(isbn);
+        if (copies != null) {
+            copies.setLoaned(copyID, loaned);
+        }
+    }
+
+    /**
+     * Adds a newly registered copy, which is available.
+     *
+     * @param isbn   The canonical ISBN key of the book.
+     * @param copyID The ID of the copy.
+     */
+    public synchronized void addCopy(long isbn, int copyID) {
+        ensureLoaded();
+        copiesFor(isbn).add(copyID, false);
+    }
+
+    /**
+     * Loads the index if it was never loaded.
+     */
+    private void ensureLoaded() {
+        if (!loaded) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Gets the copies of a book, creating the entry if needed.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return The copies of the book.
+     */
+    private Copies copiesFor(long isbn) {
+        Copies copies = copiesByIsbn.get(isbn);
+        if (copies == null) {
+            copies = new Copies();
+            copiesByIsbn.put(isbn, copies);
+        }
+        return copies;
+    }
+
+    /**
+     * The copies of one book: their IDs in increasing order and a bitset of the loaned ones.
+     */
+    private static final class Copies {
+        private int[] copyIDs = new int[4];
+        private long[] loaned = new long[1];
+        private int size;
+        private int available;
+        private int cursor;
+
+        /**
+         * Adds a copy, keeping the IDs sorted.
+         *
+         * @param copyID   The ID of the copy.
+         * @param isLoaned True if the copy is loaned.
+         */
+        void add(int copyID, boolean isLoaned) {
+            if (indexOf(copyID) >= 0) {
+                setLoaned(copyID, isLoaned);
+                return;
+            }
+            if (size == copyIDs.length) {
+                copyIDs = Arrays.copyOf(copyIDs, size * 2);
+            }
+            if ((size >> 6) >= loaned.length) {
+                loaned = Arrays.copyOf(loaned, loaned.length * 2);
+            }
+            int position = -indexOf(copyID) - 1;
+            // Copy IDs are auto-incremented, so this shift is empty except for out of order inserts
+            for (int i = size; i > position; i--) {
+                copyIDs[i] = copyIDs[i - 1];
+                setBit(i, isBit(i - 1));
+            }
+            copyIDs[position] = copyID;
+            setBit(position, isLoaned);
+            size++;
+            if (!isLoaned) {
+                available++;
+            }
+        }
+
+        /**
+         * Chooses the next available copy after the last one handed out and marks it as loaned.
+         *
+         * @return The ID of the copy, or NO_COPY if every copy is loaned.
+         */
+        int claim() {
+            if (available == 0) {
+                return NO_COPY;
+            }
+            int i = nextAvailable(cursor);
+            if (i < 0) {
+                i = nextAvailable(0);
+            }
+            if (i < 0) {
+                return NO_COPY;
+            }
+            setBit(i, true);
+            available--;
+            cursor = i + 1 < size ? i + 1 : 0;
+            return copyIDs[i];
+        }
+
+        /**
+         * Finds the first copy that is not loaned from a position on, 64 copies at a time.
+         *
+         * @param from The first position to look at.
+         * @return The position of the copy, or -1 if every copy from this position on is loaned.
+         */
+        private int nextAvailable(int from) {
+            for (int w = from >> 6; w < loaned.length && (w << 6) < size; w++) {
+                long free = ~loaned[w];
+                if (w == from >> 6) {
+                    // The copies before the position in its word are skipped
+                    free &= -1L << (from & 63);
+                }
+                if (free != 0) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(free);
+                    // The bits after the last copy are zeros, so they look free
+                    return i < size ? i : -1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Sets the loan state of a copy.
+         *
+         * @param copyID   The ID of the copy.
+         * @param isLoaned True if the copy is loaned.
+         */
+        void setLoaned(int copyID, boolean isLoaned) {
+            int i = indexOf(copyID);
+            if (i < 0 || isBit(i) == isLoaned) {
+                return;
+            }
+            setBit(i, isLoaned);
+            available += isLoaned ? -1 : 1;
+        }
+
+        /**
+         * Finds the position of a copy.
+         *
+         * @param copyID The ID of the copy.
+         * @return The position of the copy, or (-(insertion point) - 1) if it is absent.
+         */
+        int indexOf(int copyID) {
+            return Arrays.binarySearch(copyIDs, 0, size, copyID);
+        }
+
+        private boolean isBit(int i) {
+            return (loaned[i >> 6] & (1L << i)) != 0;
+        }
+
+        private void setBit(int i, boolean value) {
+            if (value) {
+                loaned[i >> 6] |= 1L << i;
+            } else {
+                loaned[i >> 6] &= ~(1L << i);
+            }
+        }
+    }
+}
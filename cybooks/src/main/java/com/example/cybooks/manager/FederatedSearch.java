@@ -0,0 +1,218 @@
+package com.example.cybooks.manager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import com.example.cybooks.api.ApiConnector;
+import com.example.cybooks.exception.BookNotFoundException;
+import com.example.cybooks.model.BookApi;
+import com.example.cybooks.model.CatalogHit;
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Isbn;
+import com.example.cybooks.model.SearchResult;
+
+/**
+ * Searches the local holdings and the BNF catalogue at the same time.
+ * Results are merged by canonical ISBN, and the books held by the library are ranked first.
+ */
+public class FederatedSearch {
+    private static final int MAX_RESULTS = 50;
+
+    private final DataBase db;
+    private final ApiConnector apiConnector;
+    private final AvailabilityCounters availability;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a FederatedSearch using the given database and BNF connector.
+     *
+     * @param db           the database connection object
+     * @param apiConnector the connector to the BNF API
+     * @param availability the counters of the copies available of each book
+     */
+    public FederatedSearch(DataBase db, ApiConnector apiConnector, AvailabilityCounters availability) {
+        this.db = db;
+        this.apiConnector = apiConnector;
+        this.availability = availability;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Searches for a book in the local holdings and in the BNF catalogue.
+     * The BNF "bib" and "aut" queries run in the background while the local holdings are read,
+     * so that local hits reach the listener before the remote ones.
+     * If the BNF cannot be reached, only the local hits are returned.
+     *
+     * @param searchTerm The term to search for.
+     * @param searchType The type of search to perform. It can be "isbn", "title", "author" or "date".
+     * @param onHit      Called with each hit as soon as it is known, held books first, for the first 50 hits.
+     * @return The merged hits, held books first.
+     * @throws BookNotFoundException If no book is found with the given search term.
+     * @throws IllegalArgumentException If an invalid search type is provided.
+     */
+    public SearchResult<CatalogHit> search(String searchTerm, String searchType, Consumer<CatalogHit> onHit) throws BookNotFoundException {
+        if (searchTerm.isEmpty()) {
+            throw new BookNotFoundException("Search term cannot be empty.");
+        }
+        long start = System.nanoTime();
+        String type = searchType.toLowerCase();
+        if (!type.equals("isbn") && !type.equals("title") && !type.equals("author") && !type.equals("date")) {
+            throw new IllegalArgumentException("Invalid search type: " + searchType);
+        }
+
+        CompletableFuture<List<BookApi>> bibBooks = CompletableFuture.supplyAsync(() -> searchRemote("bib", type, searchTerm), executor);
+        CompletableFuture<List<BookApi>> autBooks = CompletableFuture.supplyAsync(() -> searchRemote("aut", type, searchTerm), executor);
+
+        Map<Long, CatalogHit> hits = new LinkedHashMap<>();
+        // The listener gets at most as many hits as the result keeps
+        int notified = 0;
+
+        // Only an ISBN search can be answered locally before the BNF replies
+        long searchedIsbn = type.equals("isbn") ? Isbn.toKey(searchTerm) : Isbn.INVALID;
+        if (searchedIsbn != Isbn.INVALID) {
+            for (CatalogHit hit : findHoldings(List.of(searchedIsbn)).values()) {
+                hits.put(hit.getIsbn(), hit);
+                if (notified++ < MAX_RESULTS) {
+                    onHit.accept(hit);
+                }
+            }
+        }
+
+        // Records without a valid ISBN cannot be merged nor matched with the holdings
+        Map<Long, BookApi> records = new LinkedHashMap<>();
+        for (BookApi book : joinRemote(bibBooks)) {
+            if (book.getIsbnKey() != Isbn.INVALID) {
+                records.putIfAbsent(book.getIsbnKey(), book);
+            }
+        }
+        for (BookApi book : joinRemote(autBooks)) {
+            if (book.getIsbnKey() != Isbn.INVALID) {
+                records.putIfAbsent(book.getIsbnKey(), book);
+            }
+        }
+
+        List<Long> unknown = new ArrayList<>();
+        for (Map.Entry<Long, BookApi> entry : records.entrySet()) {
+            CatalogHit hit = hits.get(entry.getKey());
+            if (hit != null) {
+                hit.setRecord(entry.getValue());
+            } else {
+                unknown.add(entry.getKey());
+            }
+        }
+
+        Map<Long, CatalogHit> holdings = findHoldings(unknown);
+        List<CatalogHit> remoteOnly = new ArrayList<>();
+        for (long isbn : unknown) {
+            CatalogHit hit = holdings.get(isbn);
+            if (hit != null) {
+                hit.setRecord(records.get(isbn));
+                hits.put(isbn, hit);
+                if (notified++ < MAX_RESULTS) {
+                    onHit.accept(hit);
+                }
+            } else {
+                hit = new CatalogHit(isbn);
+                hit.setRecord(records.get(isbn));
+                remoteOnly.add(hit);
+            }
+        }
+        for (CatalogHit hit : remoteOnly) {
+            hits.put(hit.getIsbn(), hit);
+            if (notified++ < MAX_RESULTS) {
+                onHit.accept(hit);
+            }
+        }
+
+        if (hits.isEmpty()) {
+            throw new BookNotFoundException("Book not found: " + searchTerm);
+        }
+
+        List<CatalogHit> result = new ArrayList<>(hits.values());
+        result.sort(Comparator.comparing((CatalogHit hit) -> !hit.isHeld())
+                .thenComparing(Comparator.comparingInt(CatalogHit::getCopiesAvailable).reversed()));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new SearchResult<>(result.subList(0, Math.min(result.size(), MAX_RESULTS)), result.size(), elapsedMillis, CatalogHit::toString);
+    }
+
+    /**
+     * Waits for a search against the BNF API.
+     * A failed search gives no record, so that the local hits are still returned.
+     *
+     * @param search The search running in the background.
+     * @return The books found, or an empty list if the search failed.
+     */
+    private List<BookApi> joinRemote(CompletableFuture<List<BookApi>> search) {
+        try {
+            return search.join();
+        } catch (CompletionException | CancellationException e) {
+            e.printStackTrace();
+            return List.of();
+        }
+    }
+
+    /**
+     * Runs one search against the BNF API.
+     *
+     * @param recordType The type of record to search for ("bib" or "aut").
+     * @param searchType The type of search to perform.
+     * @param searchTerm The term to search for.
+     * @return The books found.
+     */
+    private List<BookApi> searchRemote(String recordType, String searchType, String searchTerm) {
+        switch (searchType) {
+            case "isbn":
+                return apiConnector.searchByISBN(recordType, searchTerm);
+            case "title":
+                return apiConnector.searchByTitle(recordType, searchTerm);
+            case "author":
+                return apiConnector.searchByAuthor(recordType, searchTerm);
+            default:
+                return apiConnector.searchByDate(recordType, searchTerm);
+        }
+    }
+
+    /**
+     * Reads the local holdings of the given ISBNs in a single query.
+     * The copies available come from the availability counters, and only the copies are counted in the database.
+     *
+     * @param isbns The canonical ISBN keys to look for.
+     * @return The hits of the books held by the library, by ISBN.
+     */
+    private Map<Long, CatalogHit> findHoldings(Collection<Long> isbns) {
+        Map<Long, CatalogHit> holdings = new HashMap<>();
+        if (isbns.isEmpty()) {
+            return holdings;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(isbns.size(), "?"));
+        String query = "SELECT b.isbn, COUNT(bc.copyID) AS totalCopies FROM Books b " +
+                "LEFT JOIN BookCopies bc ON bc.isbn = b.isbn " +
+                "WHERE b.isbn IN (" + placeholders + ") " +
+                "GROUP BY b.isbn";
+        ResultSet rs = db.executeQuery(query, isbns.toArray());
+        try {
+            while (rs != null && rs.next()) {
+                CatalogHit hit = new CatalogHit(rs.getLong("isbn"));
+                hit.setHoldings(availability.get(hit.getIsbn()), rs.getInt("totalCopies"));
+                holdings.put(hit.getIsbn(), hit);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return holdings;
+    }
+}
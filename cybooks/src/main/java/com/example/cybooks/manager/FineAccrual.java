@@ -0,0 +1,312 @@
+package com.example.cybooks.manager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Loan;
+
+/**
+ * Accrues the fines of the overdue loans incrementally, so that what a patron owes is known without
+ * going through their loans.
+ * A loan is fined for each day after its due date until its book is returned.
+ * Each run walks the open loans by due date and charges every overdue loan for the days since it was last charged,
+ * so a loan is charged at most once per day, and the days missed while the application was stopped are caught up.
+ * Only the charges are written: a row per loan and run in the FineLedger table, the day each loan is charged through
+ * in the LoanFines table, and the balance of each user in the FineBalances table.
+ * All the writes go through the single thread of the accrual, so a loan is never charged twice for the same day.
+ */
+public class FineAccrual implements CirculationListener {
+    private final DataBase db;
+    private final long finePerDay;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs the fine accrual over the given database.
+     *
+     * @param db         the database connection object
+     * @param finePerDay The fine per day of delay, in cents.
+     * @param batchSize  The number of loans charged per transaction.
+     */
+    public FineAccrual(DataBase db, long finePerDay, int batchSize) {
+        this.db = db;
+        this.finePerDay = finePerDay;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts accruing in the background, at once and then at the given interval.
+     * Runs after the first one of the day find nothing to charge, so the interval only bounds
+     * how long after midnight the fines of the day are charged.
+     *
+     * @param intervalMinutes The delay between two runs, in minutes.
+     */
+    public synchronized void start(long intervalMinutes) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fine-accrual");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                accrue(LocalDate.now());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the background accrual.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Does nothing: a new loan has nothing to pay.
+     *
+     * @param loan The new loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    @Override
+    public void onLoan(Loan loan, long isbn) {
+    }
+
+    /**
+     * Charges a returned loan for the days between its last charge and its return,
+     * on the accrual thread if it is started.
+     *
+     * @param loan The returned loan.
+     * @param isbn The canonical ISBN key of the returned book.
+     */
+    @Override
+    public void onReturn(Loan loan, long isbn) {
+        LocalDate returnDate = loan.getReturnDate() != null ? loan.getReturnDate() : LocalDate.now();
+        if (!returnDate.isAfter(loan.getDueDate())) {
+            return;
+        }
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.execute(() -> accrueLoan(loan.getLoanID(), returnDate));
+                return;
+            }
+        }
+        accrueLoan(loan.getLoanID(), returnDate);
+    }
+
+    /**
+     * Charges every open loan for its days of delay up to a day, batch by batch in due date order.
+     *
+     * @param asOf The last day to charge.
+     * @return The number of loans charged.
+     */
+    public int accrue(LocalDate asOf) {
+        String query = "SELECT l.loanID, l.userID, l.dueDate, f.accruedThrough FROM Loans l " +
+                "LEFT JOIN LoanFines f ON f.loanID = l.loanID " +
+                "WHERE l.isReturned = FALSE AND l.dueDate < ? AND (l.dueDate > ? OR (l.dueDate = ? AND l.loanID > ?)) " +
+                "AND (f.accruedThrough IS NULL OR f.accruedThrough < ?) " +
+                "ORDER BY l.dueDate, l.loanID LIMIT ?";
+        int charged = 0;
+        try (Connection connection = db.openConnection();
+             PreparedStatement select = connection.prepareStatement(query)) {
+            // The smallest date of MySQL, before any due date
+            LocalDate lastDueDate = LocalDate.of(1000, 1, 1);
+            int lastLoanID = 0;
+            List<Charge> batch;
+            int read;
+            do {
+                select.setObject(1, asOf);
+                select.setObject(2, lastDueDate);
+                select.setObject(3, lastDueDate);
+                select.setInt(4, lastLoanID);
+                select.setObject(5, asOf);
+                select.setInt(6, batchSize);
+                batch = new ArrayList<>(batchSize);
+                read = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        read++;
+                        Charge charge = toCharge(rs, asOf);
+                        lastDueDate = charge.dueDate;
+                        lastLoanID = charge.loanID;
+                        if (charge.days > 0) {
+                            batch.add(charge);
+                        }
+                    }
+                }
+                write(connection, batch, asOf);
+                charged += batch.size();
+            } while (read == batchSize);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        if (charged > 0) {
+            System.out.println("Fines accrued on " + charged + " overdue loan(s).");
+        }
+        return charged;
+    }
+
+    /**
+     * Charges one loan for its days of delay up to a day, whether it is returned or not.
+     *
+     * @param loanID The ID of the loan.
+     * @param asOf   The last day to charge.
+     */
+    private void accrueLoan(int loanID, LocalDate asOf) {
+        String query = "SELECT l.loanID, l.userID, l.dueDate, f.accruedThrough FROM Loans l " +
+                "LEFT JOIN LoanFines f ON f.loanID = l.loanID WHERE l.loanID = ?";
+        try (Connection connection = db.openConnection();
+             PreparedStatement select = connection.prepareStatement(query)) {
+            select.setInt(1, loanID);
+            List<Charge> batch = new ArrayList<>(1);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    Charge charge = toCharge(rs, asOf);
+                    if (charge.days > 0) {
+                        batch.add(charge);
+                    }
+                }
+            }
+            write(connection, batch, asOf);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Computes the charge of a loan from a row of the accrual queries.
+     *
+     * @param rs   The row, with the loanID, userID, dueDate and accruedThrough columns.
+     * @param asOf The last day to charge.
+     * @return The charge of the loan, with no day if it is already charged through this day.
+     * @throws SQLException if the row cannot be read.
+     */
+    private Charge toCharge(ResultSet rs, LocalDate asOf) throws SQLException {
+        LocalDate dueDate = rs.getObject("dueDate", LocalDate.class);
+        LocalDate accruedThrough = rs.getObject("accruedThrough", LocalDate.class);
+        // The first day charged is the day after the due date, or after the last charge
+        LocalDate chargedFrom = accruedThrough != null && accruedThrough.isAfter(dueDate) ? accruedThrough : dueDate;
+        long days = Math.max(0, ChronoUnit.DAYS.between(chargedFrom, asOf));
+        return new Charge(rs.getInt("loanID"), rs.getInt("userID"), dueDate, (int) days, days * finePerDay);
+    }
+
+    /**
+     * Writes the charges of a batch in a single transaction:
+     * a ledger row per loan, the day each loan is charged through, and the new balance of each user.
+     *
+     * @param connection The connection of the accrual.
+     * @param batch      The charges to write.
+     * @param asOf       The day the loans are charged through.
+     * @throws SQLException if the charges cannot be written; the transaction is then rolled back.
+     */
+    private void write(Connection connection, List<Charge> batch, LocalDate asOf) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<Integer, Long> byUser = new HashMap<>();
+        for (Charge charge : batch) {
+            byUser.merge(charge.userID, charge.amount, Long::sum);
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement ledger = connection.prepareStatement("INSERT INTO FineLedger " +
+                "(loanID, userID, accruedOn, days, amount) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement loanFines = connection.prepareStatement("INSERT INTO LoanFines " +
+                "(loanID, userID, accruedThrough, amount) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE accruedThrough = VALUES(accruedThrough), amount = amount + VALUES(amount)");
+             PreparedStatement balances = connection.prepareStatement("INSERT INTO FineBalances (userID, balance) " +
+                "VALUES (?, ?) ON DUPLICATE KEY UPDATE balance = balance + VALUES(balance)")) {
+            for (Charge charge : batch) {
+                ledger.setInt(1, charge.loanID);
+                ledger.setInt(2, charge.userID);
+                ledger.setObject(3, asOf);
+                ledger.setInt(4, charge.days);
+                ledger.setLong(5, charge.amount);
+                ledger.addBatch();
+                loanFines.setInt(1, charge.loanID);
+                loanFines.setInt(2, charge.userID);
+                loanFines.setObject(3, asOf);
+                loanFines.setLong(4, charge.amount);
+                loanFines.addBatch();
+            }
+            for (Map.Entry<Integer, Long> entry : byUser.entrySet()) {
+                balances.setInt(1, entry.getKey());
+                balances.setLong(2, entry.getValue());
+                balances.addBatch();
+            }
+            ledger.executeBatch();
+            loanFines.executeBatch();
+            balances.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Gets what a user owes, from their maintained balance.
+     *
+     * @param userID The ID of the user.
+     * @return The balance of the user in cents, 0 if they were never fined.
+     */
+    public long getBalance(int userID) {
+        ResultSet rs = db.executeQuery("SELECT balance FROM FineBalances WHERE userID = ?", userID);
+        try {
+            if (rs != null && rs.next()) {
+                return rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * The charge of one loan in a run.
+     */
+    private static class Charge {
+        private final int loanID;
+        private final int userID;
+        private final LocalDate dueDate;
+        private final int days;
+        private final long amount;
+
+        /**
+         * Constructs a charge.
+         *
+         * @param loanID  The ID of the loan.
+         * @param userID  The ID of the user of the loan.
+         * @param dueDate The due date of the loan.
+         * @param days    The number of days charged.
+         * @param amount  The amount charged, in cents.
+         */
+        private Charge(int loanID, int userID, LocalDate dueDate, int days, long amount) {
+            this.loanID = loanID;
+            this.userID = userID;
+            this.dueDate = dueDate;
+            this.days = days;
+            this.amount = amount;
+        }
+    }
+}
@@ -1,10 +1,24 @@
 package com.example.cybooks.manager;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import com.example.cybooks.api.ApiConnector;
 import com.example.cybooks.exception.BookNotFoundException;
@@ -16,17 +30,53 @@ import com.example.cybooks.exception.UserNotFoundException;
 import com.example.cybooks.model.Book;
 import com.example.cybooks.model.BookApi;
 import com.example.cybooks.model.BookCopies;
+import com.example.cybooks.model.CatalogHit;
+import com.example.cybooks.model.CheckoutResult;
+import com.example.cybooks.model.CirculationStats;
 import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.ExportReport;
+import com.example.cybooks.model.ImportResult;
+import com.example.cybooks.model.Isbn;
 import com.example.cybooks.model.Loan;
+import com.example.cybooks.model.LoanFilter;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.PatronProfile;
+import com.example.cybooks.model.RenewalResult;
+import com.example.cybooks.model.LoanRowDecoder;
+import com.example.cybooks.model.ReportPeriod;
+import com.example.cybooks.model.ReturnResult;
+import com.example.cybooks.model.SearchResult;
 import com.example.cybooks.model.User;
+import com.example.cybooks.utils.Config;
+import com.example.cybooks.utils.RowEncoder;
 
 /**
  * Manages the operations related to the library, including user registration,
  * book loans, and database interactions.
  */
-public class LibraryManager {
+public class LibraryManager implements LibraryService {
     private final DataBase db;
     private final ApiConnector apiConnector;
+    private final FederatedSearch federatedSearch;
+    private final CopyAvailabilityIndex copyIndex;
+    private final UserCache userCache;
+    private final AvailabilityCounters availability;
+    private final PopularityTracker popularity;
+    private final OverdueTracker overdueTracker;
+    private final LoanListing loanListing;
+    private final CirculationRollups rollups;
+    private final LoanAnalytics analytics;
+    private final LoanArchiver archiver;
+    private final PatronProfiles profiles;
+    private final ReportExporter exporter;
+    private final FineAccrual fines;
+    private final LoanRenewals renewals;
+    private final OverdueNoticeJob notices;
+    private final StripedLocks locks;
+    private final BasketCheckout basketCheckout;
+    private final BulkReturn bulkReturn;
+    private final PatronImport patronImport;
+    private final List<CirculationListener> circulationListeners = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a LibraryManager with the given database connection.
@@ -36,6 +86,108 @@ public class LibraryManager {
     public LibraryManager(DataBase db) {
         this.db = db;
         this.apiConnector = new ApiConnector();
+        this.locks = new StripedLocks(Config.LOCK_STRIPES);
+        this.availability = new AvailabilityCounters(db, locks);
+        this.federatedSearch = new FederatedSearch(db, apiConnector, availability);
+        this.copyIndex = new CopyAvailabilityIndex(db);
+        this.userCache = new UserCache(Config.USER_CACHE_SIZE);
+        this.popularity = new PopularityTracker(db, Config.POPULARITY_WINDOW_DAYS, Config.POPULARITY_TOP_SIZE);
+        this.overdueTracker = new OverdueTracker(db);
+        this.loanListing = new LoanListing(db);
+        this.rollups = new CirculationRollups(db);
+        this.analytics = new LoanAnalytics(db, Config.DISTINCT_SKETCH_PRECISION);
+        this.profiles = new PatronProfiles(db);
+        this.exporter = new ReportExporter(db);
+        this.fines = new FineAccrual(db, Config.FINE_PER_DAY_CENTS, Config.FINE_BATCH_SIZE);
+        this.renewals = new LoanRenewals(db, overdueTracker, Config.RENEWAL_DAYS, Config.MAX_RENEWALS,
+                Config.RENEWAL_MAX_FINE_CENTS);
+        this.notices = new OverdueNoticeJob(db, Paths.get(Config.NOTICE_OUTBOX_DIR), Config.NOTICE_THREADS,
+                Config.NOTICE_QUEUE_SIZE, Config.NOTICE_CHECKPOINT_INTERVAL);
+        this.basketCheckout = new BasketCheckout(db, copyIndex);
+        this.bulkReturn = new BulkReturn(db);
+        this.patronImport = new PatronImport(db, Config.IMPORT_BATCH_SIZE);
+        this.archiver = new LoanArchiver(db, Config.ARCHIVE_HORIZON_DAYS, Config.ARCHIVE_BATCH_SIZE, Config.ARCHIVE_PAUSE_MILLIS);
+        addCirculationListener(popularity);
+        addCirculationListener(overdueTracker);
+        addCirculationListener(rollups);
+        addCirculationListener(analytics);
+        addCirculationListener(profiles);
+        addCirculationListener(fines);
+        overdueTracker.addOverdueHandler(entry -> rollups.onOverdue(entry.getLoan()));
+    }
+
+    /**
+     * Registers a listener called after each loan and return.
+     *
+     * @param listener The listener to register.
+     */
+    public void addCirculationListener(CirculationListener listener) {
+        circulationListeners.add(listener);
+    }
+
+    /**
+     * Loads the in-memory indexes from the database.
+     * This should be called once the database server is started.
+     */
+    public void initialize() {
+        copyIndex.rebuild();
+        availability.load();
+        popularity.rebuild();
+        rollups.backfillIfEmpty();
+        profiles.backfillIfEmpty();
+        analytics.load();
+        analytics.startSaving(Config.ANALYTICS_SAVE_INTERVAL_MINUTES);
+        archiver.start(Config.ARCHIVE_INTERVAL_HOURS);
+        overdueTracker.resync();
+        overdueTracker.start(Config.OVERDUE_CHECK_INTERVAL_MINUTES);
+        availability.startReconciler(Config.RECONCILE_INTERVAL_SECONDS, Config.RECONCILE_BATCH_SIZE);
+        fines.start(Config.FINE_CHECK_INTERVAL_MINUTES);
+        notices.start(Config.NOTICE_HOUR);
+        if (Config.PRELOAD_ACTIVE_USERS) {
+            preloadActiveUsers();
+        }
+    }
+
+    /**
+     * Stops the background tasks of the manager.
+     * This should be called before the database server is stopped.
+     */
+    public void shutdown() {
+        availability.stopReconciler();
+        overdueTracker.stop();
+        analytics.stopSaving();
+        archiver.stop();
+        fines.stop();
+        notices.stop();
+    }
+
+    /**
+     * Gets the tracker of the open loans, which knows the overdue loans.
+     *
+     * @return The overdue tracker.
+     */
+    public OverdueTracker getOverdueTracker() {
+        return overdueTracker;
+    }
+
+    /**
+     * Loads the users with current loans in the user cache, up to the capacity of the cache.
+     */
+    private void preloadActiveUsers() {
+        db.forEachRow("SELECT u.userID, u.name, u.email, u.address FROM Users u " +
+                "WHERE EXISTS (SELECT 1 FROM Loans l WHERE l.userID = u.userID AND l.isReturned = FALSE) LIMIT ?",
+                rs -> userCache.put(new User(rs.getInt("userID"), rs.getString("name"), rs.getString("email"), rs.getString("address"))),
+                userCache.getMaxSize());
+        System.out.println(userCache);
+    }
+
+    /**
+     * Gets the cache of users, which exposes its hit ratio and memory use.
+     *
+     * @return The user cache.
+     */
+    public UserCache getUserCache() {
+        return userCache;
     }
 
     /**
@@ -55,7 +207,7 @@ public class LibraryManager {
      * @throws EmailAlreadyExistsException if the email already exists in the system
      */
     public void registerUser(String name, String email, String address) throws InvalidEmailFormatException, EmailAlreadyExistsException {
-        if (!email.matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+$")) {
+        if (!User.isValidEmail(email)) {
             throw new InvalidEmailFormatException("Invalid email format: " + email);
         }
 
@@ -65,6 +217,37 @@ public class LibraryManager {
 
         User user = new User(name, email, address);
         user.register(db);
+        if (user.getUserID() != 0) {
+            userCache.put(user);
+        }
+    }
+
+    /**
+     * Registers the users of a CSV file in bulk, such as the pupils of a school.
+     * The rows are checked like {@link #registerUser(String, String, String)}, but the users are
+     * inserted in batches, and the rejected rows are written to an error report instead of stopping the import.
+     *
+     * @param csv         the CSV file, with a header naming the name, email and optional address columns
+     * @param errorReport the CSV file listing the rejected rows and their reason
+     * @param progress    called with the number of rows read so far
+     * @return the counts of the import
+     * @throws IOException if a file cannot be read or written
+     */
+    public ImportResult importUsers(Path csv, Path errorReport, LongConsumer progress) throws IOException {
+        return patronImport.importUsers(csv, errorReport, progress);
+    }
+
+    /**
+     * Registers the users of a CSV input in bulk, such as the body of a request to the library server.
+     *
+     * @param csv      the CSV input, with a header naming the name, email and optional address columns
+     * @param errors   the output of the error report, which is not closed
+     * @param progress called with the number of rows read so far
+     * @return the counts of the import
+     * @throws IOException if the input cannot be read or the report cannot be written
+     */
+    public ImportResult importUsers(Reader csv, Writer errors, LongConsumer progress) throws IOException {
+        return patronImport.importUsers(csv, errors, progress);
     }
 
     /**
@@ -79,13 +262,15 @@ public class LibraryManager {
      * @throws EmailAlreadyExistsException if the email already exists in the system
      */
     public void updateUser(int userID, String name, String email, String address) throws UserNotFoundException, InvalidEmailFormatException, EmailAlreadyExistsException {
-        User user = getUserByID(userID);
-        if (user == null) {
+        User cached = getUserByID(userID);
+        if (cached == null) {
             throw new UserNotFoundException("User not found: " + userID);
         }
+        // The cached user is shared with other readers, so the changes are made on a copy until they are stored
+        User user = new User(cached.getUserID(), cached.getName(), cached.getEmail(), cached.getAddress());
 
         if (email != null && !email.isEmpty()) {
-            if (!email.matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+$")) {
+            if (!User.isValidEmail(email)) {
                 throw new InvalidEmailFormatException("Invalid email format: " + email);
             }
             if (isEmailExists(email) && !email.equals(user.getEmail())) {
@@ -102,7 +287,11 @@ public class LibraryManager {
             user.setAddress(address);
         }
 
-        user.update(db);
+        if (user.update(db)) {
+            userCache.put(user);
+        } else {
+            userCache.invalidate(userID);
+        }
     }
 
     /**
@@ -113,15 +302,35 @@ public class LibraryManager {
      * @throws UserHasLoansException if the user has outstanding loans
      */
     public void deleteUser(int userID) throws UserNotFoundException, UserHasLoansException {
-        User user = getUserByID(userID);
-        if (user == null) {
-            throw new UserNotFoundException("User not found: " + userID);
-        }
-        if (isLoansExistsForUsers(userID)) {
-            throw new UserHasLoansException("User has loans and cannot be deleted");
+        // Locking the user keeps a loan from being made between the check and the deletion
+        StripedLocks.Held held = locks.lockUser(userID);
+        try {
+            User user = getUserByID(userID);
+            if (user == null) {
+                throw new UserNotFoundException("User not found: " + userID);
+            }
+            if (isLoansExistsForUsers(userID)) {
+                throw new UserHasLoansException("User has loans and cannot be deleted");
+            }
+
+            user.delete(db);
+            // The archive has no foreign keys, so the archived loans of the user are deleted explicitly
+            db.executeUpdate("DELETE FROM LoansArchive WHERE userID = ?", userID);
+            userCache.invalidate(userID);
+        } finally {
+            held.unlock();
         }
+    }
 
-        user.delete(db);
+    /**
+     * Gets the number of copies of a book that are not loaned, from memory.
+     *
+     * @param isbn the ISBN of the book
+     * @return the number of copies available, or 0 if the book is not held
+     * @throws IllegalArgumentException if the ISBN is invalid
+     */
+    public int getCopiesAvailable(String isbn) {
+        return availability.get(Isbn.parse(isbn).toLong());
     }
 
     /**
@@ -129,13 +338,38 @@ public class LibraryManager {
      *
      * @param isbn            the ISBN of the book
      * @param copiesAvailable the number of copies available
+     * @throws IllegalArgumentException if the ISBN is invalid
      */
     public void addBook(String isbn, int copiesAvailable) {
+        long isbnKey = Isbn.parse(isbn).toLong();
+        StripedLocks.Held held = locks.lockBook(isbnKey);
+        try {
+            addBook(isbnKey, copiesAvailable);
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * Adds a new book to the library's collection.
+     * A book already registered, such as by another desk, keeps its copies and gets no new ones.
+     *
+     * @param isbn            the canonical ISBN key of the book
+     * @param copiesAvailable the number of copies available
+     */
+    private void addBook(long isbn, int copiesAvailable) {
         Book book = new Book(isbn, copiesAvailable);
-        book.register(db);
+        if (!book.register(db)) {
+            System.out.println("Book already registered: " + Isbn.format(isbn));
+            availability.reload(isbn);
+            copyIndex.reload(isbn);
+            return;
+        }
+        availability.register(isbn, copiesAvailable);
         for (int i = 0; i < copiesAvailable; i++) {
             BookCopies copy = new BookCopies(isbn);
             copy.register(db);
+            copyIndex.addCopy(isbn, copy.getCopyID());
         }
     }
 
@@ -146,37 +380,125 @@ public class LibraryManager {
      * @param isbn   the ISBN of the book
      * @throws UserNotFoundException  if the user is not found
      * @throws NoCopyAvailableException if no copy of the book is available
+     * @throws IllegalArgumentException if the ISBN is invalid
+     * @throws IllegalStateException if the loan could not be recorded; the copy is available again
      */
     public void loanBook(int userID, String isbn) throws UserNotFoundException, NoCopyAvailableException {
-        User user = getUserByID(userID);
-        if (user == null) {
-            throw new UserNotFoundException("User not found: " + userID);
-        }
-        
-        if (!isISBNExistsInCopies(isbn)) {
-            this.addBook(isbn, 5);
-        }
+        long isbnKey = Isbn.parse(isbn).toLong();
+        // Loans and returns of the same book or user run one at a time, others in parallel
+        StripedLocks.Held held = locks.lockUserAndBooks(userID, isbnKey);
+        try {
+            User user = getUserByID(userID);
+            if (user == null) {
+                throw new UserNotFoundException("User not found: " + userID);
+            }
 
-        BookCopies copy = getAvailableCopyByISBN(isbn);
-        if (copy == null) {
-            throw new NoCopyAvailableException("No copy available for ISBN: " + isbn);
+            // The index does not see the books and returns of other desks, so the database is asked before giving up
+            if (copyIndex.getAvailableCount(isbnKey) == 0 && !copyIndex.reload(isbnKey)) {
+                this.addBook(isbnKey, 5);
+            }
+
+            int copyID = claimCopy(isbnKey);
+            if (copyID == CopyAvailabilityIndex.NO_COPY) {
+                throw new NoCopyAvailableException("No copy available for ISBN: " + isbn);
+            }
+
+            Loan loan = new Loan(userID, copyID);
+            if (!loan.register(db)) {
+                // The copy claimed for the loan is released, like the copies of a failed basket
+                db.executeUpdate("UPDATE BookCopies SET isLoaned = FALSE WHERE copyID = ?", copyID);
+                copyIndex.setLoaned(isbnKey, copyID, false);
+                throw new IllegalStateException("The loan of ISBN " + isbn + " to user " + userID + " could not be recorded");
+            }
+            availability.decrement(isbnKey);
+            for (CirculationListener listener : circulationListeners) {
+                listener.onLoan(loan, isbnKey);
+            }
+        } finally {
+            held.unlock();
         }
+    }
 
-        Loan loan = new Loan(userID, copy.getCopyID());
-        loan.register(db);
-        copy.setLoaned(true);
-        copy.update(db);
+    /**
+     * Loans several books to a user at once.
+     * The user is checked once and all the loans are made in one transaction,
+     * so a basket costs about the same round trips as a single loan.
+     * A book without an available copy or with an invalid ISBN does not stop the others.
+     *
+     * @param userID the ID of the user
+     * @param isbns  the ISBNs of the books
+     * @return the outcome of each book, in the order of the basket
+     * @throws UserNotFoundException if the user is not found
+     */
+    public CheckoutResult checkoutBasket(int userID, List<String> isbns) throws UserNotFoundException {
+        CheckoutResult.Status[] statuses = new CheckoutResult.Status[isbns.size()];
+        long[] isbnKeys = new long[isbns.size()];
+        int valid = 0;
+        for (int i = 0; i < isbns.size(); i++) {
+            try {
+                isbnKeys[valid] = Isbn.parse(isbns.get(i)).toLong();
+                valid++;
+                statuses[i] = CheckoutResult.Status.NO_COPY_AVAILABLE;
+            } catch (IllegalArgumentException e) {
+                statuses[i] = CheckoutResult.Status.INVALID_ISBN;
+            }
+        }
+        long[] keys = Arrays.copyOf(isbnKeys, valid);
 
-        // Decrease number of copies available
-        ResultSet rs = db.executeQuery("SELECT copiesAvailable FROM Books WHERE isbn = ?", isbn);
+        Loan[] loans;
+        StripedLocks.Held held = locks.lockUserAndBooks(userID, keys);
         try {
-            if (rs != null && rs.next()) {
-                int copiesAvailable = rs.getInt("copiesAvailable");
-                db.executeUpdate("UPDATE Books SET copiesAvailable = ? WHERE isbn = ?", copiesAvailable - 1, isbn);
+            if (getUserByID(userID) == null) {
+                throw new UserNotFoundException("User not found: " + userID);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            Map<Long, Integer> requested = new HashMap<>();
+            for (long isbnKey : keys) {
+                requested.merge(isbnKey, 1, Integer::sum);
+            }
+            // Reloaded before the transaction, whose claimed copies another connection would still see as free
+            for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+                if (copyIndex.getAvailableCount(entry.getKey()) < entry.getValue() && !copyIndex.reload(entry.getKey())) {
+                    this.addBook(entry.getKey(), 5);
+                }
+            }
+            try {
+                loans = keys.length > 0 ? basketCheckout.checkout(userID, keys) : new Loan[0];
+            } catch (SQLException e) {
+                e.printStackTrace();
+                loans = new Loan[keys.length];
+                for (int i = 0; i < statuses.length; i++) {
+                    if (statuses[i] != CheckoutResult.Status.INVALID_ISBN) {
+                        statuses[i] = CheckoutResult.Status.FAILED;
+                    }
+                }
+            }
+
+            List<Loan> made = new ArrayList<>(loans.length);
+            long[] madeIsbns = new long[loans.length];
+            for (int k = 0; k < loans.length; k++) {
+                if (loans[k] != null) {
+                    availability.decrement(keys[k]);
+                    madeIsbns[made.size()] = keys[k];
+                    made.add(loans[k]);
+                }
+            }
+            if (!made.isEmpty()) {
+                long[] loanedIsbns = Arrays.copyOf(madeIsbns, made.size());
+                for (CirculationListener listener : circulationListeners) {
+                    listener.onLoans(made, loanedIsbns);
+                }
+            }
+        } finally {
+            held.unlock();
+        }
+
+        List<CheckoutResult.Item> items = new ArrayList<>(isbns.size());
+        int k = 0;
+        for (int i = 0; i < isbns.size(); i++) {
+            Loan loan = statuses[i] == CheckoutResult.Status.INVALID_ISBN ? null : loans[k++];
+            items.add(new CheckoutResult.Item(isbns.get(i), loan != null ? CheckoutResult.Status.LOANED : statuses[i], loan));
         }
+        return new CheckoutResult(items);
     }
 
     /**
@@ -186,11 +508,12 @@ public class LibraryManager {
      * @param userID the ID of the user
      * @param isbn   the ISBN of the book
      * @return the loan if it exists, null otherwise
+     * @throws IllegalArgumentException if the ISBN is invalid
      */
     public Loan getLoanByUserAndISBN(int userID, String isbn) {
         ResultSet rs = db.executeQuery("SELECT l.loanID FROM Loans l " +
                 "JOIN BookCopies bc ON l.copyID = bc.copyID " +
-                "WHERE l.userID = ? AND bc.isbn = ? AND l.isReturned = FALSE LIMIT 1", userID, isbn);
+                "WHERE l.userID = ? AND bc.isbn = ? AND l.isReturned = FALSE LIMIT 1", userID, Isbn.parse(isbn).toLong());
         try {
             if (rs != null && rs.next()) {
                 int loanID = rs.getInt("loanID");
@@ -210,29 +533,166 @@ public class LibraryManager {
      * @throws Exception if the loan is not found or another error occurs
      */
     public void returnBook(int userID, String isbn) throws Exception {
+        // Two returns of the same loan would otherwise both find it open and release the copy twice
+        StripedLocks.Held held = locks.lockUserAndBooks(userID, Isbn.parse(isbn).toLong());
+        try {
+            Loan loan = getLoanByUserAndISBN(userID, isbn);
+            if (loan == null) {
+                throw new Exception("Loan not found for user " + userID + " and ISBN " + isbn);
+            }
+
+            loan.setReturnDate(LocalDate.now());
+            loan.setIsReturned(true);
+            loan.update(db);
+
+            BookCopies copy = getCopyByID(loan.getCopyID());
+            copy.setLoaned(false);
+            copy.update(db);
+            copyIndex.setLoaned(copy.getIsbn(), copy.getCopyID(), false);
+            availability.increment(copy.getIsbn());
+            for (CirculationListener listener : circulationListeners) {
+                listener.onReturn(loan, copy.getIsbn());
+            }
+        } finally {
+            held.unlock();
+        }
+    }
+
+    /**
+     * Returns several copies at once, such as the content of the returns bin, without knowing their users.
+     * The copies are handled in batches: the open loans of a batch are found with one query and closed
+     * with one update, and the availability of each book is adjusted once for all its copies.
+     *
+     * @param copyIDs the IDs of the copies, in the order they were scanned
+     * @return the outcome of each copy, in the order of the scan
+     */
+    public ReturnResult returnCopies(List<Integer> copyIDs) {
+        List<ReturnResult.Item> items = new ArrayList<>(copyIDs.size());
+        for (int from = 0; from < copyIDs.size(); from += Config.RETURN_BATCH_SIZE) {
+            returnBatch(copyIDs.subList(from, Math.min(copyIDs.size(), from + Config.RETURN_BATCH_SIZE)), items);
+        }
+        return new ReturnResult(items);
+    }
+
+    /**
+     * Returns a batch of copies.
+     *
+     * @param copyIDs the IDs of the copies, in the order they were scanned
+     * @param items   receives the outcome of each copy
+     */
+    private void returnBatch(List<Integer> copyIDs, List<ReturnResult.Item> items) {
+        Set<Integer> distinct = new LinkedHashSet<>(copyIDs);
+        int[] ids = new int[distinct.size()];
+        int n = 0;
+        for (int copyID : distinct) {
+            ids[n++] = copyID;
+        }
+        Map<Integer, Long> isbnOfCopy = new HashMap<>();
+        List<Loan> found = bulkReturn.findOpenLoans(ids, isbnOfCopy);
+        Map<Integer, Loan> closedByCopy = new HashMap<>();
+        boolean failed = false;
+
+        if (!found.isEmpty()) {
+            int[] userIDs = new int[found.size()];
+            long[] isbnKeys = new long[found.size()];
+            for (int i = 0; i < found.size(); i++) {
+                userIDs[i] = found.get(i).getUserID();
+                isbnKeys[i] = isbnOfCopy.get(found.get(i).getCopyID());
+            }
+            // The same locks as a single return, so a copy returned both ways is released once
+            StripedLocks.Held held = locks.lockUsersAndBooks(userIDs, isbnKeys);
+            try {
+                List<Loan> closed;
+                try {
+                    closed = bulkReturn.close(found, LocalDate.now());
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    closed = new ArrayList<>();
+                    failed = true;
+                }
+
+                Map<Long, Integer> returnedPerIsbn = new HashMap<>();
+                long[] closedIsbns = new long[closed.size()];
+                for (int i = 0; i < closed.size(); i++) {
+                    Loan loan = closed.get(i);
+                    long isbnKey = isbnOfCopy.get(loan.getCopyID());
+                    copyIndex.setLoaned(isbnKey, loan.getCopyID(), false);
+                    returnedPerIsbn.merge(isbnKey, 1, Integer::sum);
+                    closedIsbns[i] = isbnKey;
+                    closedByCopy.put(loan.getCopyID(), loan);
+                }
+                availability.incrementAll(returnedPerIsbn);
+                if (!closed.isEmpty()) {
+                    for (CirculationListener listener : circulationListeners) {
+                        listener.onReturns(closed, closedIsbns);
+                    }
+                }
+            } finally {
+                held.unlock();
+            }
+        }
+
+        for (int copyID : copyIDs) {
+            // A copy scanned twice is returned by its first scan
+            Loan loan = closedByCopy.remove(copyID);
+            if (loan != null) {
+                items.add(new ReturnResult.Item(copyID, ReturnResult.Status.RETURNED, loan));
+            } else if (failed && isbnOfCopy.containsKey(copyID)) {
+                items.add(new ReturnResult.Item(copyID, ReturnResult.Status.FAILED, null));
+            } else {
+                items.add(new ReturnResult.Item(copyID, ReturnResult.Status.NOT_LOANED, null));
+            }
+        }
+    }
+
+    /**
+     * Renews the open loan of a book by a user.
+     *
+     * @param userID the ID of the user
+     * @param isbn   the ISBN of the book
+     * @return the result of the renewal
+     * @throws Exception if the loan is not found
+     */
+    public RenewalResult renewLoan(int userID, String isbn) throws Exception {
         Loan loan = getLoanByUserAndISBN(userID, isbn);
         if (loan == null) {
             throw new Exception("Loan not found for user " + userID + " and ISBN " + isbn);
         }
+        return renewals.renewLoan(loan.getLoanID());
+    }
 
-        loan.setReturnDate(LocalDate.now());
-        loan.setIsReturned(true);
-        loan.update(db);
+    /**
+     * Renews all the open loans of a user at once.
+     *
+     * @param userID the ID of the user
+     * @return the result of the renewal
+     * @throws UserNotFoundException if the user is not found
+     */
+    public RenewalResult renewUserLoans(int userID) throws UserNotFoundException {
+        if (!userExists(userID)) {
+            throw new UserNotFoundException("User not found: " + userID);
+        }
+        return renewals.renewUserLoans(userID);
+    }
 
-        BookCopies copy = getCopyByID(loan.getCopyID());
-        copy.setLoaned(false);
-        copy.update(db);
+    /**
+     * Renews all the open loans due on or before a day at once.
+     *
+     * @param lastDueDate the last due date of the loans to renew
+     * @return the result of the renewal
+     */
+    public RenewalResult renewLoansDueBefore(LocalDate lastDueDate) {
+        return renewals.renewDueBefore(lastDueDate);
+    }
 
-        // Increase number of copies available
-        ResultSet rs = db.executeQuery("SELECT copiesAvailable FROM Books WHERE isbn = ?", isbn);
-        try {
-            if (rs != null && rs.next()) {
-                int copiesAvailable = rs.getInt("copiesAvailable");
-                db.executeUpdate("UPDATE Books SET copiesAvailable = ? WHERE isbn = ?", copiesAvailable + 1, isbn);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Writes the overdue notices of today to the outbox now, instead of waiting for the nightly run.
+     * If a run of today was stopped, it resumes where it stopped; if a run of today completed, it writes them all again.
+     *
+     * @return the number of notices written
+     */
+    public int generateOverdueNotices() {
+        return notices.run(LocalDate.now());
     }
 
     /**
@@ -243,24 +703,31 @@ public class LibraryManager {
      * @return a string representation of the loans
      */
     public String viewLoans(boolean onlyCurrentlyLoaned, boolean onlyOverdueLoans) {
+        if (onlyCurrentlyLoaned && onlyOverdueLoans) {
+            return viewOverdueLoans();
+        }
         StringBuilder result = new StringBuilder();
-        String query = "SELECT l.loanID, u.name, b.isbn, l.loanDate, l.dueDate, l.isReturned FROM Loans l " +
+        String query = "SELECT l.loanID, u.name, b.isbn, l.loanDate, l.dueDate, l.isReturned FROM " +
+                (onlyCurrentlyLoaned ? "Loans" : "AllLoans") + " l " +
                 "JOIN Users u ON l.userID = u.userID " +
                 "JOIN BookCopies bc ON l.copyID = bc.copyID " +
-                "JOIN Books b ON bc.isbn = b.isbn " +
-                "WHERE IF(?, l.isReturned = FALSE, l.isReturned = TRUE OR l.isReturned = FALSE) AND IF(?, l.dueDate <= ?, TRUE)";
-        ResultSet rs = db.executeQuery(query, onlyCurrentlyLoaned, onlyOverdueLoans, LocalDate.now());
+                "JOIN Books b ON bc.isbn = b.isbn";
+        ResultSet rs;
+        // Only the predicates of the flags set are written, so each one can use an index
+        if (onlyCurrentlyLoaned) {
+            rs = db.executeQuery(query + " WHERE l.isReturned = FALSE");
+        } else if (onlyOverdueLoans) {
+            rs = db.executeQuery(query + " WHERE l.dueDate <= ?", LocalDate.now());
+        } else {
+            rs = db.executeQuery(query);
+        }
+        LoanRowDecoder decoder = new LoanRowDecoder();
         try {
             while (rs.next()) {
-                int loanID = rs.getInt("loanID");
-                String userName = rs.getString("name");
-                String isbn = rs.getString("isbn");
-                Boolean isReturned = rs.getBoolean("isReturned");
-                LocalDate loanDate = LocalDate.parse(rs.getString("loanDate"));
-                LocalDate dueDate = LocalDate.parse(rs.getString("dueDate"));
-                result.append("Loan ID: ").append(loanID).append(", User: ").append(userName).append(", ISBN: ")
-                        .append(isbn).append(", Loan Date: ").append(loanDate).append(", Due Date: ").append(dueDate)
-                        .append(" Returned ? :").append(isReturned).append("\n") ;
+                result.append("Loan ID: ").append(decoder.getLoanID(rs)).append(", User: ").append(decoder.getUserName(rs))
+                        .append(", ISBN: ").append(Isbn.format(decoder.getIsbn(rs)))
+                        .append(", Loan Date: ").append(decoder.getLoanDate(rs)).append(", Due Date: ").append(decoder.getDueDate(rs))
+                        .append(" Returned ? :").append(decoder.isReturned(rs)).append("\n") ;
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -268,6 +735,77 @@ public class LibraryManager {
         return result.toString();
     }
 
+    /**
+     * Gets a page of loans, ordered by due date then loan ID.
+     *
+     * @param filter   the loans to list; use {@link #listUserLoans(int, String, int)} for the loans of a user
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @param pageSize the maximum number of loans of the page
+     * @return the page of loans
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public LoanPage listLoans(LoanFilter filter, String cursor, int pageSize) {
+        return loanListing.list(filter, 0, cursor, pageSize);
+    }
+
+    /**
+     * Gets a page of the loans of a user, ordered by due date then loan ID.
+     *
+     * @param userID   the ID of the user
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @param pageSize the maximum number of loans of the page
+     * @return the page of loans
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public LoanPage listUserLoans(int userID, String cursor, int pageSize) {
+        return loanListing.list(LoanFilter.USER, userID, cursor, pageSize);
+    }
+
+    /**
+     * Views the loans that are currently overdue, from the overdue tracker instead of the database.
+     *
+     * @return a string representation of the overdue loans
+     */
+    private String viewOverdueLoans() {
+        StringBuilder result = new StringBuilder();
+        for (OverdueTracker.Entry entry : overdueTracker.getOverdue()) {
+            Loan loan = entry.getLoan();
+            User user = getUserByID(loan.getUserID());
+            result.append("Loan ID: ").append(loan.getLoanID()).append(", User: ").append(user != null ? user.getName() : null)
+                    .append(", ISBN: ").append(Isbn.format(entry.getIsbn()))
+                    .append(", Loan Date: ").append(loan.getLoanDate()).append(", Due Date: ").append(loan.getDueDate())
+                    .append(" Returned ? :").append(loan.getIsReturned()).append("\n") ;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Retrieves the profile of a user with a single query: the user, their current loans,
+     * their overdue loans and the totals of their history.
+     *
+     * @param userID The ID of the user.
+     * @return The profile of the user.
+     * @throws UserNotFoundException If the user is not found.
+     */
+    public PatronProfile getPatronProfile(int userID) throws UserNotFoundException {
+        PatronProfile profile = profiles.getProfile(userID);
+        if (profile == null) {
+            throw new UserNotFoundException("User not found: " + userID);
+        }
+        userCache.put(profile.getUser());
+        return profile;
+    }
+
+    /**
+     * Gets what a user owes in fines, from their maintained balance.
+     *
+     * @param userID The ID of the user.
+     * @return The fines owed by the user, in cents.
+     */
+    public long getFineBalance(int userID) {
+        return fines.getBalance(userID);
+    }
+
     /**
      * Retrieves the loans of a user identified by the given user ID.
      *
@@ -276,20 +814,17 @@ public class LibraryManager {
     */
     public String getUserLoans(int userID) {
         StringBuilder result = new StringBuilder();
-        String query = "SELECT l.loanID, b.isbn, l.loanDate, l.dueDate, l.isReturned FROM Loans l " +
+        String query = "SELECT l.loanID, b.isbn, l.loanDate, l.dueDate, l.isReturned FROM AllLoans l " +
                 "JOIN BookCopies bc ON l.copyID = bc.copyID " +
                 "JOIN Books b ON bc.isbn = b.isbn " +
                 "WHERE l.userID = ?";
         ResultSet rs = db.executeQuery(query, userID);
+        LoanRowDecoder decoder = new LoanRowDecoder();
         try {
             while (rs.next()) {
-                int loanID = rs.getInt("loanID");
-                String isbn = rs.getString("isbn");
-                Boolean isReturned = rs.getBoolean("isReturned");
-                LocalDate loanDate = LocalDate.parse(rs.getString("loanDate"));
-                LocalDate dueDate = LocalDate.parse(rs.getString("dueDate"));
-                result.append("Loan ID: ").append(loanID).append(", ISBN: ").append(isbn).append(", Loan Date: ")
-                        .append(loanDate).append(", Due Date: ").append(dueDate).append(" Returned ? :").append(isReturned).append("\n") ;
+                result.append("Loan ID: ").append(decoder.getLoanID(rs)).append(", ISBN: ").append(Isbn.format(decoder.getIsbn(rs)))
+                        .append(", Loan Date: ").append(decoder.getLoanDate(rs)).append(", Due Date: ").append(decoder.getDueDate(rs))
+                        .append(" Returned ? :").append(decoder.isReturned(rs)).append("\n") ;
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -304,6 +839,9 @@ public class LibraryManager {
      * @return True if the user exists, false otherwise.
      */
     public boolean userExists(int userID) {
+        if (userCache.getByID(userID) != null) {
+            return true;
+        }
         ResultSet rs = db.executeQuery("SELECT 1 FROM Users WHERE userID = ?", userID);
         try {
             return rs != null && rs.next();
@@ -315,11 +853,16 @@ public class LibraryManager {
 
     /**
      * Retrieves the user information associated with the given user ID.
+     * The user is read from the cache, or from the database and then cached.
      *
      * @param userID The ID of the user to retrieve information for.
      * @return The user object containing the user's information, or null if not found.
      */
     private User getUserByID(int userID) {
+        User cached = userCache.getByID(userID);
+        if (cached != null) {
+            return cached;
+        }
         ResultSet rs = db.executeQuery("SELECT * FROM Users WHERE userID = ?", userID);
         try {
             if (rs != null && rs.next()) {
@@ -328,6 +871,7 @@ public class LibraryManager {
                 String address = rs.getString("address");
                 User user = new User(name, email, address);
                 user.setUserID(userID);
+                userCache.put(user);
                 return user;
             }
         } catch (SQLException e) {
@@ -343,25 +887,10 @@ public class LibraryManager {
      * @return True if the email exists, false otherwise.
      */
     private boolean isEmailExists(String email) {
-        ResultSet rs = db.executeQuery("SELECT COUNT(*) FROM Users WHERE email = ?", email);
-        try {
-            if (rs != null && rs.next()) {
-                return rs.getInt(1) > 0;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        if (userCache.getByEmail(email) != null) {
+            return true;
         }
-        return false;
-    }
-
-    /**
-     * Checks if an ISBN exists in the book copies table of the database.
-     *
-     * @param isbn The ISBN to check for existence.
-     * @return True if the ISBN exists, false otherwise.
-     */
-    private boolean isISBNExistsInCopies(String isbn) {
-        ResultSet rs = db.executeQuery("SELECT COUNT(*) FROM BookCopies WHERE isbn = ?", isbn);
+        ResultSet rs = db.executeQuery("SELECT COUNT(*) FROM Users WHERE email = ?", email);
         try {
             if (rs != null && rs.next()) {
                 return rs.getInt(1) > 0;
@@ -385,24 +914,32 @@ public class LibraryManager {
     }
 
     /**
-     * Retrieves an available book copy by ISBN from the database.
+     * Chooses an available copy of a book with the availability index and marks it as loaned in the database.
+     * If the copy was loaned in the meantime by another desk, the index is corrected and another copy is chosen.
+     * If the index runs out of copies, the copies of the book are reloaded once, to find those returned at other desks.
      *
-     * @param isbn The ISBN of the book copy to retrieve.
-     * @return The available book copy, or null if not found.
+     * @param isbn The canonical ISBN key of the book.
+     * @return The ID of the copy, or {@link CopyAvailabilityIndex#NO_COPY} if no copy is available.
      */
-    private BookCopies getAvailableCopyByISBN(String isbn) {
-        ResultSet rs = db.executeQuery("SELECT copyID FROM BookCopies WHERE isbn = ? AND isLoaned = FALSE LIMIT 1", isbn);
-        try {
-            if (rs != null && rs.next()) {
-                int copyID = rs.getInt("copyID");
-                BookCopies copy = new BookCopies(isbn);
-                copy.setCopyID(copyID);
-                return copy;
+    private int claimCopy(long isbn) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int copyID = copyIndex.claim(isbn);
+            while (copyID != CopyAvailabilityIndex.NO_COPY) {
+                int affectedRows = db.executeUpdate("UPDATE BookCopies SET isLoaned = TRUE WHERE copyID = ? AND isLoaned = FALSE", copyID);
+                if (affectedRows > 0) {
+                    return copyID;
+                }
+                if (affectedRows < 0) {
+                    copyIndex.setLoaned(isbn, copyID, false);
+                    return CopyAvailabilityIndex.NO_COPY;
+                }
+                copyID = copyIndex.claim(isbn);
+            }
+            if (attempt == 0) {
+                copyIndex.reload(isbn);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return null;
+        return CopyAvailabilityIndex.NO_COPY;
     }
 
     /**
@@ -415,7 +952,7 @@ public class LibraryManager {
         ResultSet rs = db.executeQuery("SELECT * FROM BookCopies WHERE copyID = ?", copyID);
         try {
             if (rs != null && rs.next()) {
-                String isbn = rs.getString("isbn");
+                long isbn = rs.getLong("isbn");
                 boolean isLoaned = rs.getBoolean("isLoaned");
                 BookCopies copy = new BookCopies(isbn);
                 copy.setCopyID(copyID);
@@ -457,19 +994,7 @@ public class LibraryManager {
         ResultSet rs = db.executeQuery("SELECT * FROM Loans WHERE loanID = ?", loanID);
         try {
             if (rs != null && rs.next()) {
-                int userID = rs.getInt("userID");
-                int copyID = rs.getInt("copyID");
-                LocalDate loanDate = LocalDate.parse(rs.getString("loanDate"));
-                LocalDate dueDate = LocalDate.parse(rs.getString("dueDate"));
-                LocalDate returnDate = rs.getString("returnDate") != null ? LocalDate.parse(rs.getString("returnDate")) : null;
-                boolean isReturned = rs.getBoolean("isReturned");
-                Loan loan = new Loan(userID, copyID);
-                loan.setLoanID(loanID);
-                loan.setLoanDate(loanDate);
-                loan.setDueDate(dueDate);
-                loan.setReturnDate(returnDate);
-                loan.setIsReturned(isReturned);
-                return loan;
+                return new LoanRowDecoder().decode(rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -478,20 +1003,25 @@ public class LibraryManager {
     }
 
     /**
-     * Retrieves a user by their email address from the database.
+     * Retrieves a user by their email address from the cache or the database.
      *
      * @param email The email address of the user to retrieve.
      * @return The user with the given email address, or null if not found.
      */
     public User getUserByEmail(String email) {
+        User cached = userCache.getByEmail(email);
+        if (cached != null) {
+            return cached;
+        }
         ResultSet rs = db.executeQuery("SELECT * FROM Users WHERE email = ?", email);
         try {
             if (rs != null && rs.next()) {
                 int userID = rs.getInt("userID");
                 String name = rs.getString("name");
                 String address = rs.getString("address");
-                User user = new User(name, email, address);
+                User user = new User(name, rs.getString("email"), address);
                 user.setUserID(userID);
+                userCache.put(user);
                 return user;
             }
         } catch (SQLException e) {
@@ -532,17 +1062,19 @@ public class LibraryManager {
 
     /**
      * Searches for a book based on a search term and a search type.
+     * The "bib" records of the BNF are used, or the "aut" records when there are no "bib" records.
      *
-     * @param searchTerm The term to search for. This could be the title, author, or ISBN of the book.
-     * @param searchType The type of search to perform. It can be "isbn", "title", or "author".
-     * @return A string representing the found books. Each book is separated by a newline.
+     * @param searchTerm The term to search for. This could be the title, author, ISBN or date of the book.
+     * @param searchType The type of search to perform. It can be "isbn", "title", "author" or "date".
+     * @return The books found, limited to the first 50 matches.
      * @throws BookNotFoundException If no book is found with the given search term.
      * @throws IllegalArgumentException If an invalid search type is provided.
      */
-    public String searchBook(String searchTerm, String searchType) throws BookNotFoundException {
+    public SearchResult<BookApi> searchBook(String searchTerm, String searchType) throws BookNotFoundException {
         if (searchTerm.isEmpty()) {
             throw new BookNotFoundException("Search term cannot be empty.");
         }
+        long start = System.nanoTime();
     
         List<BookApi> books;
         List<BookApi> books2;
@@ -568,106 +1100,120 @@ public class LibraryManager {
                 throw new IllegalArgumentException("Invalid search type: " + searchType);
         }
     
-        StringBuilder booksString = new StringBuilder();
-        if (!books.isEmpty()) {
-            List<BookApi> firstTwoBooks = books.stream().limit(50).collect(Collectors.toList());
-            for (BookApi book : firstTwoBooks) {
-                booksString.append(book.toString());
-            }
-        } else if (!books2.isEmpty()) {
-            List<BookApi> bookApi2 = books2.stream().limit(50).collect(Collectors.toList());
-            for (BookApi book : bookApi2) {
-                booksString.append(book.toString());
-            }
-        } else {
+        List<BookApi> found = !books.isEmpty() ? books : books2;
+        if (found.isEmpty()) {
             throw new BookNotFoundException("Book not found: " + searchTerm);
         }
-    
-        return booksString.toString();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new SearchResult<>(found.subList(0, Math.min(found.size(), 50)), found.size(), elapsedMillis, BookApi::toString);
     }
 
     /**
-     * Searches for a book based on a search term and a search type.
+     * Searches for a book in the local holdings and in the BNF catalogue at the same time.
+     * Books held by the library are passed to the listener first and ranked first.
      *
-     * @param searchTerm The term to search for. This could be the title, author, or ISBN of the book.
-     * @param searchType The type of search to perform. It can be "isbn", "title", or "author".
-     * @return A string representing the found books. Each book is separated by a newline.
+     * @param searchTerm The term to search for. This could be the title, author, ISBN or date of the book.
+     * @param searchType The type of search to perform. It can be "isbn", "title", "author" or "date".
+     * @param onHit      Called with each hit as soon as it is known.
+     * @return The merged hits, held books first.
      * @throws BookNotFoundException If no book is found with the given search term.
      * @throws IllegalArgumentException If an invalid search type is provided.
      */
-    public String searchBook2(String searchTerm, String searchType) throws BookNotFoundException {
-        if (searchTerm.isEmpty()) {
-            throw new BookNotFoundException("Search term cannot be empty.");
+    public SearchResult<CatalogHit> federatedSearch(String searchTerm, String searchType, Consumer<CatalogHit> onHit) throws BookNotFoundException {
+        return federatedSearch.search(searchTerm, searchType, onHit);
+    }
+
+    /**
+     * Retrieves the most loaned books of the popularity window (30 days by default).
+     * The counts are maintained in memory on each loan, so no query is run.
+     *
+     * @return A string containing information about the most loaned books.
+     */
+    public String mostLoanedBooksLast30d() {
+        StringBuilder result = new StringBuilder();
+        for (PopularityTracker.Count count : popularity.getTop()) {
+            result.append(count).append("\n");
         }
-    
-        List<BookApi> books;
-        List<BookApi> books2;
-    
-        switch (searchType.toLowerCase()) {
-            case "isbn":
-                books = apiConnector.searchByISBN("bib",searchTerm);
-                books2 = apiConnector.searchByISBN("aut", searchTerm);
-                break;
-            case "title":
-                books = apiConnector.searchByTitle("bib",searchTerm);
-                books2 = apiConnector.searchByTitle("aut", searchTerm);
-                break;
-            case "author":
-                books = apiConnector.searchByAuthor("bib",searchTerm);
-                books2 = apiConnector.searchByAuthor("aut", searchTerm);
-                break;
-            case "date":
-                books = apiConnector.searchByDate("bib",searchTerm);
-                books2 = apiConnector.searchByDate("aut", searchTerm);
-                break;
-            default:
-                throw new IllegalArgumentException("Invalid search type: " + searchType);
+        return result.toString();
+    }
+
+    /**
+     * Builds a circulation report between two days from the daily rollups:
+     * the activity of each period, the most loaned books and the most active patrons.
+     *
+     * @param from   the first day, included
+     * @param to     the last day, included
+     * @param period the length of the periods of the report
+     * @return a string containing the report
+     */
+    public String circulationReport(LocalDate from, LocalDate to, ReportPeriod period) {
+        StringBuilder result = new StringBuilder();
+        for (CirculationStats stats : rollups.getStats(from, to, period)) {
+            result.append(stats).append("\n");
         }
-    
-        StringBuilder booksString = new StringBuilder();
-        if (!books.isEmpty()) {
-            List<BookApi> firstTwoBooks = books.stream().limit(50).collect(Collectors.toList());
-            for (BookApi book : firstTwoBooks) {
-                booksString.append(book.toString2());
-            }
-        } else if (!books2.isEmpty()) {
-            List<BookApi> bookApi2 = books2.stream().limit(50).collect(Collectors.toList());
-            for (BookApi book : bookApi2) {
-                booksString.append(book.toString2());
-            }
-        } else {
-            throw new BookNotFoundException("Book not found: " + searchTerm);
+        result.append("\nMost loaned books:\n");
+        for (String line : rollups.getTopBooks(from, to, Config.REPORT_TOP_SIZE)) {
+            result.append(line).append("\n");
         }
-    
-        return booksString.toString();
+        result.append("\nMost active patrons:\n");
+        for (String line : rollups.getTopPatrons(from, to, Config.REPORT_TOP_SIZE)) {
+            result.append(line).append("\n");
+        }
+        return result.toString();
     }
 
     /**
-     * Retrieves the most loaned books in the last 30 days from the database.
+     * Builds an approximate report of a year from the analytics sketches, without querying the loans:
+     * the number of distinct borrowers and the most loaned books of all time with their distinct borrowers of the year.
      *
-     * @return A string containing information about the most loaned books.
+     * @param year the year of the report
+     * @return a string containing the report
      */
-    public String mostLoanedBooksLast30d() {
+    public String analyticsReport(int year) {
         StringBuilder result = new StringBuilder();
-        String query = "SELECT b.isbn, COUNT(l.loanID) as loanCount FROM Loans l " +
-                "JOIN BookCopies bc ON l.copyID = bc.copyID " +
-                "JOIN Books b ON bc.isbn = b.isbn " +
-                "WHERE l.loanDate >= ? " +
-                "GROUP BY b.isbn " +
-                "ORDER BY loanCount DESC LIMIT 5";
-        ResultSet rs = db.executeQuery(query, LocalDate.now().minusDays(30));
-        try {
-            while (rs.next()) {
-                String isbn = rs.getString("isbn");
-                int loanCount = rs.getInt("loanCount");
-                result.append("ISBN: ").append(isbn).append(", Loan Count: ").append(loanCount).append("\n");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        result.append("Distinct borrowers in ").append(year).append(": ~")
+                .append(analytics.estimateDistinctBorrowers(year)).append("\n");
+        result.append("\nMost loaned books of all time (estimated):\n");
+        for (Map.Entry<Long, Long> entry : analytics.getTopBooks(Config.REPORT_TOP_SIZE)) {
+            result.append("ISBN: ").append(Isbn.format(entry.getKey())).append(", Loan Count: ~").append(entry.getValue())
+                    .append(", Borrowers in ").append(year).append(": ~")
+                    .append(analytics.estimateDistinctBorrowers(entry.getKey(), year)).append("\n");
         }
         return result.toString();
     }
 
+    /**
+     * Exports a report to a file, streaming the rows so that memory does not grow with the report.
+     *
+     * @param report    the report to export
+     * @param file      the file to write
+     * @param encoder   the format of the file
+     * @param progress  called with the number of rows written so far
+     * @param cancelled checked between rows; the export stops and the file is deleted when it returns true
+     * @return the number of rows written
+     * @throws IOException if the export fails
+     */
+    public long exportReport(ExportReport report, Path file, RowEncoder encoder, LongConsumer progress,
+            BooleanSupplier cancelled) throws IOException {
+        return exporter.export(report, file, encoder, progress, cancelled);
+    }
+
+    /**
+     * Exports a report to an output, such as the response of the library server, without closing it.
+     *
+     * @param report    the report to export
+     * @param out       the output, which should be buffered
+     * @param encoder   the format of the output
+     * @param progress  called with the number of rows written so far
+     * @param cancelled checked between rows; the export stops when it returns true
+     * @return the number of rows written
+     * @throws IOException if the export fails
+     */
+    public long exportReport(ExportReport report, Writer out, RowEncoder encoder, LongConsumer progress,
+            BooleanSupplier cancelled) throws IOException {
+        return exporter.export(report, out, encoder, progress, cancelled);
+    }
+
     /**
      * Checks if there are existing loans for a given user.
      *
@@ -0,0 +1,304 @@
+package com.example.cybooks.manager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import com.example.cybooks.exception.BookNotFoundException;
+import com.example.cybooks.exception.EmailAlreadyExistsException;
+import com.example.cybooks.exception.InvalidEmailFormatException;
+import com.example.cybooks.exception.NoCopyAvailableException;
+import com.example.cybooks.exception.UserHasLoansException;
+import com.example.cybooks.exception.UserNotFoundException;
+import com.example.cybooks.model.BookApi;
+import com.example.cybooks.model.CatalogHit;
+import com.example.cybooks.model.CheckoutResult;
+import com.example.cybooks.model.ExportReport;
+import com.example.cybooks.model.ImportResult;
+import com.example.cybooks.model.LoanFilter;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.PatronProfile;
+import com.example.cybooks.model.RenewalResult;
+import com.example.cybooks.model.ReportPeriod;
+import com.example.cybooks.model.ReturnResult;
+import com.example.cybooks.model.SearchResult;
+import com.example.cybooks.model.User;
+import com.example.cybooks.utils.RowEncoder;
+
+/**
+ * The operations of a library desk.
+ * They are implemented by {@link LibraryManager}, which works on the database directly,
+ * and by the client of the library server, which sends them to a manager shared by all the desks.
+ */
+public interface LibraryService {
+    /**
+     * Prepares the service before the first operation.
+     */
+    void initialize();
+
+    /**
+     * Releases the resources of the service after the last operation.
+     */
+    void shutdown();
+
+    /**
+     * Registers a new user.
+     *
+     * @param name    the name of the user
+     * @param email   the email address of the user
+     * @param address the address of the user
+     * @throws InvalidEmailFormatException if the email format is invalid
+     * @throws EmailAlreadyExistsException if the email already exists
+     */
+    void registerUser(String name, String email, String address) throws InvalidEmailFormatException, EmailAlreadyExistsException;
+
+    /**
+     * Registers the users of a local CSV file in bulk, and writes the rejected rows to a local error report.
+     *
+     * @param csv         the CSV file, with a header naming the name, email and optional address columns
+     * @param errorReport the CSV file listing the rejected rows and their reason
+     * @param progress    called with the number of rows read so far
+     * @return the counts of the import
+     * @throws IOException if a file cannot be read or written, or the import fails
+     */
+    ImportResult importUsers(Path csv, Path errorReport, LongConsumer progress) throws IOException;
+
+    /**
+     * Updates the information of a user.
+     *
+     * @param userID  the ID of the user
+     * @param name    the new name, or an empty string to keep it
+     * @param email   the new email address, or an empty string to keep it
+     * @param address the new address, or an empty string to keep it
+     * @throws UserNotFoundException       if the user is not found
+     * @throws InvalidEmailFormatException if the email format is invalid
+     * @throws EmailAlreadyExistsException if the email already exists
+     */
+    void updateUser(int userID, String name, String email, String address) throws UserNotFoundException, InvalidEmailFormatException, EmailAlreadyExistsException;
+
+    /**
+     * Deletes a user.
+     *
+     * @param userID the ID of the user
+     * @throws UserNotFoundException if the user is not found
+     * @throws UserHasLoansException if the user has loans that are not returned
+     */
+    void deleteUser(int userID) throws UserNotFoundException, UserHasLoansException;
+
+    /**
+     * Loans a book to a user.
+     *
+     * @param userID the ID of the user
+     * @param isbn   the ISBN of the book
+     * @throws UserNotFoundException    if the user is not found
+     * @throws NoCopyAvailableException if no copy of the book is available
+     * @throws IllegalStateException    if the loan could not be recorded
+     */
+    void loanBook(int userID, String isbn) throws UserNotFoundException, NoCopyAvailableException;
+
+    /**
+     * Loans several books to a user at once, in one transaction.
+     *
+     * @param userID the ID of the user
+     * @param isbns  the ISBNs of the books
+     * @return the outcome of each book, in the order of the basket
+     * @throws UserNotFoundException if the user is not found
+     */
+    CheckoutResult checkoutBasket(int userID, List<String> isbns) throws UserNotFoundException;
+
+    /**
+     * Returns a book that was loaned out.
+     *
+     * @param userID the ID of the user
+     * @param isbn   the ISBN of the book
+     * @throws Exception if the loan is not found or another error occurs
+     */
+    void returnBook(int userID, String isbn) throws Exception;
+
+    /**
+     * Returns several copies at once, such as the content of the returns bin, without knowing their users.
+     *
+     * @param copyIDs the IDs of the copies, in the order they were scanned
+     * @return the outcome of each copy, in the order of the scan
+     */
+    ReturnResult returnCopies(List<Integer> copyIDs);
+
+    /**
+     * Renews the open loan of a book by a user.
+     *
+     * @param userID the ID of the user
+     * @param isbn   the ISBN of the book
+     * @return the result of the renewal
+     * @throws Exception if the loan is not found
+     */
+    RenewalResult renewLoan(int userID, String isbn) throws Exception;
+
+    /**
+     * Renews all the open loans of a user at once.
+     *
+     * @param userID the ID of the user
+     * @return the result of the renewal
+     * @throws UserNotFoundException if the user is not found
+     */
+    RenewalResult renewUserLoans(int userID) throws UserNotFoundException;
+
+    /**
+     * Renews all the open loans due on or before a day at once.
+     *
+     * @param lastDueDate the last due date of the loans to renew
+     * @return the result of the renewal
+     */
+    RenewalResult renewLoansDueBefore(LocalDate lastDueDate);
+
+    /**
+     * Writes the overdue notices of today to the outbox.
+     *
+     * @return the number of notices written
+     */
+    int generateOverdueNotices();
+
+    /**
+     * Views loans in the library.
+     *
+     * @param onlyCurrentlyLoaned whether to view only currently loaned books
+     * @param onlyOverdueLoans    whether to view only overdue loans
+     * @return a string representation of the loans
+     */
+    String viewLoans(boolean onlyCurrentlyLoaned, boolean onlyOverdueLoans);
+
+    /**
+     * Gets a page of loans, ordered by due date then loan ID.
+     *
+     * @param filter   the loans to list
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @param pageSize the maximum number of loans of the page
+     * @return the page of loans
+     */
+    LoanPage listLoans(LoanFilter filter, String cursor, int pageSize);
+
+    /**
+     * Gets a page of the loans of a user, ordered by due date then loan ID.
+     *
+     * @param userID   the ID of the user
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @param pageSize the maximum number of loans of the page
+     * @return the page of loans
+     */
+    LoanPage listUserLoans(int userID, String cursor, int pageSize);
+
+    /**
+     * Retrieves the profile of a user: the user, their current loans and the totals of their history.
+     *
+     * @param userID the ID of the user
+     * @return the profile of the user
+     * @throws UserNotFoundException if the user is not found
+     */
+    PatronProfile getPatronProfile(int userID) throws UserNotFoundException;
+
+    /**
+     * Checks if a user exists.
+     *
+     * @param userID the ID of the user
+     * @return true if the user exists, false otherwise
+     */
+    boolean userExists(int userID);
+
+    /**
+     * Gets the number of copies of a book that are not loaned.
+     *
+     * @param isbn the ISBN of the book
+     * @return the number of copies available, or 0 if the book is not held
+     * @throws IllegalArgumentException if the ISBN is invalid
+     */
+    int getCopiesAvailable(String isbn);
+
+    /**
+     * Checks if an ISBN exists in the BNF catalogue.
+     *
+     * @param isbn the ISBN to check
+     * @return true if the ISBN exists, false otherwise
+     */
+    boolean isbnExistsInBNF(String isbn);
+
+    /**
+     * Searches for a user by ID.
+     *
+     * @param userID the ID of the user
+     * @return the user
+     * @throws UserNotFoundException if the user is not found
+     */
+    User searchUser(int userID) throws UserNotFoundException;
+
+    /**
+     * Searches for a user by email address.
+     *
+     * @param email the email address of the user
+     * @return the user
+     * @throws UserNotFoundException if the user is not found
+     */
+    User searchUser(String email) throws UserNotFoundException;
+
+    /**
+     * Searches for a book in the BNF catalogue.
+     *
+     * @param searchTerm the term to search for
+     * @param searchType the type of search: "isbn", "title", "author" or "date"
+     * @return the books found
+     * @throws BookNotFoundException if no book is found
+     */
+    SearchResult<BookApi> searchBook(String searchTerm, String searchType) throws BookNotFoundException;
+
+    /**
+     * Searches for a book in the local holdings and in the BNF catalogue at the same time.
+     *
+     * @param searchTerm the term to search for
+     * @param searchType the type of search: "isbn", "title", "author" or "date"
+     * @param onHit      called with each hit
+     * @return the merged hits, held books first
+     * @throws BookNotFoundException if no book is found
+     */
+    SearchResult<CatalogHit> federatedSearch(String searchTerm, String searchType, Consumer<CatalogHit> onHit) throws BookNotFoundException;
+
+    /**
+     * Retrieves the most loaned books of the popularity window.
+     *
+     * @return a string containing the most loaned books
+     */
+    String mostLoanedBooksLast30d();
+
+    /**
+     * Builds a circulation report between two days.
+     *
+     * @param from   the first day of the report
+     * @param to     the last day of the report
+     * @param period the period of the rows of the report
+     * @return a string containing the report
+     */
+    String circulationReport(LocalDate from, LocalDate to, ReportPeriod period);
+
+    /**
+     * Builds an approximate report of a year from the analytics sketches.
+     *
+     * @param year the year of the report
+     * @return a string containing the report
+     */
+    String analyticsReport(int year);
+
+    /**
+     * Exports a report to a local file.
+     *
+     * @param report    the report to export
+     * @param file      the file to write
+     * @param encoder   the format of the file
+     * @param progress  called with the number of rows written so far
+     * @param cancelled checked between rows; the export stops and the file is deleted when it returns true
+     * @return the number of rows written
+     * @throws IOException if the export fails
+     */
+    long exportReport(ExportReport report, Path file, RowEncoder encoder, LongConsumer progress,
+            BooleanSupplier cancelled) throws IOException;
+}
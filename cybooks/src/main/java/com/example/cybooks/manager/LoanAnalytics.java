@@ -0,0 +1,380 @@
+package com.example.cybooks.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Loan;
+import com.example.cybooks.utils.CountMinSketch;
+import com.example.cybooks.utils.HyperLogLog;
+import com.example.cybooks.utils.LongObjectMap;
+
+/**
+ * Answers approximate questions on the loans in constant time, without querying the Loans table:
+ * the number of distinct borrowers of a book or of the library in a year (HyperLogLog sketches),
+ * and the number of loans of a book and the most loaned books of all time (Count-Min sketch with heavy hitters).
+ * The error bounds are documented in {@link HyperLogLog} and {@link CountMinSketch}.
+ * The sketches are saved with the ID of the last loan they include, so that loading them only replays
+ * the loans made since the last save. The sketch of each book and year is a row of the AnalyticsSketches table,
+ * and only the ones changed since the last save are written; the other sketches are a row of the AnalyticsState table.
+ */
+public class LoanAnalytics implements CirculationListener {
+    private static final String STATE_NAME = "loans";
+    private static final int SAVE_BATCH_SIZE = 100;
+
+    private final DataBase db;
+    private final int precision;
+    // Distinct borrowers per book and year, keyed by isbn * 10000 + year
+    private final LongObjectMap<HyperLogLog> borrowersByBookYear = new LongObjectMap<>();
+    // Distinct borrowers of the library per year, keyed by year
+    private final LongObjectMap<HyperLogLog> borrowersByYear = new LongObjectMap<>();
+    private CountMinSketch loansByBook;
+    private final Set<Long> changedBookYears = new HashSet<>();
+    private int lastLoanID;
+    private ScheduledExecutorService saver;
+    private final Object saveLock = new Object();
+
+    /**
+     * Constructs the analytics of the given database.
+     *
+     * @param db        the database connection object
+     * @param precision The precision of the HyperLogLog sketches.
+     */
+    public LoanAnalytics(DataBase db, int precision) {
+        this.db = db;
+        this.precision = precision;
+        this.loansByBook = newLoanSketch();
+    }
+
+    /**
+     * Loads the saved sketches, then adds the loans made since they were saved.
+     */
+    public synchronized void load() {
+        clear();
+        ResultSet rs = db.executeQuery("SELECT state, lastLoanID FROM AnalyticsState WHERE name = ?", STATE_NAME);
+        try {
+            if (rs != null && rs.next()) {
+                readState(rs.getBytes("state"));
+                lastLoanID = rs.getInt("lastLoanID");
+            }
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            clear();
+        }
+        boolean[] stale = { false };
+        int loaded = db.forEachRow("SELECT sketchKey, sketch FROM AnalyticsSketches", row -> {
+            HyperLogLog sketch = HyperLogLog.fromBytes(row.getBytes("sketch"));
+            if (sketch.getPrecision() != precision) {
+                stale[0] = true;
+            } else {
+                borrowersByBookYear.put(row.getLong("sketchKey"), sketch);
+            }
+        });
+        if (loaded < 0 || stale[0]) {
+            // All the loans are replayed, which rewrites every sketch at the next save
+            System.out.println("Saved loan analytics cannot be used, rebuilding them.");
+            clear();
+        }
+        int replayed = db.forEachRow("SELECT l.loanID, l.userID, l.loanDate, bc.isbn FROM AllLoans l " +
+                "JOIN BookCopies bc ON l.copyID = bc.copyID WHERE l.loanID > ? ORDER BY l.loanID",
+                row -> add(row.getInt("loanID"), row.getInt("userID"), row.getObject("loanDate", LocalDate.class), row.getLong("isbn")),
+                lastLoanID);
+        System.out.println("Loan analytics loaded, " + replayed + " loan(s) replayed.");
+    }
+
+    /**
+     * Saves the sketches changed since the last save in one transaction.
+     * The sketches are copied under the lock of the analytics and written without it, so loans are not held up.
+     * If the save fails, the sketches stay marked as changed and are written by the next save.
+     */
+    public void save() {
+        synchronized (saveLock) {
+            List<Long> keys;
+            List<byte[]> sketches = new ArrayList<>();
+            byte[] state;
+            int savedLoanID;
+            synchronized (this) {
+                try {
+                    state = writeState();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                keys = new ArrayList<>(changedBookYears);
+                for (long key : keys) {
+                    sketches.add(borrowersByBookYear.get(key).toBytes());
+                }
+                changedBookYears.clear();
+                savedLoanID = lastLoanID;
+            }
+            try {
+                db.inTransaction(connection -> {
+                    for (int from = 0; from < keys.size(); from += SAVE_BATCH_SIZE) {
+                        int to = Math.min(from + SAVE_BATCH_SIZE, keys.size());
+                        StringBuilder query = new StringBuilder("INSERT INTO AnalyticsSketches (sketchKey, sketch) VALUES ");
+                        for (int i = from; i < to; i++) {
+                            query.append(i == from ? "(?, ?)" : ", (?, ?)");
+                        }
+                        query.append(" ON DUPLICATE KEY UPDATE sketch = VALUES(sketch)");
+                        try (PreparedStatement stmt = connection.prepareStatement(query.toString())) {
+                            int param = 1;
+                            for (int i = from; i < to; i++) {
+                                stmt.setLong(param++, keys.get(i));
+                                stmt.setBytes(param++, sketches.get(i));
+                            }
+                            stmt.executeUpdate();
+                        }
+                    }
+                    try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO AnalyticsState " +
+                            "(name, state, lastLoanID) VALUES (?, ?, ?) " +
+                            "ON DUPLICATE KEY UPDATE state = VALUES(state), lastLoanID = VALUES(lastLoanID)")) {
+                        stmt.setString(1, STATE_NAME);
+                        stmt.setBytes(2, state);
+                        stmt.setInt(3, savedLoanID);
+                        stmt.executeUpdate();
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                e.printStackTrace();
+                synchronized (this) {
+                    changedBookYears.addAll(keys);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts saving the sketches in the background.
+     *
+     * @param intervalMinutes The delay between two saves, in minutes.
+     */
+    public synchronized void startSaving(long intervalMinutes) {
+        if (saver != null) {
+            return;
+        }
+        saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "analytics-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        saver.scheduleWithFixedDelay(this::save, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the background saves and saves the sketches one last time.
+     */
+    public void stopSaving() {
+        synchronized (this) {
+            if (saver != null) {
+                saver.shutdownNow();
+                saver = null;
+            }
+        }
+        save();
+    }
+
+    /**
+     * Adds a loan to the sketches.
+     *
+     * @param loan The new loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    @Override
+    public synchronized void onLoan(Loan loan, long isbn) {
+        add(loan.getLoanID(), loan.getUserID(), loan.getLoanDate(), isbn);
+    }
+
+    /**
+     * Returns do not change the sketches.
+     *
+     * @param loan The returned loan.
+     * @param isbn The canonical ISBN key of the returned book.
+     */
+    @Override
+    public void onReturn(Loan loan, long isbn) {
+    }
+
+    /**
+     * Estimates the number of distinct patrons who borrowed a book during a year.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @param year The year.
+     * @return The estimated number of distinct borrowers.
+     */
+    public synchronized long estimateDistinctBorrowers(long isbn, int year) {
+        HyperLogLog sketch = borrowersByBookYear.get(bookYearKey(isbn, year));
+        return sketch == null ? 0 : sketch.estimate();
+    }
+
+    /**
+     * Estimates the number of distinct patrons who borrowed during a year.
+     *
+     * @param year The year.
+     * @return The estimated number of distinct borrowers.
+     */
+    public synchronized long estimateDistinctBorrowers(int year) {
+        HyperLogLog sketch = borrowersByYear.get(year);
+        return sketch == null ? 0 : sketch.estimate();
+    }
+
+    /**
+     * Estimates the number of loans of a book, which is never lower than the real number.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return The estimated number of loans.
+     */
+    public synchronized long estimateLoans(long isbn) {
+        return loansByBook.estimate(isbn);
+    }
+
+    /**
+     * Gets the most loaned books of all time.
+     *
+     * @param limit The maximum number of books.
+     * @return The ISBN keys with their estimated numbers of loans, most loaned first.
+     */
+    public synchronized List<Map.Entry<Long, Long>> getTopBooks(int limit) {
+        return loansByBook.getHeavyHitters(limit);
+    }
+
+    /**
+     * Adds a loan to the sketches.
+     *
+     * @param loanID   The ID of the loan.
+     * @param userID   The ID of the borrower.
+     * @param loanDate The date of the loan.
+     * @param isbn     The canonical ISBN key of the book.
+     */
+    private void add(int loanID, int userID, LocalDate loanDate, long isbn) {
+        int year = loanDate.getYear();
+        long key = bookYearKey(isbn, year);
+        sketchFor(borrowersByBookYear, key).add(userID);
+        changedBookYears.add(key);
+        sketchFor(borrowersByYear, year).add(userID);
+        loansByBook.add(isbn);
+        lastLoanID = Math.max(lastLoanID, loanID);
+    }
+
+    /**
+     * Empties the sketches, before they are loaded or rebuilt.
+     */
+    private void clear() {
+        borrowersByBookYear.clear();
+        borrowersByYear.clear();
+        changedBookYears.clear();
+        loansByBook = newLoanSketch();
+        lastLoanID = 0;
+    }
+
+    /**
+     * Gets the sketch of a key, creating it if needed.
+     *
+     * @param sketches The sketches.
+     * @param key      The key.
+     * @return The sketch of the key.
+     */
+    private HyperLogLog sketchFor(LongObjectMap<HyperLogLog> sketches, long key) {
+        HyperLogLog sketch = sketches.get(key);
+        if (sketch == null) {
+            sketch = new HyperLogLog(precision);
+            sketches.put(key, sketch);
+        }
+        return sketch;
+    }
+
+    /**
+     * Serializes the sketches of the AnalyticsState table.
+     * The sketches of the books are saved in their own rows, so their section of the state is empty.
+     *
+     * @return The serialized state.
+     * @throws IOException if the state cannot be written.
+     */
+    private byte[] writeState() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(borrowersByYear.size());
+        IOException[] error = { null };
+        borrowersByYear.forEach((key, sketch) -> {
+            try {
+                byte[] state = sketch.toBytes();
+                out.writeLong(key);
+                out.writeInt(state.length);
+                out.write(state);
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        byte[] state = loansByBook.toBytes();
+        out.writeInt(state.length);
+        out.write(state);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads sketches serialized by {@link #writeState()}.
+     * The sketches of books found in a state saved before they had their own rows are marked as changed,
+     * so the next save moves them to the AnalyticsSketches table.
+     *
+     * @param state The serialized state.
+     * @throws IOException if the state is corrupted.
+     */
+    private void readState(byte[] state) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+        for (LongObjectMap<HyperLogLog> sketches : List.of(borrowersByBookYear, borrowersByYear)) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                HyperLogLog sketch = HyperLogLog.fromBytes(in.readNBytes(in.readInt()));
+                if (sketch.getPrecision() != precision) {
+                    throw new IOException("Saved sketches have precision " + sketch.getPrecision());
+                }
+                sketches.put(key, sketch);
+                if (sketches == borrowersByBookYear) {
+                    changedBookYears.add(key);
+                }
+            }
+        }
+        loansByBook = CountMinSketch.fromBytes(in.readNBytes(in.readInt()));
+    }
+
+    /**
+     * Creates an empty sketch of the loans per book, keeping the 100 most loaned books.
+     *
+     * @return The sketch.
+     */
+    private CountMinSketch newLoanSketch() {
+        return new CountMinSketch(2719, 5, 100);
+    }
+
+    /**
+     * Gets the key of the sketch of a book and a year.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @param year The year.
+     * @return The key of the sketch.
+     */
+    private static long bookYearKey(long isbn, int year) {
+        return isbn * 10_000 + year;
+    }
+}
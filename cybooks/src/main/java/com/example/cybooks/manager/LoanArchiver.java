@@ -0,0 +1,205 @@
+package com.example.cybooks.manager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.example.cybooks.model.DataBase;
+
+/**
+ * Moves the loans returned before a horizon from the Loans table to the LoansArchive table,
+ * so that the queries on current loans only go through recent rows.
+ * Loans are moved in small batches, each in its own transaction on a dedicated connection,
+ * with a pause between batches so that the archiving does not hold up loans and returns.
+ * The archive is partitioned by month of loan date; a partition is added for each new month archived.
+ */
+public class LoanArchiver {
+    private final DataBase db;
+    private final int horizonDays;
+    private final int batchSize;
+    private final long pauseMillis;
+    private ScheduledExecutorService scheduler;
+    private LocalDate lastPartitionBound;
+
+    /**
+     * Constructs an archiver over the given database.
+     *
+     * @param db          the database connection object
+     * @param horizonDays The number of days after their return during which loans stay in the Loans table.
+     * @param batchSize   The number of loans moved per transaction.
+     * @param pauseMillis The pause between two batches, in milliseconds.
+     */
+    public LoanArchiver(DataBase db, int horizonDays, int batchSize, long pauseMillis) {
+        this.db = db;
+        this.horizonDays = horizonDays;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Starts archiving in the background, once at startup and then at the given interval.
+     *
+     * @param intervalHours The delay between two runs, in hours.
+     */
+    public synchronized void start(long intervalHours) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loan-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 1, TimeUnit.HOURS.toMinutes(intervalHours), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the background archiving.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Moves all the loans returned before the horizon, batch by batch.
+     *
+     * @return The number of loans archived.
+     */
+    public int archive() {
+        LocalDate horizon = LocalDate.now().minusDays(horizonDays);
+        int archived = 0;
+        try (Connection connection = db.openConnection()) {
+            int moved;
+            do {
+                moved = archiveBatch(connection, horizon);
+                archived += moved;
+                if (moved > 0 && pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            } while (moved == batchSize);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (archived > 0) {
+            System.out.println("Archived " + archived + " returned loan(s).");
+        }
+        return archived;
+    }
+
+    /**
+     * Moves one batch of returned loans to the archive in a single transaction.
+     *
+     * @param connection The connection of the archiver.
+     * @param horizon    The day before which returned loans are archived.
+     * @return The number of loans moved.
+     * @throws SQLException if the batch cannot be moved; the transaction is then rolled back.
+     */
+    private int archiveBatch(Connection connection, LocalDate horizon) throws SQLException {
+        List<Integer> loanIDs = new ArrayList<>(batchSize);
+        LocalDate lastLoanDate = null;
+        try (PreparedStatement select = connection.prepareStatement("SELECT loanID, loanDate FROM Loans " +
+                "WHERE isReturned = TRUE AND returnDate < ? ORDER BY loanDate, loanID LIMIT ?")) {
+            select.setObject(1, horizon);
+            select.setInt(2, batchSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    loanIDs.add(rs.getInt("loanID"));
+                    lastLoanDate = rs.getObject("loanDate", LocalDate.class);
+                }
+            }
+        }
+        if (loanIDs.isEmpty()) {
+            return 0;
+        }
+        // Partition changes commit implicitly, so they are made before the transaction
+        ensurePartitions(connection, lastLoanDate);
+
+        String placeholders = String.join(", ", Collections.nCopies(loanIDs.size(), "?"));
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO LoansArchive " +
+                "(loanID, userID, copyID, loanDate, numberOfDays, dueDate, returnDate, isReturned) " +
+                "SELECT loanID, userID, copyID, loanDate, numberOfDays, dueDate, returnDate, isReturned FROM Loans " +
+                "WHERE loanID IN (" + placeholders + ")");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM Loans WHERE loanID IN (" + placeholders + ")")) {
+            for (int i = 0; i < loanIDs.size(); i++) {
+                insert.setInt(i + 1, loanIDs.get(i));
+                delete.setInt(i + 1, loanIDs.get(i));
+            }
+            insert.executeUpdate();
+            int moved = delete.executeUpdate();
+            connection.commit();
+            return moved;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Adds the monthly partitions of the archive up to the month of the given day.
+     * Months are only added after the last partition, so a loan older than the last partition
+     * is stored in the first partition that covers its date.
+     *
+     * @param connection The connection of the archiver.
+     * @param day        The day that must have its own monthly partition.
+     * @throws SQLException if a partition cannot be added.
+     */
+    private void ensurePartitions(Connection connection, LocalDate day) throws SQLException {
+        if (lastPartitionBound == null) {
+            lastPartitionBound = readLastPartitionBound(connection);
+        }
+        LocalDate bound = YearMonth.from(day).plusMonths(1).atDay(1);
+        while (lastPartitionBound == null || lastPartitionBound.isBefore(bound)) {
+            LocalDate next = lastPartitionBound == null ? bound : lastPartitionBound.plusMonths(1);
+            String name = "p" + YearMonth.from(next.minusMonths(1)).toString().replace("-", "");
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE LoansArchive REORGANIZE PARTITION pmax INTO (" +
+                        "PARTITION " + name + " VALUES LESS THAN ('" + next + "'), " +
+                        "PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+            }
+            lastPartitionBound = next;
+        }
+    }
+
+    /**
+     * Reads the upper bound of the last monthly partition of the archive.
+     *
+     * @param connection The connection of the archiver.
+     * @return The first day after the last monthly partition, or null if the archive has no monthly partition.
+     * @throws SQLException if the partitions cannot be read.
+     */
+    private LocalDate readLastPartitionBound(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT PARTITION_DESCRIPTION " +
+                "FROM INFORMATION_SCHEMA.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'LoansArchive' " +
+                "AND PARTITION_NAME <> 'pmax' ORDER BY PARTITION_ORDINAL_POSITION DESC LIMIT 1");
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return LocalDate.parse(rs.getString(1).replace("'", ""));
+            }
+        }
+        return null;
+    }
+}
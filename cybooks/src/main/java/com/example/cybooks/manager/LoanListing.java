@@ -0,0 +1,122 @@
+package com.example.cybooks.manager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Loan;
+import com.example.cybooks.model.LoanFilter;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.LoanRowDecoder;
+
+/**
+ * Lists the loans page by page, ordered by due date then loan ID.
+ * Each filter has its own query whose predicates match an index of the Loans table,
+ * and pages are located with the (dueDate, loanID) of the last loan of the previous page
+ * instead of an offset, so every page costs the same whatever its position.
+ * The listings of the history read the current loans and the archive each with its own index,
+ * one page at most from each, and merge the two pages; going through the AllLoans view instead
+ * would sort the whole history for every page.
+ */
+public class LoanListing {
+    private static final String JOINS = " l JOIN BookCopies bc ON l.copyID = bc.copyID " +
+            "JOIN Users u ON l.userID = u.userID ";
+    private static final String AFTER_CURSOR = "(l.dueDate > ? OR (l.dueDate = ? AND l.loanID > ?)) ";
+    private static final String ORDER = "ORDER BY l.dueDate, l.loanID LIMIT ?";
+    private static final String COLUMNS = "l.loanID, l.userID, l.copyID, l.loanDate, l.numberOfDays, l.dueDate, " +
+            "l.returnDate, l.isReturned";
+
+    private final DataBase db;
+
+    /**
+     * Constructs a listing over the given database.
+     *
+     * @param db the database connection object
+     */
+    public LoanListing(DataBase db) {
+        this.db = db;
+    }
+
+    /**
+     * Gets a page of loans.
+     *
+     * @param filter   The loans to list.
+     * @param userID   The ID of the user, for {@link LoanFilter#USER}; ignored otherwise.
+     * @param cursor   The cursor of the page, or null for the first page.
+     * @param pageSize The maximum number of loans of the page.
+     * @return The page of loans.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public LoanPage list(LoanFilter filter, int userID, String cursor, int pageSize) {
+        List<Object> whereParams = new ArrayList<>();
+        StringBuilder where = new StringBuilder();
+        switch (filter) {
+            case CURRENT:
+                where.append("WHERE l.isReturned = FALSE ");
+                break;
+            case OVERDUE:
+                where.append("WHERE l.isReturned = FALSE AND l.dueDate <= ? ");
+                whereParams.add(LocalDate.now());
+                break;
+            case USER:
+                where.append("WHERE l.userID = ? ");
+                whereParams.add(userID);
+                break;
+            default:
+                where.append("WHERE TRUE ");
+                break;
+        }
+        if (cursor != null) {
+            LocalDate dueDate = LoanPage.cursorDueDate(cursor);
+            where.append("AND ").append(AFTER_CURSOR);
+            whereParams.add(dueDate);
+            whereParams.add(dueDate);
+            whereParams.add(LoanPage.cursorLoanID(cursor));
+        }
+
+        List<Object> params = new ArrayList<>();
+        StringBuilder query = new StringBuilder("SELECT l.*, bc.isbn, u.name FROM ");
+        // Open loans are never archived, so only the listings of the history read the archive too
+        if (filter == LoanFilter.ALL || filter == LoanFilter.USER) {
+            // Each table gives its own first page through its index, and only those rows are merged and joined
+            query.append("((SELECT ").append(COLUMNS).append(" FROM Loans l ").append(where).append(ORDER)
+                    .append(") UNION ALL (SELECT ").append(COLUMNS).append(" FROM LoansArchive l ").append(where)
+                    .append(ORDER).append("))").append(JOINS);
+            params.addAll(whereParams);
+            params.add(pageSize + 1);
+            params.addAll(whereParams);
+            params.add(pageSize + 1);
+        } else {
+            query.append("Loans").append(JOINS).append(where);
+            params.addAll(whereParams);
+        }
+        query.append(ORDER);
+        // One more row than the page tells if there is a next page
+        params.add(pageSize + 1);
+
+        List<LoanPage.Item> items = new ArrayList<>(pageSize);
+        boolean hasNext = false;
+        ResultSet rs = db.executeQuery(query.toString(), params.toArray());
+        LoanRowDecoder decoder = new LoanRowDecoder();
+        try {
+            while (rs != null && rs.next()) {
+                if (items.size() == pageSize) {
+                    hasNext = true;
+                    break;
+                }
+                items.add(new LoanPage.Item(decoder.decode(rs), decoder.getIsbn(rs), decoder.getUserName(rs)));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        String nextCursor = null;
+        if (hasNext) {
+            Loan last = items.get(items.size() - 1).getLoan();
+            nextCursor = LoanPage.cursorOf(last.getDueDate(), last.getLoanID());
+        }
+        return new LoanPage(items, nextCursor);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.cybooks.manager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.RenewalResult;
+
+/**
+ * Renews loans with a single UPDATE, however many loans are renewed at once.
+ * The renewal policy is checked by the UPDATE itself: a loan is renewed only if it is open and not overdue,
+ * if it was renewed fewer times than the maximum, and if its user does not owe more fines than allowed.
+ * The renewed loans are moved to their new due date in the overdue tracker before the transaction commits,
+ * while the tracker is locked, so the tracker never sees a renewed loan with its old due date.
+ */
+public class LoanRenewals {
+    private final DataBase db;
+    private final OverdueTracker overdueTracker;
+    private final int renewalDays;
+    private final int maxRenewals;
+    private final long maxFine;
+
+    /**
+     * Constructs the renewals over the given database.
+     *
+     * @param db             the database connection object
+     * @param overdueTracker The tracker of the open loans, moved along with the renewals.
+     * @param renewalDays    The number of days added to the due date by a renewal.
+     * @param maxRenewals    The number of times a loan can be renewed.
+     * @param maxFine        The fines a user can owe and still renew, in cents.
+     */
+    public LoanRenewals(DataBase db, OverdueTracker overdueTracker, int renewalDays, int maxRenewals, long maxFine) {
+        this.db = db;
+        this.overdueTracker = overdueTracker;
+        this.renewalDays = renewalDays;
+        this.maxRenewals = maxRenewals;
+        this.maxFine = maxFine;
+    }
+
+    /**
+     * Renews one loan.
+     *
+     * @param loanID The ID of the loan.
+     * @return The result of the renewal.
+     */
+    public RenewalResult renewLoan(int loanID) {
+        return renew("loanID = ?", loanID);
+    }
+
+    /**
+     * Renews all the open loans of a user.
+     *
+     * @param userID The ID of the user.
+     * @return The result of the renewal.
+     */
+    public RenewalResult renewUserLoans(int userID) {
+        return renew("userID = ?", userID);
+    }
+
+    /**
+     * Renews all the open loans due on or before a day, such as all the loans due this week.
+     * The loans already overdue are matched but refused by the policy.
+     *
+     * @param lastDueDate The last due date of the loans to renew.
+     * @return The result of the renewal.
+     */
+    public RenewalResult renewDueBefore(LocalDate lastDueDate) {
+        return renew("dueDate <= ?", lastDueDate);
+    }
+
+    /**
+     * Renews the open loans matching a condition, in one transaction on a dedicated connection.
+     * The matching loans are locked, renewed by one UPDATE that checks the policy, then read back
+     * to move the renewed ones in the overdue tracker.
+     *
+     * @param condition The condition on the Loans table selecting the loans to renew.
+     * @param parameter The parameter of the condition.
+     * @return The result of the renewal.
+     */
+    private RenewalResult renew(String condition, Object parameter) {
+        LocalDate today = LocalDate.now();
+        // The tracker stays locked until the renewal is committed, so that no check sees the old due dates
+        synchronized (overdueTracker) {
+            // The loans due already are notified before their rows are locked, since notifying them writes to Loans;
+            // the moves of the renewal then only reach due dates after today and notify nothing
+            overdueTracker.checkDue(today);
+            try (Connection connection = db.openConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    List<Integer> loanIDs = new ArrayList<>();
+                    try (PreparedStatement select = connection.prepareStatement("SELECT loanID FROM Loans " +
+                            "WHERE isReturned = FALSE AND " + condition + " FOR UPDATE")) {
+                        select.setObject(1, parameter);
+                        try (ResultSet rs = select.executeQuery()) {
+                            while (rs.next()) {
+                                loanIDs.add(rs.getInt("loanID"));
+                            }
+                        }
+                    }
+                    if (loanIDs.isEmpty()) {
+                        connection.commit();
+                        return new RenewalResult(0, 0);
+                    }
+
+                    String placeholders = String.join(", ", Collections.nCopies(loanIDs.size(), "?"));
+                    int renewed;
+                    try (PreparedStatement update = connection.prepareStatement("UPDATE Loans l " +
+                            "LEFT JOIN FineBalances fb ON fb.userID = l.userID " +
+                            "SET l.dueDate = DATE_ADD(l.dueDate, INTERVAL ? DAY), " +
+                            "l.numberOfDays = l.numberOfDays + ?, l.renewals = l.renewals + 1 " +
+                            "WHERE l.loanID IN (" + placeholders + ") AND l.isReturned = FALSE AND l.dueDate > ? " +
+                            "AND l.renewals < ? AND COALESCE(fb.balance, 0) <= ?")) {
+                        int index = 1;
+                        update.setInt(index++, renewalDays);
+                        update.setInt(index++, renewalDays);
+                        for (int loanID : loanIDs) {
+                            update.setInt(index++, loanID);
+                        }
+                        update.setObject(index++, today);
+                        update.setInt(index++, maxRenewals);
+                        update.setLong(index, maxFine);
+                        renewed = update.executeUpdate();
+                    }
+
+                    if (renewed > 0) {
+                        try (PreparedStatement select = connection.prepareStatement("SELECT loanID, dueDate, numberOfDays " +
+                                "FROM Loans WHERE loanID IN (" + placeholders + ")")) {
+                            for (int i = 0; i < loanIDs.size(); i++) {
+                                select.setInt(i + 1, loanIDs.get(i));
+                            }
+                            try (ResultSet rs = select.executeQuery()) {
+                                while (rs.next()) {
+                                    overdueTracker.reschedule(rs.getInt("loanID"),
+                                            rs.getObject("dueDate", LocalDate.class), rs.getInt("numberOfDays"));
+                                }
+                            }
+                        }
+                    }
+                    connection.commit();
+                    return new RenewalResult(loanIDs.size(), renewed);
+                } catch (SQLException e) {
+                    connection.rollback();
+                    // The tracker may have been moved before the failure, so it is reloaded from the database
+                    overdueTracker.resync();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return new RenewalResult(0, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.cybooks.manager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Isbn;
+import com.example.cybooks.model.OverdueNotice;
+
+/**
+ * Writes an overdue notice for each patron with overdue loans to an outbox directory, one file per patron.
+ * The overdue loans are streamed with their users on a dedicated connection, ordered by user,
+ * so only the notice of the current patron is kept in memory.
+ * Notices are rendered and written by a fixed pool of threads with a bounded queue;
+ * when the queue is full the reading thread renders the notice itself, which slows the reading down.
+ * The last patron whose notice and those of all the patrons before were written is saved in a checkpoint file,
+ * so a run stopped in the middle resumes after this patron when restarted on the same day.
+ * A run that reached the end writes a completion marker instead, and another run of the same day,
+ * such as one started by hand after the nightly run, writes all the notices again.
+ */
+public class OverdueNoticeJob {
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String COMPLETE_FILE = "complete";
+
+    private final DataBase db;
+    private final Path outbox;
+    private final int threads;
+    private final int queueSize;
+    private final int checkpointInterval;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs the job over the given database.
+     *
+     * @param db                 the database connection object
+     * @param outbox             The directory where the notices are written, in a subdirectory per day.
+     * @param threads            The number of threads rendering the notices.
+     * @param queueSize          The number of notices waiting to be rendered before the reading slows down.
+     * @param checkpointInterval The number of notices written between two saves of the checkpoint.
+     */
+    public OverdueNoticeJob(DataBase db, Path outbox, int threads, int queueSize, int checkpointInterval) {
+        this.db = db;
+        this.outbox = outbox;
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Runs the job in the background every night at the given hour.
+     *
+     * @param hour The hour of the run, from 0 to 23.
+     */
+    public synchronized void start(int hour) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overdue-notices");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(hour, 0);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                run(LocalDate.now());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, Duration.between(now, next).toMinutes(), TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the nightly runs.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Writes the notices of a day, resuming after the checkpoint if a run of the same day was stopped,
+     * or starting over if a run of the same day completed.
+     *
+     * @param today The day of the notices; loans due on or before it are overdue.
+     * @return The number of notices written by this run.
+     */
+    public synchronized int run(LocalDate today) {
+        Path directory = outbox.resolve(today.toString());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        try {
+            if (Files.exists(directory.resolve(COMPLETE_FILE))) {
+                // The checkpoint goes first, so a failure in between still starts over
+                Files.deleteIfExists(directory.resolve(CHECKPOINT_FILE));
+                Files.delete(directory.resolve(COMPLETE_FILE));
+                System.out.println("Overdue notices of " + today + " were already written; writing them again.");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        int resumeAfter = readCheckpoint(directory);
+        if (resumeAfter > 0) {
+            System.out.println("Resuming overdue notices after user " + resumeAfter + ".");
+        }
+
+        String query = "SELECT u.userID, u.name, u.email, l.loanID, l.loanDate, l.dueDate, bc.isbn, f.amount " +
+                "FROM Loans l JOIN Users u ON u.userID = l.userID " +
+                "JOIN BookCopies bc ON bc.copyID = l.copyID " +
+                "LEFT JOIN LoanFines f ON f.loanID = l.loanID " +
+                "WHERE l.isReturned = FALSE AND l.dueDate <= ? AND l.userID > ? " +
+                "ORDER BY l.userID, l.dueDate, l.loanID";
+        ThreadPoolExecutor renderers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "notice-renderer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        // The notices in the order of their patrons, to move the checkpoint only over written notices
+        ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+        int loans = 0;
+        int notices = 0;
+        int checkpoint = resumeAfter;
+        int sinceCheckpoint = 0;
+        long start = System.nanoTime();
+        try (Connection connection = db.openConnection();
+             PreparedStatement stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                     ResultSet.CONCUR_READ_ONLY)) {
+            // Makes the MySQL driver stream the rows instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            stmt.setObject(1, today);
+            stmt.setInt(2, resumeAfter);
+            try (ResultSet rs = stmt.executeQuery()) {
+                OverdueNotice notice = null;
+                while (rs.next()) {
+                    int userID = rs.getInt("userID");
+                    if (notice == null || notice.getUserID() != userID) {
+                        if (notice != null) {
+                            inFlight.add(submit(renderers, notice, directory, today));
+                        }
+                        notice = new OverdueNotice(userID, rs.getString("name"), rs.getString("email"));
+                    }
+                    long isbn = rs.getLong("isbn");
+                    notice.addLine(rs.getInt("loanID"), rs.wasNull() ? Isbn.INVALID : isbn, rs.getObject("loanDate", LocalDate.class),
+                            rs.getObject("dueDate", LocalDate.class), rs.getLong("amount"));
+
+                    // Moves the checkpoint over the notices written, in the order of the patrons
+                    while (!inFlight.isEmpty() && (inFlight.peek().future.isDone() || inFlight.size() > queueSize + threads)) {
+                        Pending done = inFlight.poll();
+                        loans += await(done);
+                        checkpoint = done.userID;
+                        notices++;
+                        if (++sinceCheckpoint >= checkpointInterval) {
+                            writeCheckpoint(directory, checkpoint);
+                            sinceCheckpoint = 0;
+                        }
+                    }
+                }
+                if (notice != null) {
+                    inFlight.add(submit(renderers, notice, directory, today));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                Pending done = inFlight.poll();
+                loans += await(done);
+                checkpoint = done.userID;
+                notices++;
+            }
+            writeCheckpoint(directory, checkpoint);
+            Files.writeString(directory.resolve(COMPLETE_FILE), LocalDateTime.now().toString(), StandardCharsets.UTF_8);
+        } catch (SQLException | IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            System.out.println("Overdue notices stopped after user " + checkpoint + "; the next run resumes from there.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            renderers.shutdownNow();
+        }
+
+        double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+        System.out.printf("Wrote %d overdue notice(s) for %d loan(s) in %.1f s (%.0f notices/s).%n",
+                notices, loans, seconds, notices / seconds);
+        return notices;
+    }
+
+    /**
+     * Submits the rendering and writing of a notice.
+     *
+     * @param renderers The pool of the renderers.
+     * @param notice    The notice.
+     * @param directory The directory of the notices of the day.
+     * @param today     The day of the notice.
+     * @return The pending notice.
+     */
+    private Pending submit(ThreadPoolExecutor renderers, OverdueNotice notice, Path directory, LocalDate today) {
+        Future<Integer> future = renderers.submit(() -> {
+            write(directory, notice, today);
+            return notice.getLoanCount();
+        });
+        return new Pending(notice.getUserID(), future);
+    }
+
+    /**
+     * Writes a notice to its file. The file is written under a temporary name then renamed,
+     * so the outbox never holds a partial notice, and rewriting a notice after a restart replaces it.
+     *
+     * @param directory The directory of the notices of the day.
+     * @param notice    The notice.
+     * @param today     The day of the notice.
+     */
+    private void write(Path directory, OverdueNotice notice, LocalDate today) {
+        Path file = directory.resolve("notice-" + notice.getUserID() + ".eml");
+        Path temp = directory.resolve("notice-" + notice.getUserID() + ".tmp");
+        try {
+            Files.writeString(temp, notice.render(today), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for a notice to be written.
+     *
+     * @param pending The pending notice.
+     * @return The number of loans in the notice.
+     * @throws IOException if the notice could not be written.
+     * @throws InterruptedException if the job is interrupted.
+     */
+    private int await(Pending pending) throws IOException, InterruptedException {
+        try {
+            return pending.future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Cannot write the notice of user " + pending.userID, e.getCause());
+        }
+    }
+
+    /**
+     * Reads the last patron of the checkpoint of a day.
+     *
+     * @param directory The directory of the notices of the day.
+     * @return The ID of the last patron whose notice was written, 0 if the day has no checkpoint.
+     */
+    private int readCheckpoint(Path directory) {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(Files.readString(file, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Saves the last patron whose notice and those of all the patrons before were written.
+     *
+     * @param directory The directory of the notices of the day.
+     * @param userID    The ID of the patron.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    private void writeCheckpoint(Path directory, int userID) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(temp, Integer.toString(userID), StandardCharsets.UTF_8);
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A notice being rendered, with its patron.
+     */
+    private static class Pending {
+        private final int userID;
+        private final Future<Integer> future;
+
+        /**
+         * Constructs a pending notice.
+         *
+         * @param userID The ID of the patron.
+         * @param future The rendering of the notice.
+         */
+        private Pending(int userID, Future<Integer> future) {
+            this.userID = userID;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.cybooks.manager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Loan;
+import com.example.cybooks.model.LoanRowDecoder;
+
+/**
+ * Tracks the open loans by due date, so that overdue loans are known without scanning the Loans table.
+ * Loans that are not due yet wait in a set ordered by due date; when their due date is reached,
+ * they move to the overdue loans and the overdue handlers are called, exactly once per loan.
+ * A loan is overdue from its due date on, like in the loan reports.
+ * The loans whose handlers were called are flagged in the Loans table, so the loans that became
+ * overdue while the application was stopped are notified when the tracker is loaded again.
+ */
+public class OverdueTracker implements CirculationListener {
+    private static final int NOTIFIED_BATCH_SIZE = 1000;
+    private static final Comparator<Entry> BY_DUE_DATE = Comparator.comparing((Entry entry) -> entry.loan.getDueDate())
+            .thenComparingInt(entry -> entry.loan.getLoanID());
+
+    private final DataBase db;
+    private final TreeSet<Entry> pending = new TreeSet<>(BY_DUE_DATE);
+    private final Map<Integer, Entry> pendingByID = new HashMap<>();
+    private final LinkedHashMap<Integer, Entry> overdue = new LinkedHashMap<>();
+    private final List<Consumer<Entry>> overdueHandlers = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a tracker over the given database.
+     * The tracker is empty until {@link #resync()} is called.
+     *
+     * @param db the database connection object
+     */
+    public OverdueTracker(DataBase db) {
+        this.db = db;
+    }
+
+    /**
+     * Registers a handler called when a loan becomes overdue.
+     *
+     * @param handler The handler to register.
+     */
+    public void addOverdueHandler(Consumer<Entry> handler) {
+        overdueHandlers.add(handler);
+    }
+
+    /**
+     * Reloads the open loans from the database.
+     * Loans that are already overdue are put with the overdue loans, and the handlers are called
+     * for those that became overdue without being notified, such as while the application was stopped.
+     */
+    public synchronized void resync() {
+        pending.clear();
+        pendingByID.clear();
+        overdue.clear();
+        String query = "SELECT l.*, bc.isbn FROM Loans l JOIN BookCopies bc ON l.copyID = bc.copyID " +
+                "WHERE l.isReturned = FALSE ORDER BY l.dueDate, l.loanID";
+        LoanRowDecoder decoder = new LoanRowDecoder();
+        LocalDate today = LocalDate.now();
+        List<Entry> missed = new ArrayList<>();
+        db.forEachRow(query, rs -> {
+            Entry entry = new Entry(decoder.decode(rs), decoder.getIsbn(rs));
+            if (entry.isDue(today)) {
+                overdue.put(entry.loan.getLoanID(), entry);
+                if (!rs.getBoolean("overdueNotified")) {
+                    missed.add(entry);
+                }
+            } else {
+                pending.add(entry);
+                pendingByID.put(entry.loan.getLoanID(), entry);
+            }
+        });
+        System.out.println("Overdue tracker loaded: " + pending.size() + " open loans, " + overdue.size() + " overdue, " +
+                missed.size() + " not notified yet.");
+        notifyOverdue(missed);
+    }
+
+    /**
+     * Starts checking the due dates in the background.
+     *
+     * @param intervalMinutes The delay between two checks, in minutes.
+     */
+    public synchronized void start(long intervalMinutes) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overdue-tracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                advance(LocalDate.now());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the background checks.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Tracks a new loan.
+     *
+     * @param loan The new loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    @Override
+    public void onLoan(Loan loan, long isbn) {
+        track(loan, isbn);
+    }
+
+    /**
+     * Stops tracking a returned loan.
+     *
+     * @param loan The returned loan.
+     * @param isbn The canonical ISBN key of the returned book.
+     */
+    @Override
+    public synchronized void onReturn(Loan loan, long isbn) {
+        untrack(loan.getLoanID());
+    }
+
+    /**
+     * Tracks an open loan, or moves it if it was already tracked with another due date.
+     *
+     * @param loan The open loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    public synchronized void track(Loan loan, long isbn) {
+        untrack(loan.getLoanID());
+        Entry entry = new Entry(loan, isbn);
+        pending.add(entry);
+        pendingByID.put(loan.getLoanID(), entry);
+        advance(LocalDate.now());
+    }
+
+    /**
+     * Stops tracking a loan.
+     *
+     * @param loanID The ID of the loan.
+     */
+    public synchronized void untrack(int loanID) {
+        Entry entry = pendingByID.remove(loanID);
+        if (entry != null) {
+            pending.remove(entry);
+        } else {
+            overdue.remove(loanID);
+        }
+    }
+
+    /**
+     * Moves a tracked loan to a new due date, after a renewal.
+     * A loan that was overdue goes back with the pending loans if its new due date is not reached.
+     * Nothing changes if the due date is the same.
+     *
+     * @param loanID       The ID of the loan.
+     * @param dueDate      The new due date of the loan.
+     * @param numberOfDays The new length of the loan, in days.
+     * @return True if the loan was tracked, false otherwise.
+     */
+    public synchronized boolean reschedule(int loanID, LocalDate dueDate, int numberOfDays) {
+        Entry entry = pendingByID.get(loanID);
+        if (entry == null) {
+            entry = overdue.get(loanID);
+        }
+        if (entry == null) {
+            return false;
+        }
+        if (entry.loan.getDueDate().equals(dueDate)) {
+            return true;
+        }
+        untrack(loanID);
+        // The entry is out of the sorted set while its due date changes
+        entry.loan.setDueDate(dueDate);
+        entry.loan.setNumberOfDays(numberOfDays);
+        pending.add(entry);
+        pendingByID.put(loanID, entry);
+        advance(LocalDate.now());
+        return true;
+    }
+
+    /**
+     * Moves the loans due on or before the given day to the overdue loans and calls the handlers now,
+     * instead of at the next background check.
+     *
+     * @param today The current day.
+     */
+    public synchronized void checkDue(LocalDate today) {
+        advance(today);
+    }
+
+    /**
+     * Gets the loans that are currently overdue, by due date.
+     * Only the overdue loans are visited.
+     *
+     * @return The overdue loans.
+     */
+    public synchronized List<Entry> getOverdue() {
+        advance(LocalDate.now());
+        List<Entry> result = new ArrayList<>(overdue.values());
+        result.sort(BY_DUE_DATE);
+        return result;
+    }
+
+    /**
+     * Gets the number of loans that are currently overdue.
+     *
+     * @return The number of overdue loans.
+     */
+    public synchronized int getOverdueCount() {
+        advance(LocalDate.now());
+        return overdue.size();
+    }
+
+    /**
+     * Moves the loans due on or before the given day to the overdue loans and calls the handlers.
+     *
+     * @param today The current day.
+     */
+    private void advance(LocalDate today) {
+        List<Entry> due = new ArrayList<>();
+        while (!pending.isEmpty() && pending.first().isDue(today)) {
+            Entry entry = pending.pollFirst();
+            pendingByID.remove(entry.loan.getLoanID());
+            overdue.put(entry.loan.getLoanID(), entry);
+            due.add(entry);
+        }
+        notifyOverdue(due);
+    }
+
+    /**
+     * Calls the handlers for some loans that became overdue, then flags the loans as notified in the database.
+     *
+     * @param entries The loans that became overdue.
+     */
+    private void notifyOverdue(List<Entry> entries) {
+        for (Entry entry : entries) {
+            for (Consumer<Entry> handler : overdueHandlers) {
+                try {
+                    handler.accept(entry);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        for (int from = 0; from < entries.size(); from += NOTIFIED_BATCH_SIZE) {
+            int to = Math.min(from + NOTIFIED_BATCH_SIZE, entries.size());
+            StringBuilder placeholders = new StringBuilder();
+            Object[] loanIDs = new Object[to - from];
+            for (int i = from; i < to; i++) {
+                placeholders.append(i == from ? "?" : ", ?");
+                loanIDs[i - from] = entries.get(i).loan.getLoanID();
+            }
+            db.executeUpdate("UPDATE Loans SET overdueNotified = TRUE WHERE loanID IN (" + placeholders + ")", loanIDs);
+        }
+    }
+
+    /**
+     * An open loan with the ISBN of its book.
+     */
+    public static final class Entry {
+        private final Loan loan;
+        private final long isbn;
+
+        Entry(Loan loan, long isbn) {
+            this.loan = loan;
+            this.isbn = isbn;
+        }
+
+        /**
+         * Gets the loan.
+         *
+         * @return The loan.
+         */
+        public Loan getLoan() {
+            return loan;
+        }
+
+        /**
+         * Gets the canonical ISBN key of the loaned book.
+         *
+         * @return The ISBN key.
+         */
+        public long getIsbn() {
+            return isbn;
+        }
+
+        /**
+         * Checks if the loan is due on the given day.
+         *
+         * @param today The current day.
+         * @return True if the due date is reached, false otherwise.
+         */
+        boolean isDue(LocalDate today) {
+            return !loan.getDueDate().isAfter(today);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.cybooks.manager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.ImportResult;
+import com.example.cybooks.model.User;
+import com.example.cybooks.utils.CsvDecoder;
+import com.example.cybooks.utils.CsvEncoder;
+
+/**
+ * Registers users in bulk from a CSV file, such as the pupils of a school.
+ * The file is streamed row by row; the emails are checked against a set of the registered emails
+ * loaded once, instead of one query per row, and the valid rows are inserted with one multi-row
+ * statement per transaction. The rejected rows are written to an error report with their reason.
+ */
+public class PatronImport {
+    private static final String[] REPORT_COLUMNS = { "line", "name", "email", "address", "error" };
+
+    private final DataBase db;
+    private final int batchSize;
+    private final CsvEncoder report = new CsvEncoder();
+
+    /**
+     * Constructs the import over the given database.
+     *
+     * @param db        the database connection object
+     * @param batchSize The number of users inserted per statement and per transaction.
+     */
+    public PatronImport(DataBase db, int batchSize) {
+        this.db = db;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports the users of a CSV file and writes the rejected rows to a CSV error report.
+     *
+     * @param csv         The CSV file, with a header naming the name, email and optional address columns.
+     * @param errorReport The file of the error report.
+     * @param progress    Called with the number of rows read after each batch and at the end.
+     * @return The counts of the import.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public ImportResult importUsers(Path csv, Path errorReport, LongConsumer progress) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter errors = Files.newBufferedWriter(errorReport, StandardCharsets.UTF_8)) {
+            return importUsers(in, errors, progress);
+        }
+    }
+
+    /**
+     * Imports the users of a CSV input and writes the rejected rows to a CSV error report.
+     * A row is rejected when its name is missing, its email is malformed, or its email is already
+     * registered or used by an earlier row. The users of a batch are registered together or not at all;
+     * when the database refuses a batch, its rows are retried one by one so only the faulty rows are rejected.
+     *
+     * @param csv      The CSV input, with a header naming the name, email and optional address columns.
+     * @param errors   The output of the error report, which is not closed.
+     * @param progress Called with the number of rows read after each batch and at the end.
+     * @return The counts of the import.
+     * @throws IOException if the input cannot be read, has no name or email column, or the report cannot be written.
+     */
+    public ImportResult importUsers(Reader csv, Writer errors, LongConsumer progress) throws IOException {
+        CsvDecoder decoder = new CsvDecoder(csv);
+        report.writeHeader(errors, REPORT_COLUMNS);
+        String[] header = decoder.readRow();
+        if (header == null) {
+            return new ImportResult(0, 0, 0);
+        }
+        int nameColumn = columnOf(header, "name");
+        int emailColumn = columnOf(header, "email");
+        int addressColumn = columnOf(header, "address");
+        if (nameColumn < 0 || emailColumn < 0) {
+            throw new IOException("The CSV header must name the name and email columns");
+        }
+
+        Set<String> emails = loadEmails();
+        List<String[]> batch = new ArrayList<>(batchSize);
+        List<Long> lines = new ArrayList<>(batchSize);
+        long rowsRead = 0;
+        long imported = 0;
+        long rejected = 0;
+        String[] row;
+        while ((row = decoder.readRow()) != null) {
+            if (row.length == 1 && row[0].isBlank()) {
+                continue;
+            }
+            rowsRead++;
+            String name = valueOf(row, nameColumn);
+            String email = valueOf(row, emailColumn);
+            String address = addressColumn >= 0 ? valueOf(row, addressColumn) : "";
+            String error = null;
+            if (name.isEmpty()) {
+                error = "Missing name";
+            } else if (!User.isValidEmail(email)) {
+                error = "Invalid email format";
+            } else if (!emails.add(email.toLowerCase(Locale.ROOT))) {
+                error = "Email already exists";
+            }
+            if (error != null) {
+                report.writeRow(errors, new Object[] { decoder.getRowLine(), name, email, address, error });
+                rejected++;
+                continue;
+            }
+            batch.add(new String[] { name, email, address });
+            lines.add(decoder.getRowLine());
+            if (batch.size() == batchSize) {
+                int inserted = flush(batch, lines, errors);
+                imported += inserted;
+                rejected += batch.size() - inserted;
+                batch.clear();
+                lines.clear();
+                progress.accept(rowsRead);
+            }
+        }
+        if (!batch.isEmpty()) {
+            int inserted = flush(batch, lines, errors);
+            imported += inserted;
+            rejected += batch.size() - inserted;
+        }
+        progress.accept(rowsRead);
+        return new ImportResult(rowsRead, imported, rejected);
+    }
+
+    /**
+     * Inserts a batch of users in one transaction, or row by row if the database refuses the batch.
+     *
+     * @param batch  The name, email and address of each user.
+     * @param lines  The line of each user in the CSV input.
+     * @param errors The output of the error report.
+     * @return The number of users inserted.
+     * @throws IOException if the report cannot be written.
+     */
+    private int flush(List<String[]> batch, List<Long> lines, Writer errors) throws IOException {
+        try {
+            db.inTransaction(connection -> insert(connection, batch, 0, batch.size()));
+            return batch.size();
+        } catch (SQLException e) {
+            // An email registered since the emails were loaded rejects the whole statement
+        }
+        String[] refused = new String[batch.size()];
+        int inserted;
+        try {
+            // A refused row only undoes its own statement, so the rows are retried in one transaction
+            inserted = db.inTransaction(connection -> {
+                int rows = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    try {
+                        rows += insert(connection, batch, i, i + 1);
+                    } catch (SQLException rowError) {
+                        refused[i] = rowError.getMessage();
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            inserted = 0;
+            Arrays.fill(refused, e.getMessage());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (refused[i] != null) {
+                String[] user = batch.get(i);
+                report.writeRow(errors, new Object[] { lines.get(i), user[0], user[1], user[2],
+                        "Rejected by the database: " + refused[i] });
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Inserts some users of a batch with one statement.
+     *
+     * @param connection The connection of the transaction.
+     * @param batch      The name, email and address of each user.
+     * @param from       The index of the first user to insert.
+     * @param to         The index after the last user to insert.
+     * @return The number of users inserted.
+     * @throws SQLException if the users cannot be inserted.
+     */
+    private static int insert(Connection connection, List<String[]> batch, int from, int to) throws SQLException {
+        StringBuilder query = new StringBuilder("INSERT INTO Users (name, email, address) VALUES ");
+        for (int i = from; i < to; i++) {
+            query.append(i == from ? "(?, ?, ?)" : ", (?, ?, ?)");
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(query.toString())) {
+            int param = 1;
+            for (int i = from; i < to; i++) {
+                String[] user = batch.get(i);
+                stmt.setString(param++, user[0]);
+                stmt.setString(param++, user[1]);
+                stmt.setString(param++, user[2]);
+            }
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Loads the emails of all the registered users, in lower case like the comparisons of the database.
+     *
+     * @return The emails.
+     * @throws IOException if the emails cannot be read.
+     */
+    private Set<String> loadEmails() throws IOException {
+        Set<String> emails = new HashSet<>();
+        int rows = db.forEachRow("SELECT email FROM Users WHERE email IS NOT NULL",
+                rs -> emails.add(rs.getString(1).toLowerCase(Locale.ROOT)));
+        if (rows < 0) {
+            throw new IOException("The registered emails cannot be read");
+        }
+        return emails;
+    }
+
+    /**
+     * Finds a column in the header of the CSV input, ignoring case and spaces.
+     *
+     * @param header The header.
+     * @param name   The name of the column.
+     * @return The index of the column, or -1 if it is missing.
+     */
+    private static int columnOf(String[] header, String name) {
+        for (int i = 0; i < header.length; i++) {
+            // A header saved by a spreadsheet can start with a byte order mark
+            if (header[i].replace("\uFEFF", "").trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a value of a row, trimmed.
+     *
+     * @param row    The values of the row.
+     * @param column The index of the column.
+     * @return The value, or an empty string if the row is too short.
+     */
+    private static String valueOf(String[] row, int column) {
+        return column < row.length ? row[column].trim() : "";
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.cybooks.manager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Loan;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.LoanRowDecoder;
+import com.example.cybooks.model.PatronProfile;
+import com.example.cybooks.model.User;
+
+/**
+ * Builds patron profiles with a single query, whatever the length of their history.
+ * The lifetime totals of each patron are kept in the PatronStats table, which the loan and return paths update,
+ * so the profile only joins the user with these totals, their fine balance and the loans that are not returned yet.
+ */
+public class PatronProfiles implements CirculationListener {
+    private final DataBase db;
+
+    /**
+     * Constructs the profiles of the given database.
+     *
+     * @param db the database connection object
+     */
+    public PatronProfiles(DataBase db) {
+        this.db = db;
+    }
+
+    /**
+     * Fills the PatronStats table from the current and archived loans if it was never filled.
+     */
+    public void backfillIfEmpty() {
+        ResultSet rs = db.executeQuery("SELECT (SELECT COUNT(*) FROM PatronStats), (SELECT COUNT(*) FROM AllLoans)");
+        try {
+            if (rs == null || !rs.next() || rs.getInt(1) > 0 || rs.getInt(2) == 0) {
+                return;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        db.executeUpdate("INSERT INTO PatronStats (userID, totalLoans, totalReturns, firstLoanDate, lastLoanDate) " +
+                "SELECT userID, COUNT(*), SUM(isReturned), MIN(loanDate), MAX(loanDate) FROM AllLoans GROUP BY userID");
+        System.out.println("Patron statistics backfilled.");
+    }
+
+    /**
+     * Adds a loan to the totals of its user.
+     *
+     * @param loan The new loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    @Override
+    public void onLoan(Loan loan, long isbn) {
+        db.executeUpdate("INSERT INTO PatronStats (userID, totalLoans, totalReturns, firstLoanDate, lastLoanDate) " +
+                "VALUES (?, 1, 0, ?, ?) ON DUPLICATE KEY UPDATE totalLoans = totalLoans + 1, " +
+                "firstLoanDate = LEAST(COALESCE(firstLoanDate, VALUES(firstLoanDate)), VALUES(firstLoanDate)), " +
+                "lastLoanDate = GREATEST(COALESCE(lastLoanDate, VALUES(lastLoanDate)), VALUES(lastLoanDate))",
+                loan.getUserID(), loan.getLoanDate(), loan.getLoanDate());
+    }
+
+    /**
+     * Adds the loans of a basket to the totals of their user with one statement.
+     *
+     * @param loans The new loans, all of the same user and loan date.
+     * @param isbns The canonical ISBN keys of the loaned books, in the order of the loans.
+     */
+    @Override
+    public void onLoans(List<Loan> loans, long[] isbns) {
+        if (loans.isEmpty()) {
+            return;
+        }
+        Loan first = loans.get(0);
+        db.executeUpdate("INSERT INTO PatronStats (userID, totalLoans, totalReturns, firstLoanDate, lastLoanDate) " +
+                "VALUES (?, ?, 0, ?, ?) ON DUPLICATE KEY UPDATE totalLoans = totalLoans + VALUES(totalLoans), " +
+                "firstLoanDate = LEAST(COALESCE(firstLoanDate, VALUES(firstLoanDate)), VALUES(firstLoanDate)), " +
+                "lastLoanDate = GREATEST(COALESCE(lastLoanDate, VALUES(lastLoanDate)), VALUES(lastLoanDate))",
+                first.getUserID(), loans.size(), first.getLoanDate(), first.getLoanDate());
+    }
+
+    /**
+     * Adds a return to the totals of its user.
+     *
+     * @param loan The returned loan.
+     * @param isbn The canonical ISBN key of the returned book.
+     */
+    @Override
+    public void onReturn(Loan loan, long isbn) {
+        db.executeUpdate("UPDATE PatronStats SET totalReturns = totalReturns + 1 WHERE userID = ?", loan.getUserID());
+    }
+
+    /**
+     * Adds a batch of returns to the totals of their users with one statement.
+     *
+     * @param loans The returned loans, possibly of several users.
+     * @param isbns The canonical ISBN keys of the returned books, in the order of the loans.
+     */
+    @Override
+    public void onReturns(List<Loan> loans, long[] isbns) {
+        if (loans.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> returns = new LinkedHashMap<>();
+        for (Loan loan : loans) {
+            returns.merge(loan.getUserID(), 1, Integer::sum);
+        }
+        StringBuilder cases = new StringBuilder();
+        StringBuilder in = new StringBuilder();
+        Object[] params = new Object[returns.size() * 3];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : returns.entrySet()) {
+            cases.append(" WHEN ? THEN ?");
+            in.append(i == 0 ? "?" : ", ?");
+            params[2 * i] = entry.getKey();
+            params[2 * i + 1] = entry.getValue();
+            params[2 * returns.size() + i] = entry.getKey();
+            i++;
+        }
+        db.executeUpdate("UPDATE PatronStats SET totalReturns = totalReturns + CASE userID" + cases +
+                " ELSE 0 END WHERE userID IN (" + in + ")", params);
+    }
+
+    /**
+     * Gets the profile of a user with one query: the user, their totals and their current loans.
+     *
+     * @param userID The ID of the user.
+     * @return The profile of the user, or null if the user does not exist.
+     */
+    public PatronProfile getProfile(int userID) {
+        String query = "SELECT u.userID, u.name, u.email, u.address, " +
+                "ps.totalLoans, ps.totalReturns, ps.firstLoanDate, ps.lastLoanDate, fb.balance, " +
+                "l.loanID, l.copyID, l.loanDate, l.numberOfDays, l.dueDate, l.returnDate, l.isReturned, bc.isbn " +
+                "FROM Users u " +
+                "LEFT JOIN PatronStats ps ON ps.userID = u.userID " +
+                "LEFT JOIN FineBalances fb ON fb.userID = u.userID " +
+                "LEFT JOIN Loans l ON l.userID = u.userID AND l.isReturned = FALSE " +
+                "LEFT JOIN BookCopies bc ON bc.copyID = l.copyID " +
+                "WHERE u.userID = ? ORDER BY l.dueDate, l.loanID";
+        ResultSet rs = db.executeQuery(query, userID);
+        LoanRowDecoder decoder = new LoanRowDecoder();
+        User user = null;
+        List<LoanPage.Item> currentLoans = new ArrayList<>();
+        int overdueCount = 0;
+        int totalLoans = 0;
+        int totalReturns = 0;
+        LocalDate firstLoanDate = null;
+        LocalDate lastLoanDate = null;
+        long fineBalance = 0;
+        LocalDate today = LocalDate.now();
+        try {
+            while (rs != null && rs.next()) {
+                if (user == null) {
+                    user = new User(rs.getInt("userID"), rs.getString("name"), rs.getString("email"), rs.getString("address"));
+                    totalLoans = rs.getInt("totalLoans");
+                    totalReturns = rs.getInt("totalReturns");
+                    firstLoanDate = rs.getObject("firstLoanDate", LocalDate.class);
+                    lastLoanDate = rs.getObject("lastLoanDate", LocalDate.class);
+                    fineBalance = rs.getLong("balance");
+                }
+                if (rs.getObject("loanID") == null) {
+                    continue;
+                }
+                Loan loan = decoder.decode(rs);
+                currentLoans.add(new LoanPage.Item(loan, decoder.getIsbn(rs), user.getName()));
+                if (!loan.getDueDate().isAfter(today)) {
+                    overdueCount++;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        if (user == null) {
+            return null;
+        }
+        return new PatronProfile(user, currentLoans, overdueCount, totalLoans, totalReturns, firstLoanDate, lastLoanDate,
+                fineBalance);
+    }
+}
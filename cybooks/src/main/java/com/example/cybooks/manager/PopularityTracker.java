@@ -0,0 +1,262 @@
+package com.example.cybooks.manager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.Isbn;
+import com.example.cybooks.model.Loan;
+import com.example.cybooks.utils.LongObjectMap;
+
+/**
+ * Counts the loans of every book over a sliding window of days, and keeps the most loaned books.
+ * Loans are counted in one bucket per day; when the window slides, the buckets of the days that leave
+ * it are subtracted from the totals. The top books are kept up to date on each loan,
+ * and only recomputed with a bounded heap when days leave the window.
+ */
+public class PopularityTracker implements CirculationListener {
+    private static final Comparator<Count> BY_LOANS = Comparator.comparingInt((Count count) -> count.loans)
+            .thenComparing(count -> count.isbn, Comparator.reverseOrder());
+
+    private final DataBase db;
+    private final int windowDays;
+    private final int topSize;
+    private final LongObjectMap<Count> totals = new LongObjectMap<>();
+    // The ISBNs loaned on each day of the window, indexed by epoch day modulo the window length
+    private final List<LongObjectMap<Count>> dailyCounts;
+    private final List<Count> top = new ArrayList<>();
+    private long currentDay;
+    private boolean topValid;
+
+    /**
+     * Constructs a tracker over the given database.
+     *
+     * @param db         the database connection object
+     * @param windowDays The number of days of the window, including today.
+     * @param topSize    The number of books kept in the top.
+     */
+    public PopularityTracker(DataBase db, int windowDays, int topSize) {
+        this.db = db;
+        this.windowDays = windowDays;
+        this.topSize = topSize;
+        this.dailyCounts = new ArrayList<>(windowDays);
+        for (int i = 0; i < windowDays; i++) {
+            dailyCounts.add(new LongObjectMap<>());
+        }
+        this.currentDay = LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Rebuilds the counts from the current and archived loans of the window.
+     */
+    public synchronized void rebuild() {
+        totals.clear();
+        for (LongObjectMap<Count> day : dailyCounts) {
+            day.clear();
+        }
+        currentDay = LocalDate.now().toEpochDay();
+        String query = "SELECT bc.isbn, l.loanDate, COUNT(*) AS loanCount FROM AllLoans l " +
+                "JOIN BookCopies bc ON l.copyID = bc.copyID " +
+                "WHERE l.loanDate > ? AND l.loanDate <= ? " +
+                "GROUP BY bc.isbn, l.loanDate";
+        db.forEachRow(query, rs -> add(rs.getLong("isbn"), rs.getObject("loanDate", LocalDate.class).toEpochDay(),
+                rs.getInt("loanCount")), LocalDate.ofEpochDay(currentDay - windowDays), LocalDate.ofEpochDay(currentDay));
+        topValid = false;
+        System.out.println("Popularity window loaded: " + totals.size() + " books.");
+    }
+
+    /**
+     * Counts a new loan in the bucket of its loan date.
+     *
+     * @param loan The new loan.
+     * @param isbn The canonical ISBN key of the loaned book.
+     */
+    @Override
+    public synchronized void onLoan(Loan loan, long isbn) {
+        advanceTo(LocalDate.now().toEpochDay());
+        Count total = add(isbn, loan.getLoanDate().toEpochDay(), 1);
+        if (total != null && topValid) {
+            updateTop(total);
+        }
+    }
+
+    /**
+     * Returns do not change the popularity of a book.
+     *
+     * @param loan The returned loan.
+     * @param isbn The canonical ISBN key of the returned book.
+     */
+    @Override
+    public void onReturn(Loan loan, long isbn) {
+    }
+
+    /**
+     * Gets the most loaned books of the window, most loaned first.
+     *
+     * @return The ISBN keys and loan counts of at most the configured number of books.
+     */
+    public synchronized List<Count> getTop() {
+        advanceTo(LocalDate.now().toEpochDay());
+        if (!topValid) {
+            recomputeTop();
+        }
+        List<Count> result = new ArrayList<>(top.size());
+        for (Count count : top) {
+            result.add(new Count(count.isbn, count.loans));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of days of the window.
+     *
+     * @return The length of the window in days.
+     */
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    /**
+     * Adds loans to the bucket of a day and to the total of a book, if the day is in the window.
+     *
+     * @param isbn  The canonical ISBN key of the book.
+     * @param day   The epoch day of the loans.
+     * @param loans The number of loans.
+     * @return The total of the book, or null if the day is outside the window.
+     */
+    private Count add(long isbn, long day, int loans) {
+        if (day <= currentDay - windowDays || day > currentDay) {
+            return null;
+        }
+        LongObjectMap<Count> bucket = dailyCounts.get(slot(day));
+        Count daily = bucket.get(isbn);
+        if (daily == null) {
+            daily = new Count(isbn, 0);
+            bucket.put(isbn, daily);
+        }
+        daily.loans += loans;
+        Count total = totals.get(isbn);
+        if (total == null) {
+            total = new Count(isbn, 0);
+            totals.put(isbn, total);
+        }
+        total.loans += loans;
+        return total;
+    }
+
+    /**
+     * Slides the window to the given day, subtracting the buckets of the days that leave it.
+     *
+     * @param day The epoch day of today.
+     */
+    private void advanceTo(long day) {
+        if (day <= currentDay) {
+            return;
+        }
+        long expired = Math.min(day - currentDay, windowDays);
+        for (long d = currentDay - windowDays + 1; d < currentDay - windowDays + 1 + expired; d++) {
+            LongObjectMap<Count> bucket = dailyCounts.get(slot(d));
+            bucket.forEachValue(daily -> totals.get(daily.isbn).loans -= daily.loans);
+            bucket.clear();
+        }
+        currentDay = day;
+        topValid = false;
+    }
+
+    /**
+     * Moves a book whose total increased to its place in the top.
+     *
+     * @param total The total of the book.
+     */
+    private void updateTop(Count total) {
+        if (!top.contains(total)) {
+            if (top.size() >= topSize && BY_LOANS.compare(total, top.get(top.size() - 1)) <= 0) {
+                return;
+            }
+            if (top.size() >= topSize) {
+                top.remove(top.size() - 1);
+            }
+            top.add(total);
+        }
+        // The top holds a few books, so an insertion sort pass is enough
+        for (int i = top.indexOf(total); i > 0 && BY_LOANS.compare(top.get(i), top.get(i - 1)) > 0; i--) {
+            top.set(i, top.get(i - 1));
+            top.set(i - 1, total);
+        }
+    }
+
+    /**
+     * Recomputes the top from the totals with a min-heap bounded to the size of the top.
+     */
+    private void recomputeTop() {
+        PriorityQueue<Count> heap = new PriorityQueue<>(topSize + 1, BY_LOANS);
+        totals.forEachValue(total -> {
+            if (total.loans <= 0) {
+                return;
+            }
+            heap.add(total);
+            if (heap.size() > topSize) {
+                heap.poll();
+            }
+        });
+        top.clear();
+        while (!heap.isEmpty()) {
+            top.add(0, heap.poll());
+        }
+        topValid = true;
+    }
+
+    /**
+     * Gets the bucket index of a day.
+     *
+     * @param day The epoch day.
+     * @return The index of the bucket.
+     */
+    private int slot(long day) {
+        return (int) Math.floorMod(day, (long) windowDays);
+    }
+
+    /**
+     * The number of loans of a book.
+     */
+    public static final class Count {
+        private final long isbn;
+        private int loans;
+
+        Count(long isbn, int loans) {
+            this.isbn = isbn;
+            this.loans = loans;
+        }
+
+        /**
+         * Gets the canonical ISBN key of the book.
+         *
+         * @return The ISBN key.
+         */
+        public long getIsbn() {
+            return isbn;
+        }
+
+        /**
+         * Gets the number of loans of the book.
+         *
+         * @return The loan count.
+         */
+        public int getLoans() {
+            return loans;
+        }
+
+        /**
+         * Returns the book and its loan count, as shown in the reports.
+         *
+         * @return A string representation of the count.
+         */
+        @Override
+        public String toString() {
+            return "ISBN: " + Isbn.format(isbn) + ", Loan Count: " + loans;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.cybooks.manager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.ExportReport;
+import com.example.cybooks.model.Isbn;
+import com.example.cybooks.utils.RowEncoder;
+
+/**
+ * Exports reports to files with constant memory, whatever the number of rows.
+ * Rows are streamed from the database on a dedicated connection, encoded one at a time,
+ * and written through a buffered writer on a file channel.
+ */
+public class ReportExporter {
+    /** The number of rows between two progress reports. */
+    public static final int PROGRESS_INTERVAL = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataBase db;
+
+    /**
+     * Constructs an exporter over the given database.
+     *
+     * @param db the database connection object
+     */
+    public ReportExporter(DataBase db) {
+        this.db = db;
+    }
+
+    /**
+     * Exports a report to a file, replacing the file if it exists.
+     * If the export fails or is cancelled, the partial file is deleted.
+     *
+     * @param report    The report to export.
+     * @param file      The file to write.
+     * @param encoder   The format of the file.
+     * @param progress  Called with the number of rows written every {@link #PROGRESS_INTERVAL} rows and at the end.
+     * @param cancelled Checked between rows; the export stops when it returns true.
+     * @return The number of rows written.
+     * @throws IOException if the file cannot be written or the report cannot be read.
+     * @throws CancellationException if the export was cancelled.
+     */
+    public long export(ExportReport report, Path file, RowEncoder encoder, LongConsumer progress,
+            BooleanSupplier cancelled) throws IOException {
+        boolean completed = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            long rows = export(report, out, encoder, progress, cancelled);
+            completed = true;
+            return rows;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Exports a report to an output, such as a file or the response of the library server.
+     * The output is not closed.
+     *
+     * @param report    The report to export.
+     * @param out       The output, which should be buffered.
+     * @param encoder   The format of the output.
+     * @param progress  Called with the number of rows written every {@link #PROGRESS_INTERVAL} rows and at the end.
+     * @param cancelled Checked between rows; the export stops when it returns true.
+     * @return The number of rows written.
+     * @throws IOException if the output cannot be written or the report cannot be read.
+     * @throws CancellationException if the export was cancelled.
+     */
+    public long export(ExportReport report, Writer out, RowEncoder encoder, LongConsumer progress,
+            BooleanSupplier cancelled) throws IOException {
+        try (Connection connection = db.openConnection();
+             PreparedStatement stmt = connection.prepareStatement(report.getQuery(),
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Makes the MySQL driver stream the rows instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            long rows = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                try {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    int columnCount = metaData.getColumnCount();
+                    String[] columns = new String[columnCount];
+                    int isbnColumn = -1;
+                    for (int i = 0; i < columnCount; i++) {
+                        columns[i] = metaData.getColumnLabel(i + 1);
+                        if (columns[i].equalsIgnoreCase("isbn")) {
+                            isbnColumn = i;
+                        }
+                    }
+                    encoder.writeHeader(out, columns);
+                    // The row array is reused, so memory does not depend on the number of rows
+                    Object[] values = new Object[columnCount];
+                    while (rs.next()) {
+                        if (cancelled.getAsBoolean()) {
+                            throw new CancellationException("Export cancelled after " + rows + " rows");
+                        }
+                        for (int i = 0; i < columnCount; i++) {
+                            if (i == isbnColumn) {
+                                // A copy detached from an invalid ISBN has no ISBN, which is written as an empty value
+                                long isbn = rs.getLong(i + 1);
+                                values[i] = rs.wasNull() ? null : Isbn.format(isbn);
+                            } else {
+                                values[i] = rs.getObject(i + 1);
+                            }
+                        }
+                        encoder.writeRow(out, values);
+                        rows++;
+                        if (rows % PROGRESS_INTERVAL == 0) {
+                            progress.accept(rows);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Closing a streamed result first reads all its remaining rows, so a cancelled or failed
+                    // export drops its own connection at once instead
+                    connection.abort(Runnable::run);
+                    throw e;
+                }
+            }
+            out.flush();
+            progress.accept(rows);
+            return rows;
+        } catch (SQLException e) {
+            throw new IOException("Cannot read report " + report, e);
+        }
+    }
+}
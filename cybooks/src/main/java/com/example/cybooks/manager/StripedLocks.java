@@ -0,0 +1,152 @@
+package com.example.cybooks.manager;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the circulation operations on the same book or the same user, while operations on
+ * different books and users run in parallel.
+ * Books and users are hashed onto a fixed array of locks, so memory does not grow with the catalogue;
+ * two keys sharing a lock only wait for each other.
+ * An operation needing several keys takes their locks in increasing index order, so two operations
+ * can never each hold a lock the other waits for.
+ * The locks are {@link ReentrantLock}s rather than monitors, so a virtual thread waiting for one
+ * does not hold its carrier thread.
+ */
+public class StripedLocks {
+    // Keeps the users and the books with the same number on different locks
+    private static final long USER_SALT = 0x5DEECE66DL;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * Constructs the locks.
+     *
+     * @param stripes The number of locks, rounded up to a power of two.
+     */
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Locks a book.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     * @return The held lock, to unlock in a finally block when the operation is done.
+     */
+    public Held lockBook(long isbn) {
+        return lock(new int[] { stripeOf(isbn) });
+    }
+
+    /**
+     * Locks a user.
+     *
+     * @param userID The ID of the user.
+     * @return The held lock, to unlock in a finally block when the operation is done.
+     */
+    public Held lockUser(int userID) {
+        return lock(new int[] { stripeOf(userID ^ USER_SALT) });
+    }
+
+    /**
+     * Locks a user and some books, in an order shared by all the operations.
+     *
+     * @param userID The ID of the user.
+     * @param isbns  The canonical ISBN keys of the books.
+     * @return The held locks, to unlock in a finally block when the operation is done.
+     */
+    public Held lockUserAndBooks(int userID, long... isbns) {
+        return lockUsersAndBooks(new int[] { userID }, isbns);
+    }
+
+    /**
+     * Locks several users and books, in an order shared by all the operations.
+     *
+     * @param userIDs The IDs of the users.
+     * @param isbns   The canonical ISBN keys of the books.
+     * @return The held locks, to unlock in a finally block when the operation is done.
+     */
+    public Held lockUsersAndBooks(int[] userIDs, long[] isbns) {
+        int[] indexes = new int[userIDs.length + isbns.length];
+        for (int i = 0; i < userIDs.length; i++) {
+            indexes[i] = stripeOf(userIDs[i] ^ USER_SALT);
+        }
+        for (int i = 0; i < isbns.length; i++) {
+            indexes[userIDs.length + i] = stripeOf(isbns[i]);
+        }
+        return lock(indexes);
+    }
+
+    /**
+     * Takes the locks of some stripes in increasing order, each once.
+     *
+     * @param indexes The indexes of the stripes; the array is sorted in place.
+     * @return The held locks.
+     */
+    private Held lock(int[] indexes) {
+        Arrays.sort(indexes);
+        int count = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) {
+                indexes[count++] = indexes[i];
+            }
+        }
+        ReentrantLock[] held = new ReentrantLock[count];
+        int locked = 0;
+        try {
+            for (; locked < count; locked++) {
+                held[locked] = stripes[indexes[locked]];
+                held[locked].lock();
+            }
+        } catch (RuntimeException | Error e) {
+            // Releases the locks already taken before giving up
+            for (int i = locked - 1; i >= 0; i--) {
+                held[i].unlock();
+            }
+            throw e;
+        }
+        return new Held(held);
+    }
+
+    /**
+     * Gets the stripe of a key, spreading the bits of close keys over the whole array.
+     *
+     * @param key The key.
+     * @return The index of the stripe.
+     */
+    private int stripeOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Locks held by an operation, released in the reverse order of their acquisition.
+     */
+    public static class Held {
+        private final ReentrantLock[] locks;
+
+        /**
+         * Constructs the held locks.
+         *
+         * @param locks The locks, in the order they were taken.
+         */
+        private Held(ReentrantLock[] locks) {
+            this.locks = locks;
+        }
+
+        /**
+         * Releases the locks.
+         */
+        public void unlock() {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.cybooks.manager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.example.cybooks.model.User;
+
+/**
+ * A bounded cache of users, indexed by user ID and by normalized email.
+ * It is written through by the manager: users are put in the cache when they are registered or updated,
+ * and removed when they are deleted. The least recently used users are evicted first.
+ */
+public class UserCache {
+    // Rough heap cost of a cached user without its strings: User object, two map entries and the cache entry
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final int maxSize;
+    private final LinkedHashMap<Integer, Entry> byID;
+    private final Map<String, Entry> byEmail = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs a cache holding at most the given number of users.
+     *
+     * @param maxSize The maximum number of users kept in the cache.
+     */
+    public UserCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.byID = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > UserCache.this.maxSize) {
+                    byEmail.remove(eldest.getValue().emailKey);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a user by ID.
+     *
+     * @param userID The ID of the user.
+     * @return The cached user, or null if the user is not in the cache.
+     */
+    public synchronized User getByID(int userID) {
+        return count(byID.get(userID));
+    }
+
+    /**
+     * Gets a user by email, ignoring case like the database does.
+     *
+     * @param email The email of the user.
+     * @return The cached user, or null if the user is not in the cache.
+     */
+    public synchronized User getByEmail(String email) {
+        Entry entry = byEmail.get(normalizeEmail(email));
+        if (entry != null) {
+            // Refreshes the position of the user in the eviction order
+            byID.get(entry.user.getUserID());
+        }
+        return count(entry);
+    }
+
+    /**
+     * Puts a user in the cache, replacing the previous version of the user if any.
+     *
+     * @param user The user to cache.
+     */
+    public synchronized void put(User user) {
+        Entry previous = byID.remove(user.getUserID());
+        if (previous != null) {
+            byEmail.remove(previous.emailKey);
+        }
+        Entry entry = new Entry(user, normalizeEmail(user.getEmail()));
+        byID.put(user.getUserID(), entry);
+        byEmail.put(entry.emailKey, entry);
+    }
+
+    /**
+     * Removes a user from the cache.
+     *
+     * @param userID The ID of the user.
+     */
+    public synchronized void invalidate(int userID) {
+        Entry previous = byID.remove(userID);
+        if (previous != null) {
+            byEmail.remove(previous.emailKey);
+        }
+    }
+
+    /**
+     * Removes every user from the cache and resets the statistics.
+     */
+    public synchronized void clear() {
+        byID.clear();
+        byEmail.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Gets the number of users in the cache.
+     *
+     * @return The number of cached users.
+     */
+    public synchronized int size() {
+        return byID.size();
+    }
+
+    /**
+     * Gets the maximum number of users kept in the cache.
+     *
+     * @return The capacity of the cache.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the share of lookups answered by the cache.
+     *
+     * @return The hit ratio, between 0 and 1.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Estimates the heap used by the cached users.
+     *
+     * @return The estimated memory use in bytes.
+     */
+    public synchronized long getEstimatedMemoryBytes() {
+        long bytes = 0;
+        for (Entry entry : byID.values()) {
+            User user = entry.user;
+            bytes += ENTRY_OVERHEAD_BYTES + stringBytes(user.getName()) + stringBytes(user.getEmail())
+                    + stringBytes(user.getAddress()) + stringBytes(entry.emailKey);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the statistics of the cache.
+     *
+     * @return A string representation of the cache.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "User cache: %d/%d users, hit ratio %.1f%% (%d hits, %d misses), ~%d KB",
+                byID.size(), maxSize, getHitRatio() * 100, hits, misses, getEstimatedMemoryBytes() / 1024);
+    }
+
+    /**
+     * Normalizes an email so that lookups ignore case and surrounding spaces.
+     *
+     * @param email The email to normalize.
+     * @return The normalized email.
+     */
+    static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private User count(Entry entry) {
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.user;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    /**
+     * A cached user with the email key it is indexed under.
+     */
+    private static final class Entry {
+        private final User user;
+        private final String emailKey;
+
+        Entry(User user, String emailKey) {
+            this.user = user;
+            this.emailKey = emailKey;
+        }
+    }
+}
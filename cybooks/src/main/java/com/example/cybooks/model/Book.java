@@ -7,17 +7,17 @@ package com.example.cybooks.model;
  */
 
 public class Book {
-    private String isbn;
+    private long isbn;
     private int copiesAvailable;
 
     /**
      * Constructs a new book with the specified information.
      * 
-     * @param isbn The book's ISBN.
+     * @param isbn The book's canonical ISBN key.
      * @param copiesAvailable The number of copies available for the book.
      */
 
-    public Book(String isbn, int copiesAvailable) {
+    public Book(long isbn, int copiesAvailable) {
         this.isbn = isbn;
         this.copiesAvailable = copiesAvailable;
     }
@@ -27,16 +27,16 @@ public class Book {
      * 
      * @return The book's ISBN.
      */
-    public String getIsbn() {
+    public long getIsbn() {
         return isbn;
     }
     
     /**
      * Sets the book's ISBN.
      * 
-     * @param isbn The book's ISBN.
+     * @param isbn The book's canonical ISBN key.
      */
-    public void setIsbn(String isbn) {
+    public void setIsbn(long isbn) {
         this.isbn = isbn;
     }
 
@@ -63,20 +63,21 @@ public class Book {
     @Override
     public String toString() {
         return "Book{" +
-                "isbn='" + isbn + '\'' +
+                "isbn='" + Isbn.format(isbn) + '\'' +
                 ", copiesAvailable=" + copiesAvailable +
                 '}';
     }
 
     /**
-     * Registers the book in the database.
+     * Registers the book in the database, unless a book with the same ISBN is already registered.
      * 
      * @param db The database to register the book in.
+     * @return True if the book was registered, false if it already existed or the insert failed.
      */
     
-    public void register(DataBase db) {
-        String query = "INSERT INTO Books (isbn, copiesAvailable) VALUES (?, ?)";
-        db.executeInsert(query, this.isbn, this.copiesAvailable);
+    public boolean register(DataBase db) {
+        String query = "INSERT IGNORE INTO Books (isbn, copiesAvailable) VALUES (?, ?)";
+        return db.executeUpdate(query, this.isbn, this.copiesAvailable) > 0;
     }
 
     /**
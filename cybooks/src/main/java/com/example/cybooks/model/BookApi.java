@@ -3,55 +3,64 @@ package com.example.cybooks.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.example.cybooks.utils.Interner;
+
 /**
  * This class represents a book with various details such as ISBN, title, authors, publisher, and more.
+ * Instances are immutable and are created with a {@link Builder}.
+ * Empty lists are shared, and the vocabulary fields (publisher, format, languages, types, rights)
+ * are deduplicated across records since they repeat on every page of results.
  */
-public class BookApi {
-    private List<String> identifiers; // List of identifiers for the book
-    private String isbn; // ISBN of the book
-    private String title; // Title of the book
-    private List<String> authors; // List of authors of the book
-    private String publisher; // Publisher of the book
-    private String date; // Publication date of the book
-    private List<String> descriptions; // Descriptions of the book
-    private String format; // Format of the book
-    private List<String> languages; // Languages in which the book is available
-    private List<String> types; // Types of the book
-    private List<String> rights; // Rights information of the book
+public final class BookApi {
+    private final List<String> identifiers; // List of identifiers for the book
+    private final String isbn; // ISBN of the book
+    private final long isbnKey; // Canonical ISBN key of the book, or Isbn.INVALID
+    private final String title; // Title of the book
+    private final List<String> authors; // List of authors of the book
+    private final String publisher; // Publisher of the book
+    private final String date; // Publication date of the book
+    private final List<String> descriptions; // Descriptions of the book
+    private final String format; // Format of the book
+    private final List<String> languages; // Languages in which the book is available
+    private final List<String> types; // Types of the book
+    private final List<String> rights; // Rights information of the book
 
     /**
-     * Constructor to initialize the fields with default values.
+     * Constructs a book from the values collected by the builder.
+     *
+     * @param builder the builder holding the values
      */
-    public BookApi() {
-        identifiers = new ArrayList<>();
-        title = "";
-        isbn = "";
-        authors = new ArrayList<>();
-        publisher = "";
-        date = "";
-        descriptions = new ArrayList<>();
-        format = "";
-        languages = new ArrayList<>();
-        types = new ArrayList<>();
-        rights = new ArrayList<>();
+    private BookApi(Builder builder) {
+        identifiers = copyOf(builder.identifiers);
+        isbn = builder.isbn;
+        isbnKey = Isbn.toKey(builder.isbn);
+        title = builder.title;
+        authors = copyOf(builder.authors);
+        publisher = builder.publisher;
+        date = builder.date;
+        descriptions = copyOf(builder.descriptions);
+        format = builder.format;
+        languages = copyOf(builder.languages);
+        types = copyOf(builder.types);
+        rights = copyOf(builder.rights);
     }
 
     /**
-     * Gets the list of identifiers.
+     * Creates a new builder with default values.
      *
-     * @return the list of identifiers
+     * @return a new builder
      */
-    public List<String> getIdentifiers() {
-        return identifiers;
+    public static Builder builder() {
+        return new Builder();
     }
 
     /**
-     * Sets the list of identifiers.
+     * Gets the list of identifiers.
      *
-     * @param identifiers the list of identifiers to set
+     * @return the list of identifiers
      */
-    public void setIdentifiers(List<String> identifiers) {
-        this.identifiers = identifiers;
+    public List<String> getIdentifiers() {
+        return identifiers;
     }
 
     /**
@@ -63,15 +72,6 @@ public class BookApi {
         return title;
     }
 
-    /**
-     * Sets the title of the book.
-     *
-     * @param title the title to set
-     */
-    public void setTitle(String title) {
-        this.title = title;
-    }
-
     /**
      * Gets the list of authors.
      *
@@ -81,15 +81,6 @@ public class BookApi {
         return authors;
     }
 
-    /**
-     * Sets the list of authors.
-     *
-     * @param authors the list of authors to set
-     */
-    public void setAuthors(List<String> authors) {
-        this.authors = authors;
-    }
-
     /**
      * Gets the publisher of the book.
      *
@@ -99,15 +90,6 @@ public class BookApi {
         return publisher;
     }
 
-    /**
-     * Sets the publisher of the book.
-     *
-     * @param publisher the publisher to set
-     */
-    public void setPublisher(String publisher) {
-        this.publisher = publisher;
-    }
-
     /**
      * Gets the publication date of the book.
      *
@@ -117,15 +99,6 @@ public class BookApi {
         return date;
     }
 
-    /**
-     * Sets the publication date of the book.
-     *
-     * @param date the publication date to set
-     */
-    public void setDate(String date) {
-        this.date = date;
-    }
-
     /**
      * Gets the list of descriptions.
      *
@@ -135,15 +108,6 @@ public class BookApi {
         return descriptions;
     }
 
-    /**
-     * Sets the list of descriptions.
-     *
-     * @param descriptions the list of descriptions to set
-     */
-    public void setDescriptions(List<String> descriptions) {
-        this.descriptions = descriptions;
-    }
-
     /**
      * Gets the format of the book.
      *
@@ -153,15 +117,6 @@ public class BookApi {
         return format;
     }
 
-    /**
-     * Sets the format of the book.
-     *
-     * @param format the format to set
-     */
-    public void setFormat(String format) {
-        this.format = format;
-    }
-
     /**
      * Gets the list of languages.
      *
@@ -171,15 +126,6 @@ public class BookApi {
         return languages;
     }
 
-    /**
-     * Sets the list of languages.
-     *
-     * @param languages the list of languages to set
-     */
-    public void setLanguages(List<String> languages) {
-        this.languages = languages;
-    }
-
     /**
      * Gets the list of types.
      *
@@ -189,15 +135,6 @@ public class BookApi {
         return types;
     }
 
-    /**
-     * Sets the list of types.
-     *
-     * @param types the list of types to set
-     */
-    public void setTypes(List<String> types) {
-        this.types = types;
-    }
-
     /**
      * Gets the list of rights.
      *
@@ -208,30 +145,21 @@ public class BookApi {
     }
 
     /**
-     * Sets the list of rights.
-     *
-     * @param rights the list of rights to set
-     */
-    public void setRights(List<String> rights) {
-        this.rights = rights;
-    }
-
-    /**
-     * Sets the ISBN of the book.
+     * Gets the ISBN of the book.
      *
-     * @param isbn the ISBN to set
+     * @return the ISBN of the book
      */
-    public void setIsbn(String isbn) {
-        this.isbn = isbn;
+    public String getIsbn() {
+        return isbn;
     }
 
     /**
-     * Gets the ISBN of the book.
+     * Gets the canonical ISBN key of the book.
      *
-     * @return the ISBN of the book
+     * @return the ISBN key, or {@link Isbn#INVALID} if the BNF record holds no valid ISBN
      */
-    public String getIsbn() {
-        return isbn;
+    public long getIsbnKey() {
+        return isbnKey;
     }
 
     /**
@@ -248,11 +176,223 @@ public class BookApi {
         return "Title: " + this.getTitle() + "\nAuthors: " + authors + "\nISBN: " + this.getIsbn() + "\nPublisher: " + this.getPublisher() + "\nDate: " + this.getDate();
     }
 
-    public String toString2() {
-        StringBuilder authors = new StringBuilder();
-        for (String author : this.getAuthors()) {
-            authors.append(author).append(";");
+    /**
+     * Copies a list collected by the builder into a compact immutable list.
+     *
+     * @param values the collected values, or null if none were added
+     * @return an immutable list, the shared empty list if there are no values
+     */
+    private static List<String> copyOf(List<String> values) {
+        return values == null || values.isEmpty() ? List.of() : List.copyOf(values);
+    }
+
+    /**
+     * Collects the values of a book before creating it.
+     * A builder can be reused after {@link #build()} by calling {@link #reset()}.
+     */
+    public static final class Builder {
+        private List<String> identifiers;
+        private String isbn = "";
+        private String title = "";
+        private List<String> authors;
+        private String publisher = "";
+        private String date = "";
+        private List<String> descriptions;
+        private String format = "";
+        private List<String> languages;
+        private List<String> types;
+        private List<String> rights;
+
+        /**
+         * Constructs a builder with default values.
+         */
+        private Builder() {
+
+        }
+
+        /**
+         * Adds an identifier.
+         *
+         * @param identifier the identifier to add
+         * @return this builder
+         */
+        public Builder addIdentifier(String identifier) {
+            identifiers = add(identifiers, identifier);
+            return this;
+        }
+
+        /**
+         * Sets the ISBN of the book.
+         *
+         * @param isbn the ISBN to set
+         * @return this builder
+         */
+        public Builder isbn(String isbn) {
+            this.isbn = isbn;
+            return this;
+        }
+
+        /**
+         * Sets the title of the book.
+         *
+         * @param title the title to set
+         * @return this builder
+         */
+        public Builder title(String title) {
+            this.title = title;
+            return this;
+        }
+
+        /**
+         * Adds an author.
+         *
+         * @param author the author to add
+         * @return this builder
+         */
+        public Builder addAuthor(String author) {
+            authors = add(authors, author);
+            return this;
+        }
+
+        /**
+         * Sets the publisher of the book.
+         *
+         * @param publisher the publisher to set
+         * @return this builder
+         */
+        public Builder publisher(String publisher) {
+            this.publisher = Interner.VOCABULARY.intern(publisher);
+            return this;
+        }
+
+        /**
+         * Sets the publication date of the book.
+         *
+         * @param date the publication date to set
+         * @return this builder
+         */
+        public Builder date(String date) {
+            this.date = date;
+            return this;
+        }
+
+        /**
+         * Adds a description.
+         *
+         * @param description the description to add
+         * @return this builder
+         */
+        public Builder addDescription(String description) {
+            descriptions = add(descriptions, description);
+            return this;
+        }
+
+        /**
+         * Sets the format of the book.
+         *
+         * @param format the format to set
+         * @return this builder
+         */
+        public Builder format(String format) {
+            this.format = Interner.VOCABULARY.intern(format);
+            return this;
+        }
+
+        /**
+         * Adds a language.
+         *
+         * @param language the language to add
+         * @return this builder
+         */
+        public Builder addLanguage(String language) {
+            languages = add(languages, Interner.VOCABULARY.intern(language));
+            return this;
+        }
+
+        /**
+         * Adds a type.
+         *
+         * @param type the type to add
+         * @return this builder
+         */
+        public Builder addType(String type) {
+            types = add(types, Interner.VOCABULARY.intern(type));
+            return this;
+        }
+
+        /**
+         * Adds a rights statement.
+         *
+         * @param right the rights statement to add
+         * @return this builder
+         */
+        public Builder addRight(String right) {
+            rights = add(rights, Interner.VOCABULARY.intern(right));
+            return this;
+        }
+
+        /**
+         * Gets the ISBN set so far.
+         *
+         * @return the ISBN, empty if none was set
+         */
+        public String getIsbn() {
+            return isbn;
+        }
+
+        /**
+         * Creates the book from the collected values.
+         *
+         * @return the new book
+         */
+        public BookApi build() {
+            return new BookApi(this);
+        }
+
+        /**
+         * Clears the collected values so that the builder can be reused for another book.
+         *
+         * @return this builder
+         */
+        public Builder reset() {
+            isbn = "";
+            title = "";
+            publisher = "";
+            date = "";
+            format = "";
+            clear(identifiers);
+            clear(authors);
+            clear(descriptions);
+            clear(languages);
+            clear(types);
+            clear(rights);
+            return this;
+        }
+
+        /**
+         * Adds a value to a list, allocating the list on first use.
+         *
+         * @param values the list, or null if it was not allocated yet
+         * @param value the value to add
+         * @return the list holding the value
+         */
+        private static List<String> add(List<String> values, String value) {
+            if (values == null) {
+                values = new ArrayList<>(2);
+            }
+            values.add(value);
+            return values;
+        }
+
+        /**
+         * Clears a list if it was allocated.
+         *
+         * @param values the list to clear, may be null
+         */
+        private static void clear(List<String> values) {
+            if (values != null) {
+                values.clear();
+            }
         }
-        return "\n\nTitle: " + this.getTitle() + "\nAuthors: " + authors + "\nISBN: " + this.getIsbn() + "\nPublisher: " + this.getPublisher() + "\nDate: " + this.getDate();
     }
 }
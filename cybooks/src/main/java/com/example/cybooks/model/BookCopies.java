@@ -6,15 +6,15 @@ package com.example.cybooks.model;
  */
 public class BookCopies {
     private int copyID;
-    private String isbn;
+    private long isbn;
     private boolean isLoaned;
 
     /**
      * Constructs a new book copy with the specified information.
      *
-     * @param isbn The ISBN of the book.
+     * @param isbn The canonical ISBN key of the book.
      */
-    public BookCopies(String isbn) {
+    public BookCopies(long isbn) {
         this.isbn = isbn;
         this.isLoaned = false;
     }
@@ -42,7 +42,7 @@ public class BookCopies {
      * @return The ISBN of the book copy.
      */
 
-    public String getIsbn() {
+    public long getIsbn() {
         return isbn;
     }
 
@@ -51,7 +51,7 @@ public class BookCopies {
      * @param isbn The ISBN of the book copy.
      */
 
-    public void setIsbn(String isbn) {
+    public void setIsbn(long isbn) {
         this.isbn = isbn;
     }
 
@@ -82,7 +82,7 @@ public class BookCopies {
     public String toString() {
         return "BookCopy{" +
                 "copyID=" + copyID +
-                ", isbn='" + isbn + '\'' +
+                ", isbn='" + Isbn.format(isbn) + '\'' +
                 ", isLoaned=" + isLoaned +
                 '}';
     }
@@ -0,0 +1,104 @@
+package com.example.cybooks.model;
+
+/**
+ * Represents one entry of a federated search.
+ * It combines the BNF record of a book (if any) with the local holdings of the library.
+ */
+public class CatalogHit {
+    private final long isbn;
+    private BookApi record;
+    private boolean held;
+    private int copiesAvailable;
+    private int totalCopies;
+
+    /**
+     * Constructs a new hit for the given ISBN.
+     *
+     * @param isbn The canonical ISBN key of the book.
+     */
+    public CatalogHit(long isbn) {
+        this.isbn = isbn;
+    }
+
+    /**
+     * Gets the canonical ISBN key of the book.
+     *
+     * @return The ISBN key.
+     */
+    public long getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Gets the BNF record of the book.
+     *
+     * @return The BNF record, or null if the book is only known locally.
+     */
+    public BookApi getRecord() {
+        return record;
+    }
+
+    /**
+     * Sets the BNF record of the book.
+     *
+     * @param record The BNF record.
+     */
+    public void setRecord(BookApi record) {
+        this.record = record;
+    }
+
+    /**
+     * Checks if the library owns at least one copy of the book.
+     *
+     * @return True if the book is held by the library, false otherwise.
+     */
+    public boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * Sets the local holdings of the book.
+     *
+     * @param copiesAvailable The number of copies that are not loaned.
+     * @param totalCopies The number of copies owned by the library.
+     */
+    public void setHoldings(int copiesAvailable, int totalCopies) {
+        this.held = true;
+        this.copiesAvailable = copiesAvailable;
+        this.totalCopies = totalCopies;
+    }
+
+    /**
+     * Gets the number of copies available for loan.
+     *
+     * @return The number of copies available.
+     */
+    public int getCopiesAvailable() {
+        return copiesAvailable;
+    }
+
+    /**
+     * Gets the number of copies owned by the library.
+     *
+     * @return The number of copies owned.
+     */
+    public int getTotalCopies() {
+        return totalCopies;
+    }
+
+    /**
+     * Returns a string representation of the hit, starting with the local availability.
+     *
+     * @return A string representation of the hit.
+     */
+    @Override
+    public String toString() {
+        String holdings = held
+                ? "Held: " + copiesAvailable + "/" + totalCopies + " copies available"
+                : "Not held";
+        if (record == null) {
+            return holdings + "\nISBN: " + Isbn.format(isbn);
+        }
+        return holdings + "\n" + record;
+    }
+}
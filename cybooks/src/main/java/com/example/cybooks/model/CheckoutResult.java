@@ -0,0 +1,140 @@
+package com.example.cybooks.model;
+
+import java.util.List;
+
+/**
+ * Represents the outcome of a basket checkout: for each book asked for, whether it was loaned and with which loan.
+ */
+public class CheckoutResult {
+    /**
+     * The outcome of one book of the basket.
+     */
+    public enum Status {
+        /** A copy of the book was loaned. */
+        LOANED,
+        /** No copy of the book was available. */
+        NO_COPY_AVAILABLE,
+        /** The ISBN of the book is not valid. */
+        INVALID_ISBN,
+        /** The loans of the basket could not be recorded. */
+        FAILED
+    }
+
+    private final List<Item> items;
+
+    /**
+     * Constructs a new checkout result.
+     *
+     * @param items The outcomes of the books, in the order of the basket.
+     */
+    public CheckoutResult(List<Item> items) {
+        this.items = items;
+    }
+
+    /**
+     * Gets the outcomes of the books, in the order of the basket.
+     *
+     * @return The outcomes.
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the number of books loaned.
+     *
+     * @return The number of loans made.
+     */
+    public int getLoanedCount() {
+        int loaned = 0;
+        for (Item item : items) {
+            if (item.getStatus() == Status.LOANED) {
+                loaned++;
+            }
+        }
+        return loaned;
+    }
+
+    /**
+     * Returns the outcome of each book of the basket.
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(getLoanedCount()).append(" of ").append(items.size()).append(" book(s) loaned.\n");
+        for (Item item : items) {
+            result.append(" - ").append(item).append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * The outcome of one book of the basket.
+     */
+    public static class Item {
+        private final String isbn;
+        private final Status status;
+        private final Loan loan;
+
+        /**
+         * Constructs the outcome of a book.
+         *
+         * @param isbn   The ISBN of the book, as it was given.
+         * @param status The outcome.
+         * @param loan   The loan made, or null if the book was not loaned.
+         */
+        public Item(String isbn, Status status, Loan loan) {
+            this.isbn = isbn;
+            this.status = status;
+            this.loan = loan;
+        }
+
+        /**
+         * Gets the ISBN of the book, as it was given.
+         *
+         * @return The ISBN.
+         */
+        public String getIsbn() {
+            return isbn;
+        }
+
+        /**
+         * Gets the outcome of the book.
+         *
+         * @return The status.
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Gets the loan made for the book.
+         *
+         * @return The loan, or null if the book was not loaned.
+         */
+        public Loan getLoan() {
+            return loan;
+        }
+
+        /**
+         * Returns the ISBN and the outcome of the book.
+         *
+         * @return A string representation of the outcome.
+         */
+        @Override
+        public String toString() {
+            switch (status) {
+                case LOANED:
+                    return isbn + ": loaned (loan " + loan.getLoanID() + ", due " + loan.getDueDate() + ")";
+                case NO_COPY_AVAILABLE:
+                    return isbn + ": no copy available";
+                case FAILED:
+                    return isbn + ": not loaned, the loans could not be recorded";
+                default:
+                    return isbn + ": invalid ISBN";
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.cybooks.model;
+
+/**
+ * Represents the circulation of one period of a report: loans, returns, overdue loans and distinct patrons.
+ */
+public class CirculationStats {
+    private final String period;
+    private final int loans;
+    private final int returns;
+    private final int overdues;
+    private int distinctPatrons;
+
+    /**
+     * Constructs the statistics of a period.
+     *
+     * @param period   The label of the period, such as 2024-05 for a month.
+     * @param loans    The number of loans.
+     * @param returns  The number of returns.
+     * @param overdues The number of loans that became overdue.
+     */
+    public CirculationStats(String period, int loans, int returns, int overdues) {
+        this.period = period;
+        this.loans = loans;
+        this.returns = returns;
+        this.overdues = overdues;
+    }
+
+    /**
+     * Gets the label of the period.
+     *
+     * @return The label of the period.
+     */
+    public String getPeriod() {
+        return period;
+    }
+
+    /**
+     * Gets the number of loans of the period.
+     *
+     * @return The number of loans.
+     */
+    public int getLoans() {
+        return loans;
+    }
+
+    /**
+     * Gets the number of returns of the period.
+     *
+     * @return The number of returns.
+     */
+    public int getReturns() {
+        return returns;
+    }
+
+    /**
+     * Gets the number of loans that became overdue during the period.
+     *
+     * @return The number of overdue loans.
+     */
+    public int getOverdues() {
+        return overdues;
+    }
+
+    /**
+     * Gets the number of distinct patrons who borrowed during the period.
+     *
+     * @return The number of distinct patrons.
+     */
+    public int getDistinctPatrons() {
+        return distinctPatrons;
+    }
+
+    /**
+     * Sets the number of distinct patrons who borrowed during the period.
+     *
+     * @param distinctPatrons The number of distinct patrons.
+     */
+    public void setDistinctPatrons(int distinctPatrons) {
+        this.distinctPatrons = distinctPatrons;
+    }
+
+    @Override
+    public String toString() {
+        return "Period: " + period + ", Loans: " + loans + ", Returns: " + returns
+                + ", Overdue: " + overdues + ", Patrons: " + distinctPatrons;
+    }
+}
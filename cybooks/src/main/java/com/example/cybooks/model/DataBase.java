@@ -7,6 +7,13 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Manages the database connection and operations.
@@ -14,9 +21,15 @@ import java.sql.Statement;
 public class DataBase {
     private static final String JDBC_URL = "jdbc:mysql://localhost:3306/";
     private static final String DATABASE_NAME = "cybooks";
+    // Sends the statements of a JDBC batch in one round trip instead of one per statement
+    private static final String CONNECTION_OPTIONS = "?rewriteBatchedStatements=true";
     private static final String USER = "root";
     private static final String PASSWORD = ""; 
     private Connection connection;
+    private BlockingQueue<Connection> pool;
+    // Without a pool, the transactions share one connection of their own, opened once and kept
+    private Connection transactionConnection;
+    private final ReentrantLock transactionLock = new ReentrantLock();
 
     /**
      * Starts the database server and establishes a connection.
@@ -36,7 +49,7 @@ public class DataBase {
             
             Class.forName("com.mysql.cj.jdbc.Driver");
             createDatabaseIfNotExists();
-            connection = DriverManager.getConnection(JDBC_URL + DATABASE_NAME, USER, PASSWORD);
+            connection = DriverManager.getConnection(JDBC_URL + DATABASE_NAME + CONNECTION_OPTIONS, USER, PASSWORD);
             System.out.println("Database started and connected.");
             initializeDatabase();
         } catch (ClassNotFoundException | SQLException e) {
@@ -71,12 +84,12 @@ public class DataBase {
                 "address TEXT) ENGINE=InnoDB DEFAULT CHARSET=utf8 COLLATE=utf8_unicode_ci;";
 
         String createBooksTable = "CREATE TABLE IF NOT EXISTS Books (" +
-                "isbn VARCHAR(13) PRIMARY KEY, " +
+                "isbn BIGINT PRIMARY KEY, " +
                 "copiesAvailable INT);";
 
         String createBookCopiesTable = "CREATE TABLE IF NOT EXISTS BookCopies (" +
                 "copyID INT AUTO_INCREMENT PRIMARY KEY, " +
-                "isbn VARCHAR(13), " +
+                "isbn BIGINT, " +
                 "isLoaned BOOLEAN DEFAULT FALSE, " +
                 "FOREIGN KEY (isbn) REFERENCES Books(isbn) ON DELETE CASCADE);";
 
@@ -89,6 +102,7 @@ public class DataBase {
                 "dueDate DATE, " +
                 "returnDate DATE, " +
                 "isReturned BOOLEAN DEFAULT FALSE, " +
+                "renewals INT NOT NULL DEFAULT 0, " +
                 "FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE, " +
                 "FOREIGN KEY (copyID) REFERENCES BookCopies(copyID) ON DELETE CASCADE);";
 
@@ -96,6 +110,271 @@ public class DataBase {
         executeUpdate(createBooksTable);
         executeUpdate(createBookCopiesTable);
         executeUpdate(createLoansTable);
+        migrateIsbnColumns();
+        addColumnIfNotExists("Loans", "renewals", "INT NOT NULL DEFAULT 0");
+        if (addColumnIfNotExists("Loans", "overdueNotified", "BOOLEAN NOT NULL DEFAULT FALSE")) {
+            // The loans overdue before the flag existed cannot be told apart, so they are not notified again
+            executeUpdate("UPDATE Loans SET overdueNotified = TRUE WHERE isReturned = FALSE AND dueDate <= CURDATE()");
+        }
+        createRollupTables();
+        createArchiveTable();
+        createFineTables();
+        // Indexes of the keyset-paginated loan listings
+        createIndexIfNotExists("Loans", "idx_loans_due", "dueDate, loanID");
+        createIndexIfNotExists("Loans", "idx_loans_open_due", "isReturned, dueDate, loanID");
+        createIndexIfNotExists("Loans", "idx_loans_user_due", "userID, dueDate, loanID");
+    }
+
+    /**
+     * Creates the tables of the daily circulation rollups if they do not already exist.
+     */
+    private void createRollupTables() {
+        executeUpdate("CREATE TABLE IF NOT EXISTS DailyCirculation (" +
+                "day DATE PRIMARY KEY, " +
+                "loans INT NOT NULL DEFAULT 0, " +
+                "returns INT NOT NULL DEFAULT 0, " +
+                "overdues INT NOT NULL DEFAULT 0, " +
+                "distinctPatrons INT NOT NULL DEFAULT 0);");
+        executeUpdate("CREATE TABLE IF NOT EXISTS DailyBookLoans (" +
+                "day DATE, " +
+                "isbn BIGINT, " +
+                "loans INT NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (day, isbn));");
+        executeUpdate("CREATE TABLE IF NOT EXISTS DailyPatronLoans (" +
+                "day DATE, " +
+                "userID INT, " +
+                "loans INT NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (day, userID));");
+        executeUpdate("CREATE TABLE IF NOT EXISTS AnalyticsState (" +
+                "name VARCHAR(64) PRIMARY KEY, " +
+                "state LONGBLOB, " +
+                "lastLoanID INT NOT NULL DEFAULT 0);");
+        executeUpdate("CREATE TABLE IF NOT EXISTS AnalyticsSketches (" +
+                "sketchKey BIGINT PRIMARY KEY, " +
+                "sketch MEDIUMBLOB NOT NULL);");
+        executeUpdate("CREATE TABLE IF NOT EXISTS PatronStats (" +
+                "userID INT PRIMARY KEY, " +
+                "totalLoans INT NOT NULL DEFAULT 0, " +
+                "totalReturns INT NOT NULL DEFAULT 0, " +
+                "firstLoanDate DATE, " +
+                "lastLoanDate DATE, " +
+                "FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE);");
+    }
+
+    /**
+     * Creates the archive of the returned loans and the AllLoans view if they do not already exist.
+     * The archive has the columns of the Loans table and is partitioned by month of loan date;
+     * it starts with a single catch-all partition, which the archiver splits as months are archived.
+     * The AllLoans view is the union of the current and archived loans, for the queries on the history.
+     */
+    private void createArchiveTable() {
+        executeUpdate("CREATE TABLE IF NOT EXISTS LoansArchive (" +
+                "loanID INT NOT NULL, " +
+                "userID INT, " +
+                "copyID INT, " +
+                "loanDate DATE NOT NULL, " +
+                "numberOfDays INT, " +
+                "dueDate DATE, " +
+                "returnDate DATE, " +
+                "isReturned BOOLEAN DEFAULT TRUE, " +
+                "PRIMARY KEY (loanID, loanDate), " +
+                "INDEX idx_archive_due (dueDate, loanID), " +
+                "INDEX idx_archive_user_due (userID, dueDate, loanID)) " +
+                "PARTITION BY RANGE COLUMNS (loanDate) (PARTITION pmax VALUES LESS THAN (MAXVALUE));");
+        executeUpdate("CREATE OR REPLACE VIEW AllLoans AS " +
+                "SELECT loanID, userID, copyID, loanDate, numberOfDays, dueDate, returnDate, isReturned FROM Loans " +
+                "UNION ALL " +
+                "SELECT loanID, userID, copyID, loanDate, numberOfDays, dueDate, returnDate, isReturned FROM LoansArchive;");
+    }
+
+    /**
+     * Creates the tables of the fines if they do not already exist: the ledger of the charges,
+     * the day each loan is charged through, and the balance of each user. Amounts are in cents.
+     */
+    private void createFineTables() {
+        executeUpdate("CREATE TABLE IF NOT EXISTS FineLedger (" +
+                "entryID BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "loanID INT NOT NULL, " +
+                "userID INT NOT NULL, " +
+                "accruedOn DATE NOT NULL, " +
+                "days INT NOT NULL, " +
+                "amount BIGINT NOT NULL, " +
+                "INDEX idx_ledger_user (userID, accruedOn), " +
+                "INDEX idx_ledger_loan (loanID), " +
+                "FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE);");
+        executeUpdate("CREATE TABLE IF NOT EXISTS LoanFines (" +
+                "loanID INT PRIMARY KEY, " +
+                "userID INT NOT NULL, " +
+                "accruedThrough DATE NOT NULL, " +
+                "amount BIGINT NOT NULL DEFAULT 0, " +
+                "FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE);");
+        executeUpdate("CREATE TABLE IF NOT EXISTS FineBalances (" +
+                "userID INT PRIMARY KEY, " +
+                "balance BIGINT NOT NULL DEFAULT 0, " +
+                "FOREIGN KEY (userID) REFERENCES Users(userID) ON DELETE CASCADE);");
+    }
+
+    /**
+     * Opens a new connection to the database, separate from the shared one.
+     * It is meant for background jobs that run their own transactions; the caller must close it.
+     *
+     * @return The new connection.
+     * @throws SQLException if the connection cannot be opened.
+     */
+    public Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(JDBC_URL + DATABASE_NAME + CONNECTION_OPTIONS, USER, PASSWORD);
+    }
+
+    /**
+     * Shares the queries between several connections, for a server where many desks query at the same time.
+     * Until it is called, every query goes through the single connection opened by {@link #startServer()}.
+     * It should be called after {@link #startServer()}, once the tables are initialized.
+     *
+     * @param size The number of connections of the pool.
+     * @throws SQLException if the connections cannot be opened.
+     */
+    public synchronized void startPool(int size) throws SQLException {
+        if (pool != null) {
+            return;
+        }
+        BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(size);
+        connections.add(connection);
+        while (connections.size() < size) {
+            connections.add(openConnection());
+        }
+        pool = connections;
+        System.out.println("Database pool started with " + size + " connections.");
+    }
+
+    /**
+     * Takes a connection for a query, waiting for one to be free if they are all in use.
+     *
+     * @return The connection, to give back with {@link #release(Connection)}.
+     * @throws SQLException if the wait is interrupted.
+     */
+    private Connection borrow() throws SQLException {
+        if (pool == null) {
+            return connection;
+        }
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    /**
+     * Gives back a connection taken by {@link #borrow()}.
+     *
+     * @param borrowed The connection.
+     */
+    private void release(Connection borrowed) {
+        if (pool != null) {
+            pool.add(borrowed);
+        }
+    }
+
+    /**
+     * Creates an index if the table does not have an index with this name yet.
+     *
+     * @param table   The name of the table.
+     * @param index   The name of the index.
+     * @param columns The comma-separated columns of the index.
+     */
+    private void createIndexIfNotExists(String table, String index, String columns) {
+        ResultSet rs = executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.STATISTICS " +
+                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND INDEX_NAME = ?", DATABASE_NAME, table, index);
+        try {
+            if (rs != null && rs.next() && rs.getInt(1) == 0) {
+                executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds a column to a table created before the column existed.
+     *
+     * @param table      The name of the table.
+     * @param column     The name of the column.
+     * @param definition The type and constraints of the column.
+     * @return True if the column was added, false if it existed or could not be added.
+     */
+    private boolean addColumnIfNotExists(String table, String column, String definition) {
+        ResultSet rs = executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND COLUMN_NAME = ?", DATABASE_NAME, table, column);
+        try {
+            if (rs != null && rs.next() && rs.getInt(1) == 0) {
+                return executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition) >= 0;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Converts the ISBN columns of a database created with VARCHAR ISBNs to canonical BIGINT keys.
+     * Books stored under several forms of the same ISBN (ISBN-10, ISBN-13, hyphenated) are merged into one row.
+     * Books whose ISBN is not valid are skipped and moved to the UnmigratedBooks table, and their copies,
+     * detached from them, are listed in the UnmigratedCopies table, so they can be fixed by hand.
+     */
+    private void migrateIsbnColumns() {
+        ResultSet rs = executeQuery("SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = 'Books' AND COLUMN_NAME = 'isbn'", DATABASE_NAME);
+        Map<Long, Integer> copiesByKey = new HashMap<>();
+        Map<Long, List<String>> rawByKey = new HashMap<>();
+        List<String> invalid = new ArrayList<>();
+        try {
+            if (rs == null || !rs.next() || !rs.getString("DATA_TYPE").equalsIgnoreCase("varchar")) {
+                return;
+            }
+            ResultSet books = executeQuery("SELECT isbn, copiesAvailable FROM Books");
+            while (books != null && books.next()) {
+                String raw = books.getString("isbn");
+                long key = Isbn.toKey(raw);
+                if (key == Isbn.INVALID) {
+                    System.out.println("Skipping invalid ISBN, moved to UnmigratedBooks: " + raw);
+                    invalid.add(raw);
+                    continue;
+                }
+                rawByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(raw);
+                copiesByKey.merge(key, books.getInt("copiesAvailable"), Integer::sum);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        executeUpdate("SET FOREIGN_KEY_CHECKS = 0");
+        if (!invalid.isEmpty()) {
+            executeUpdate("CREATE TABLE IF NOT EXISTS UnmigratedBooks (isbn VARCHAR(255) PRIMARY KEY, copiesAvailable INT)");
+            executeUpdate("CREATE TABLE IF NOT EXISTS UnmigratedCopies (copyID INT PRIMARY KEY, isbn VARCHAR(255))");
+        }
+        for (String raw : invalid) {
+            executeUpdate("INSERT IGNORE INTO UnmigratedBooks SELECT isbn, copiesAvailable FROM Books WHERE isbn = ?", raw);
+            executeUpdate("INSERT IGNORE INTO UnmigratedCopies SELECT copyID, isbn FROM BookCopies WHERE isbn = ?", raw);
+            executeUpdate("UPDATE BookCopies SET isbn = NULL WHERE isbn = ?", raw);
+            executeUpdate("DELETE FROM Books WHERE isbn = ?", raw);
+        }
+        for (Map.Entry<Long, List<String>> entry : rawByKey.entrySet()) {
+            String canonical = Isbn.format(entry.getKey());
+            List<String> raws = entry.getValue();
+            if (raws.size() == 1 && raws.get(0).equals(canonical)) {
+                continue;
+            }
+            for (String raw : raws) {
+                executeUpdate("UPDATE BookCopies SET isbn = ? WHERE isbn = ?", canonical, raw);
+                executeUpdate("DELETE FROM Books WHERE isbn = ?", raw);
+            }
+            executeUpdate("INSERT INTO Books (isbn, copiesAvailable) VALUES (?, ?)", canonical, copiesByKey.get(entry.getKey()));
+        }
+        executeUpdate("ALTER TABLE Books MODIFY isbn BIGINT");
+        executeUpdate("ALTER TABLE BookCopies MODIFY isbn BIGINT");
+        executeUpdate("SET FOREIGN_KEY_CHECKS = 1");
+        System.out.println("ISBN columns migrated to BIGINT, " + invalid.size() + " invalid ISBN(s) skipped.");
     }
 
     /**
@@ -103,17 +382,28 @@ public class DataBase {
      *
      * @param query The SQL statement to execute.
      * @param params The parameters to set in the prepared statement.
+     * @return The number of rows affected, or -1 if the statement failed.
      */
-    public void executeUpdate(String query, Object... params) {
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            for (int i = 0; i < params.length; i++) {
-                pstmt.setObject(i + 1, params[i]);
+    public int executeUpdate(String query, Object... params) {
+        Connection borrowed = null;
+        try {
+            borrowed = borrow();
+            try (PreparedStatement pstmt = borrowed.prepareStatement(query)) {
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setObject(i + 1, params[i]);
+                }
+                int affectedRows = pstmt.executeUpdate();
+                System.out.println("Query executed: " + query);
+                return affectedRows;
             }
-            pstmt.executeUpdate();
-            System.out.println("Query executed: " + query);
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            if (borrowed != null) {
+                release(borrowed);
+            }
         }
+        return -1;
     }
 
     /**
@@ -124,20 +414,28 @@ public class DataBase {
      * @return The generated key, or -1 if no key was generated.
      */
     public int executeInsert(String query, Object... params) {
-        try (PreparedStatement pstmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            for (int i = 0; i < params.length; i++) {
-                pstmt.setObject(i + 1, params[i]);
-            }
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        return generatedKeys.getInt(1);
+        Connection borrowed = null;
+        try {
+            borrowed = borrow();
+            try (PreparedStatement pstmt = borrowed.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setObject(i + 1, params[i]);
+                }
+                int affectedRows = pstmt.executeUpdate();
+                if (affectedRows > 0) {
+                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            return generatedKeys.getInt(1);
+                        }
                     }
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            if (borrowed != null) {
+                release(borrowed);
+            }
         }
         return -1;
     }
@@ -150,23 +448,185 @@ public class DataBase {
      * @return The result set of the query.
      */
     public ResultSet executeQuery(String query, Object... params) {
+        Connection borrowed = null;
         try {
-            PreparedStatement pstmt = connection.prepareStatement(query);
+            borrowed = borrow();
+            PreparedStatement pstmt = borrowed.prepareStatement(query);
+            pstmt.closeOnCompletion();
             for (int i = 0; i < params.length; i++) {
                 pstmt.setObject(i + 1, params[i]);
             }
+            // The whole result is read by the driver before returning, so the connection can be given back at once
             return pstmt.executeQuery();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            if (borrowed != null) {
+                release(borrowed);
+            }
         }
         return null;
     }
 
     /**
-     * Closes the database connection.
+     * Handles one row of a streamed result set.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        /**
+         * Reads the current row of the result set.
+         *
+         * @param rs The result set, positioned on the row to read.
+         * @throws SQLException if the row cannot be read.
+         */
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Executes a SQL query and streams its rows to the given handler one at a time.
+     * Unlike {@link #executeQuery(String, Object...)}, the result set is not loaded in memory,
+     * which is meant for the scans that rebuild in-memory indexes.
+     * A streamed result holds its connection until the last row is read, so the stream never runs
+     * on the shared connection: it takes a pooled connection, or opens its own when there is no pool.
+     *
+     * @param query The SQL query to execute.
+     * @param handler The handler called for each row.
+     * @param params The parameters to set in the prepared statement.
+     * @return The number of rows read, or -1 if the query failed.
+     */
+    public int forEachRow(String query, RowHandler handler, Object... params) {
+        BlockingQueue<Connection> connections = pool;
+        Connection streaming = null;
+        try {
+            streaming = connections != null ? borrow() : openConnection();
+            try (PreparedStatement pstmt = streaming.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Makes the MySQL driver stream the rows instead of buffering the whole result
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setObject(i + 1, params[i]);
+                }
+                int rows = 0;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.handle(rs);
+                        rows++;
+                    }
+                }
+                return rows;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            if (streaming != null) {
+                if (connections != null) {
+                    release(streaming);
+                } else {
+                    try {
+                        streaming.close();
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The statements of a transaction, run on the connection of the transaction.
+     *
+     * @param <T> The type of the result of the transaction.
+     */
+    @FunctionalInterface
+    public interface Transaction<T> {
+        /**
+         * Runs the statements of the transaction.
+         *
+         * @param connection The connection of the transaction, with auto-commit off.
+         * @return The result of the transaction.
+         * @throws SQLException if a statement fails; the transaction is then rolled back.
+         */
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs statements in one transaction, committed if they all succeed and rolled back otherwise.
+     * With a pool, the transaction takes a pooled connection.
+     * Without one, the transactions run one at a time on a connection kept for them, opened by the first one,
+     * so the statements of other threads on the shared connection never end up in a transaction
+     * and no transaction pays for opening a connection.
+     *
+     * @param work The statements of the transaction.
+     * @param <T>  The type of the result of the transaction.
+     * @return The result of the transaction.
+     * @throws SQLException if the transaction fails.
+     */
+    public <T> T inTransaction(Transaction<T> work) throws SQLException {
+        BlockingQueue<Connection> connections = pool;
+        if (connections != null) {
+            Connection borrowed = borrow();
+            try {
+                return runTransaction(borrowed, work);
+            } finally {
+                release(borrowed);
+            }
+        }
+        transactionLock.lock();
+        try {
+            if (transactionConnection == null || transactionConnection.isClosed()) {
+                transactionConnection = openConnection();
+            }
+            return runTransaction(transactionConnection, work);
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    /**
+     * Runs statements in one transaction on a connection.
+     *
+     * @param transaction The connection of the transaction.
+     * @param work        The statements of the transaction.
+     * @param <T>         The type of the result of the transaction.
+     * @return The result of the transaction.
+     * @throws SQLException if the transaction fails.
+     */
+    private static <T> T runTransaction(Connection transaction, Transaction<T> work) throws SQLException {
+        transaction.setAutoCommit(false);
+        try {
+            T result = work.run(transaction);
+            transaction.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            transaction.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Closes the database connections.
      */
     public void stopServer() {
         try {
+            if (pool != null) {
+                for (Connection pooled : pool) {
+                    if (pooled != connection) {
+                        pooled.close();
+                    }
+                }
+                pool = null;
+            }
+            transactionLock.lock();
+            try {
+                if (transactionConnection != null) {
+                    transactionConnection.close();
+                    transactionConnection = null;
+                }
+            } finally {
+                transactionLock.unlock();
+            }
             if (connection != null && !connection.isClosed()) {
                 connection.close();
                 // Stop the mysqld process
@@ -0,0 +1,29 @@
+package com.example.cybooks.model;
+
+/**
+ * The reports that can be exported to a file.
+ */
+public enum ExportReport {
+    /** Every loan, current and archived, with its user and ISBN. */
+    LOANS("SELECT l.loanID, l.userID, u.name, bc.isbn, l.loanDate, l.dueDate, l.returnDate, l.isReturned " +
+            "FROM AllLoans l JOIN BookCopies bc ON l.copyID = bc.copyID JOIN Users u ON l.userID = u.userID"),
+    /** The daily circulation rollups. */
+    CIRCULATION("SELECT day, loans, returns, overdues, distinctPatrons FROM DailyCirculation ORDER BY day"),
+    /** Every user. */
+    USERS("SELECT userID, name, email, address FROM Users ORDER BY userID");
+
+    private final String query;
+
+    ExportReport(String query) {
+        this.query = query;
+    }
+
+    /**
+     * Gets the SQL query of the report.
+     *
+     * @return The query of the report.
+     */
+    public String getQuery() {
+        return query;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.cybooks.model;
+
+/**
+ * Represents the outcome of an import of users: the number of rows read, imported and rejected.
+ * The reason of each rejection is written to the error report of the import.
+ */
+public class ImportResult {
+    private final long rowsRead;
+    private final long imported;
+    private final long rejected;
+
+    /**
+     * Constructs a new import result.
+     *
+     * @param rowsRead The number of rows read, without the header.
+     * @param imported The number of users registered.
+     * @param rejected The number of rows rejected.
+     */
+    public ImportResult(long rowsRead, long imported, long rejected) {
+        this.rowsRead = rowsRead;
+        this.imported = imported;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Gets the number of rows read, without the header.
+     *
+     * @return The number of rows.
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Gets the number of users registered.
+     *
+     * @return The number of users.
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Gets the number of rows rejected.
+     *
+     * @return The number of rows.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the counts of the import.
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        return rowsRead + " row(s) read, " + imported + " user(s) imported, " + rejected + " row(s) rejected.";
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.cybooks.model;
+
+/**
+ * Represents a validated ISBN in its canonical ISBN-13 form.
+ * The ISBN is encoded as a primitive long, which is used as the key of the Books table
+ * and of the in-memory indexes, so that comparisons and hashing do not allocate.
+ * ISBN-10 values are converted to ISBN-13, and hyphens or spaces are ignored.
+ */
+public final class Isbn implements Comparable<Isbn> {
+    /** The key returned by {@link #toKey(CharSequence)} for an invalid ISBN. */
+    public static final long INVALID = -1L;
+
+    private final long value;
+
+    /**
+     * Constructs an ISBN from its numeric key.
+     *
+     * @param value The 13 digits of the ISBN as a number.
+     */
+    private Isbn(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Parses an ISBN-10 or ISBN-13, with or without hyphens.
+     *
+     * @param text The ISBN to parse.
+     * @return The canonical ISBN.
+     * @throws IllegalArgumentException if the text is not a valid ISBN.
+     */
+    public static Isbn parse(String text) throws IllegalArgumentException {
+        long key = toKey(text);
+        if (key == INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN: " + text);
+        }
+        return new Isbn(key);
+    }
+
+    /**
+     * Creates an ISBN from a key previously returned by {@link #toKey(CharSequence)}.
+     *
+     * @param key The numeric key of the ISBN.
+     * @return The ISBN.
+     */
+    public static Isbn of(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid ISBN key: " + key);
+        }
+        return new Isbn(key);
+    }
+
+    /**
+     * Converts an ISBN-10 or ISBN-13 to the numeric key of its ISBN-13 form, without allocating.
+     * Leading text such as "ISBN " is skipped, and hyphens or spaces between digits are ignored.
+     * Trailing text is allowed once separated from the ISBN, as in "2-07-036822-X (br.)",
+     * whether the check character is a digit or an X.
+     *
+     * @param text The ISBN to convert, may be null.
+     * @return The key of the ISBN, or {@link #INVALID} if the text is not a valid ISBN.
+     */
+    public static long toKey(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+        int i = 0;
+        int length = text.length();
+        while (i < length && !Character.isDigit(text.charAt(i))) {
+            i++;
+        }
+
+        long digits = 0;
+        int count = 0;
+        int sum10 = 0;
+        int sum13 = 0;
+        boolean checkX = false;
+        // The index after the last character of the ISBN
+        int end = i;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (c == 'X' || c == 'x') {
+                if (count != 9) {
+                    return INVALID;
+                }
+                checkX = true;
+                count++;
+                sum10 += 10;
+                i++;
+                end = i;
+                break;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (count == 13) {
+                return INVALID;
+            }
+            int d = c - '0';
+            digits = digits * 10 + d;
+            sum10 += (10 - count) * d;
+            sum13 += (count % 2 == 0 ? 1 : 3) * d;
+            count++;
+            end = i + 1;
+        }
+        // Text stuck to the last character is part of something else than an ISBN
+        if (i < length && i == end && Character.isLetterOrDigit(text.charAt(i))) {
+            return INVALID;
+        }
+
+        if (count == 13) {
+            return sum13 % 10 == 0 ? digits : INVALID;
+        }
+        if (count == 10) {
+            if (sum10 % 11 != 0) {
+                return INVALID;
+            }
+            long body = checkX ? digits : digits / 10;
+            return toIsbn13(body);
+        }
+        return INVALID;
+    }
+
+    /**
+     * Builds the ISBN-13 key from the first nine digits of an ISBN-10.
+     *
+     * @param body The first nine digits of the ISBN-10.
+     * @return The key of the matching ISBN-13.
+     */
+    private static long toIsbn13(long body) {
+        long withoutCheck = 978_000_000_000L + body;
+        int sum = 0;
+        long rest = withoutCheck;
+        for (int position = 11; position >= 0; position--) {
+            int d = (int) (rest % 10);
+            sum += (position % 2 == 0 ? 1 : 3) * d;
+            rest /= 10;
+        }
+        int check = (10 - sum % 10) % 10;
+        return withoutCheck * 10 + check;
+    }
+
+    /**
+     * Formats a key as the 13 digits of the ISBN.
+     *
+     * @param key The key of the ISBN.
+     * @return The 13 digits of the ISBN.
+     */
+    public static String format(long key) {
+        String digits = Long.toString(key);
+        if (digits.length() >= 13) {
+            return digits;
+        }
+        return "0".repeat(13 - digits.length()) + digits;
+    }
+
+    /**
+     * Gets the numeric key of the ISBN.
+     *
+     * @return The 13 digits of the ISBN as a number.
+     */
+    public long toLong() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(Isbn other) {
+        return Long.compare(value, other.value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Isbn && ((Isbn) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    /**
+     * Returns the 13 digits of the ISBN.
+     *
+     * @return The ISBN-13 as a string.
+     */
+    @Override
+    public String toString() {
+        return format(value);
+    }
+}
@@ -117,6 +117,24 @@ public class Loan {
         this.loanDate = loanDate;
     }
 
+    /**
+     * Gets the length of the loan.
+     * 
+     * @return The number of days of the loan.
+     */
+
+    public int getNumberOfDays() {
+        return numberOfDays;
+    }
+
+    /**
+     * Sets the length of the loan.
+     */
+
+    public void setNumberOfDays(int numberOfDays) {
+        this.numberOfDays = numberOfDays;
+    }
+
     /**
      * Gets the due date.
      * 
@@ -207,16 +225,18 @@ public class Loan {
      * Register a new loan in the database.
      * 
      * @param db
+     * @return True if the loan was registered and its loanID set, false otherwise.
      */
 
-    public void register(DataBase db) {
+    public boolean register(DataBase db) {
         String query = "INSERT INTO Loans (userID, copyID, loanDate, numberOfDays, dueDate, isReturned) " +
                 "VALUES (?, ?, ?, ?, ?, ?)";
-        int generatedID = db.executeInsert(query, this.userID, this.copyID, this.loanDate.toString(),
-                this.numberOfDays, this.dueDate.toString(), this.isReturned);
+        int generatedID = db.executeInsert(query, this.userID, this.copyID, this.loanDate,
+                this.numberOfDays, this.dueDate, this.isReturned);
         if (generatedID != -1) {
             this.loanID = generatedID;
         }
+        return generatedID != -1;
     }
 
     /**
@@ -227,7 +247,7 @@ public class Loan {
 
     public void update(DataBase db) {
         String query = "UPDATE Loans SET returnDate = ?, isReturned = ? WHERE loanID = ?";
-        db.executeUpdate(query, this.returnDate != null ? this.returnDate.toString() : null, this.isReturned, this.loanID);
+        db.executeUpdate(query, this.returnDate, this.isReturned, this.loanID);
     }
 
     /**
@@ -0,0 +1,15 @@
+package com.example.cybooks.model;
+
+/**
+ * The loans selected by a loan listing.
+ */
+public enum LoanFilter {
+    /** Every loan, returned or not. */
+    ALL,
+    /** The loans whose book was not returned yet. */
+    CURRENT,
+    /** The loans whose book was not returned and whose due date is reached. */
+    OVERDUE,
+    /** Every loan of one user. */
+    USER
+}
@@ -0,0 +1,154 @@
+package com.example.cybooks.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Represents one page of a loan listing, ordered by due date then loan ID.
+ * The cursor of the page designates its last loan; passing it back to the listing returns the next page,
+ * even if loans were added or returned in the meantime.
+ */
+public class LoanPage {
+    private final List<Item> items;
+    private final String nextCursor;
+
+    /**
+     * Constructs a new page.
+     *
+     * @param items      The loans of the page.
+     * @param nextCursor The cursor of the next page, or null if this is the last page.
+     */
+    public LoanPage(List<Item> items, String nextCursor) {
+        this.items = List.copyOf(items);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the loans of the page.
+     *
+     * @return The loans of the page.
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the cursor to pass to the listing to get the next page.
+     *
+     * @return The cursor of the next page, or null if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks if there is a page after this one.
+     *
+     * @return True if there is a next page, false otherwise.
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Builds the cursor that designates a loan.
+     *
+     * @param dueDate The due date of the loan.
+     * @param loanID  The ID of the loan.
+     * @return The cursor.
+     */
+    public static String cursorOf(LocalDate dueDate, int loanID) {
+        return dueDate + "/" + loanID;
+    }
+
+    /**
+     * Reads the due date of a cursor.
+     *
+     * @param cursor The cursor.
+     * @return The due date of the loan designated by the cursor.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public static LocalDate cursorDueDate(String cursor) {
+        try {
+            return LocalDate.parse(cursor.substring(0, cursor.indexOf('/')));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * Reads the loan ID of a cursor.
+     *
+     * @param cursor The cursor.
+     * @return The ID of the loan designated by the cursor.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public static int cursorLoanID(String cursor) {
+        try {
+            return Integer.parseInt(cursor.substring(cursor.indexOf('/') + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * A loan of the page with the ISBN of its book and the name of its user.
+     */
+    public static class Item {
+        private final Loan loan;
+        private final long isbn;
+        private final String userName;
+
+        /**
+         * Constructs a new item.
+         *
+         * @param loan     The loan.
+         * @param isbn     The canonical ISBN key of the loaned book.
+         * @param userName The name of the user.
+         */
+        public Item(Loan loan, long isbn, String userName) {
+            this.loan = loan;
+            this.isbn = isbn;
+            this.userName = userName;
+        }
+
+        /**
+         * Gets the loan.
+         *
+         * @return The loan.
+         */
+        public Loan getLoan() {
+            return loan;
+        }
+
+        /**
+         * Gets the canonical ISBN key of the loaned book.
+         *
+         * @return The ISBN key.
+         */
+        public long getIsbn() {
+            return isbn;
+        }
+
+        /**
+         * Gets the name of the user.
+         *
+         * @return The user's name.
+         */
+        public String getUserName() {
+            return userName;
+        }
+
+        /**
+         * Returns the loan as a line of the loan reports.
+         *
+         * @return A string representation of the item.
+         */
+        @Override
+        public String toString() {
+            return "Loan ID: " + loan.getLoanID() + ", User: " + userName + ", ISBN: " + Isbn.format(isbn)
+                    + ", Loan Date: " + loan.getLoanDate() + ", Due Date: " + loan.getDueDate()
+                    + " Returned ? :" + loan.getIsReturned();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.cybooks.model;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Decodes the rows of a query on the Loans table.
+ * The column positions are resolved once per result set instead of once per row,
+ * and the DATE columns are read natively as {@link LocalDate} without going through strings.
+ * A decoder can be reused for every row of a result set; it is not thread-safe.
+ */
+public class LoanRowDecoder {
+    private ResultSet bound;
+    private int loanIDColumn;
+    private int userIDColumn;
+    private int copyIDColumn;
+    private int loanDateColumn;
+    private int numberOfDaysColumn;
+    private int dueDateColumn;
+    private int returnDateColumn;
+    private int isReturnedColumn;
+    private int isbnColumn;
+    private int nameColumn;
+
+    /**
+     * Gets the ID of the loan of the current row.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The loan's ID.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public int getLoanID(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getInt(require(loanIDColumn, "loanID"));
+    }
+
+    /**
+     * Gets the ID of the user of the current row.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The user's ID.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public int getUserID(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getInt(require(userIDColumn, "userID"));
+    }
+
+    /**
+     * Gets the ID of the copy of the current row.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The copy's ID.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public int getCopyID(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getInt(require(copyIDColumn, "copyID"));
+    }
+
+    /**
+     * Gets the loan date of the current row.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The loan date.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public LocalDate getLoanDate(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getObject(require(loanDateColumn, "loanDate"), LocalDate.class);
+    }
+
+    /**
+     * Gets the due date of the current row.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The due date.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public LocalDate getDueDate(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getObject(require(dueDateColumn, "dueDate"), LocalDate.class);
+    }
+
+    /**
+     * Gets the return date of the current row.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The return date, or null if the book was not returned.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public LocalDate getReturnDate(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getObject(require(returnDateColumn, "returnDate"), LocalDate.class);
+    }
+
+    /**
+     * Gets the return status of the current row.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return True if the book was returned, false otherwise.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public boolean isReturned(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getBoolean(require(isReturnedColumn, "isReturned"));
+    }
+
+    /**
+     * Gets the canonical ISBN key of the current row, for queries joined with BookCopies.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The ISBN key.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public long getIsbn(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getLong(require(isbnColumn, "isbn"));
+    }
+
+    /**
+     * Gets the name of the user of the current row, for queries joined with Users.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The user's name.
+     * @throws SQLException if the column is missing or cannot be read.
+     */
+    public String getUserName(ResultSet rs) throws SQLException {
+        bind(rs);
+        return rs.getString(require(nameColumn, "name"));
+    }
+
+    /**
+     * Decodes the current row as a loan. The row must contain every column of the Loans table.
+     *
+     * @param rs The result set, positioned on a row.
+     * @return The loan of the row.
+     * @throws SQLException if a column is missing or cannot be read.
+     */
+    public Loan decode(ResultSet rs) throws SQLException {
+        Loan loan = new Loan(getUserID(rs), getCopyID(rs));
+        loan.setLoanID(getLoanID(rs));
+        loan.setLoanDate(getLoanDate(rs));
+        loan.setNumberOfDays(rs.getInt(require(numberOfDaysColumn, "numberOfDays")));
+        loan.setDueDate(getDueDate(rs));
+        loan.setReturnDate(getReturnDate(rs));
+        loan.setIsReturned(isReturned(rs));
+        return loan;
+    }
+
+    /**
+     * Resolves the column positions if the result set changed since the last row.
+     *
+     * @param rs The result set.
+     * @throws SQLException if the metadata cannot be read.
+     */
+    private void bind(ResultSet rs) throws SQLException {
+        if (rs == bound) {
+            return;
+        }
+        loanIDColumn = userIDColumn = copyIDColumn = loanDateColumn = numberOfDaysColumn = 0;
+        dueDateColumn = returnDateColumn = isReturnedColumn = isbnColumn = nameColumn = 0;
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = metaData.getColumnCount(); i >= 1; i--) {
+            // Iterates backwards so that the first column with a given label wins, like ResultSet.findColumn
+            switch (metaData.getColumnLabel(i).toLowerCase(Locale.ROOT)) {
+                case "loanid":
+                    loanIDColumn = i;
+                    break;
+                case "userid":
+                    userIDColumn = i;
+                    break;
+                case "copyid":
+                    copyIDColumn = i;
+                    break;
+                case "loandate":
+                    loanDateColumn = i;
+                    break;
+                case "numberofdays":
+                    numberOfDaysColumn = i;
+                    break;
+                case "duedate":
+                    dueDateColumn = i;
+                    break;
+                case "returndate":
+                    returnDateColumn = i;
+                    break;
+                case "isreturned":
+                    isReturnedColumn = i;
+                    break;
+                case "isbn":
+                    isbnColumn = i;
+                    break;
+                case "name":
+                    nameColumn = i;
+                    break;
+                default:
+                    break;
+            }
+        }
+        bound = rs;
+    }
+
+    /**
+     * Checks that a column was found in the result set.
+     *
+     * @param column The position of the column, or 0 if it is missing.
+     * @param label  The label of the column.
+     * @return The position of the column.
+     * @throws SQLException if the column is missing.
+     */
+    private static int require(int column, String label) throws SQLException {
+        if (column == 0) {
+            throw new SQLException("Column not found in loan query: " + label);
+        }
+        return column;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.cybooks.model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the overdue notice of a patron: the patron and their overdue loans.
+ */
+public class OverdueNotice {
+    private final int userID;
+    private final String name;
+    private final String email;
+    private final List<Line> lines = new ArrayList<>();
+
+    /**
+     * Constructs an empty notice for a patron.
+     *
+     * @param userID The ID of the patron.
+     * @param name   The name of the patron.
+     * @param email  The email address of the patron.
+     */
+    public OverdueNotice(int userID, String name, String email) {
+        this.userID = userID;
+        this.name = name;
+        this.email = email;
+    }
+
+    /**
+     * Adds an overdue loan to the notice.
+     *
+     * @param loanID   The ID of the loan.
+     * @param isbn     The canonical ISBN key of the book, or {@link Isbn#INVALID} if the copy has no ISBN.
+     * @param loanDate The date of the loan.
+     * @param dueDate  The due date of the loan.
+     * @param fine     The fine accrued on the loan, in cents.
+     */
+    public void addLine(int loanID, long isbn, LocalDate loanDate, LocalDate dueDate, long fine) {
+        lines.add(new Line(loanID, isbn, loanDate, dueDate, fine));
+    }
+
+    /**
+     * Gets the ID of the patron.
+     *
+     * @return The ID of the patron.
+     */
+    public int getUserID() {
+        return userID;
+    }
+
+    /**
+     * Gets the email address of the patron.
+     *
+     * @return The email address.
+     */
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Gets the number of overdue loans in the notice.
+     *
+     * @return The number of loans.
+     */
+    public int getLoanCount() {
+        return lines.size();
+    }
+
+    /**
+     * Renders the notice as an email message, with its headers.
+     *
+     * @param today The day of the notice.
+     * @return The text of the notice.
+     */
+    public String render(LocalDate today) {
+        StringBuilder text = new StringBuilder(256 + 96 * lines.size());
+        text.append("To: ").append(name).append(" <").append(email).append(">\n");
+        text.append("Subject: Overdue books (").append(lines.size()).append(")\n");
+        text.append("Date: ").append(today).append("\n\n");
+        text.append("Dear ").append(name).append(",\n\n");
+        text.append("The following books are overdue. Please return them as soon as possible.\n\n");
+        long totalFine = 0;
+        for (Line line : lines) {
+            long daysLate = Math.max(0, ChronoUnit.DAYS.between(line.dueDate, today));
+            text.append(" - Loan ").append(line.loanID).append(": ISBN ")
+                    .append(line.isbn == Isbn.INVALID ? "unknown" : Isbn.format(line.isbn))
+                    .append(", loaned on ").append(line.loanDate)
+                    .append(", due on ").append(line.dueDate)
+                    .append(", ").append(daysLate).append(" day(s) late");
+            if (line.fine > 0) {
+                text.append(", fine ").append(formatCents(line.fine));
+            }
+            text.append("\n");
+            totalFine += line.fine;
+        }
+        if (totalFine > 0) {
+            text.append("\nTotal fines on these loans: ").append(formatCents(totalFine)).append("\n");
+        }
+        text.append("\nCY-Books Library\n");
+        return text.toString();
+    }
+
+    /**
+     * Formats an amount in cents.
+     *
+     * @param cents The amount, in cents.
+     * @return The amount with two decimals.
+     */
+    private static String formatCents(long cents) {
+        return cents / 100 + "." + String.format("%02d", cents % 100);
+    }
+
+    /**
+     * An overdue loan of the notice.
+     */
+    private static class Line {
+        private final int loanID;
+        private final long isbn;
+        private final LocalDate loanDate;
+        private final LocalDate dueDate;
+        private final long fine;
+
+        /**
+         * Constructs a line.
+         *
+         * @param loanID   The ID of the loan.
+         * @param isbn     The canonical ISBN key of the book.
+         * @param loanDate The date of the loan.
+         * @param dueDate  The due date of the loan.
+         * @param fine     The fine accrued on the loan, in cents.
+         */
+        private Line(int loanID, long isbn, LocalDate loanDate, LocalDate dueDate, long fine) {
+            this.loanID = loanID;
+            this.isbn = isbn;
+            this.loanDate = loanDate;
+            this.dueDate = dueDate;
+            this.fine = fine;
+        }
+    }
+}
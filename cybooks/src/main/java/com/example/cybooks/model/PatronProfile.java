@@ -0,0 +1,133 @@
+package com.example.cybooks.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Represents the profile of a patron: the user, their current loans and the totals of their history.
+ */
+public class PatronProfile {
+    private final User user;
+    private final List<LoanPage.Item> currentLoans;
+    private final int overdueCount;
+    private final int totalLoans;
+    private final int totalReturns;
+    private final LocalDate firstLoanDate;
+    private final LocalDate lastLoanDate;
+    private final long fineBalance;
+
+    /**
+     * Constructs a new profile.
+     *
+     * @param user          The user.
+     * @param currentLoans  The loans whose book was not returned yet.
+     * @param overdueCount  The number of current loans whose due date is reached.
+     * @param totalLoans    The number of loans of the user since their registration.
+     * @param totalReturns  The number of returns of the user since their registration.
+     * @param firstLoanDate The date of the first loan, or null if the user never borrowed.
+     * @param lastLoanDate  The date of the last loan, or null if the user never borrowed.
+     * @param fineBalance   The fines owed by the user, in cents.
+     */
+    public PatronProfile(User user, List<LoanPage.Item> currentLoans, int overdueCount, int totalLoans,
+            int totalReturns, LocalDate firstLoanDate, LocalDate lastLoanDate, long fineBalance) {
+        this.user = user;
+        this.currentLoans = List.copyOf(currentLoans);
+        this.overdueCount = overdueCount;
+        this.totalLoans = totalLoans;
+        this.totalReturns = totalReturns;
+        this.firstLoanDate = firstLoanDate;
+        this.lastLoanDate = lastLoanDate;
+        this.fineBalance = fineBalance;
+    }
+
+    /**
+     * Gets the user.
+     *
+     * @return The user.
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the loans whose book was not returned yet.
+     *
+     * @return The current loans.
+     */
+    public List<LoanPage.Item> getCurrentLoans() {
+        return currentLoans;
+    }
+
+    /**
+     * Gets the number of current loans whose due date is reached.
+     *
+     * @return The number of overdue loans.
+     */
+    public int getOverdueCount() {
+        return overdueCount;
+    }
+
+    /**
+     * Gets the number of loans of the user since their registration.
+     *
+     * @return The total number of loans.
+     */
+    public int getTotalLoans() {
+        return totalLoans;
+    }
+
+    /**
+     * Gets the number of returns of the user since their registration.
+     *
+     * @return The total number of returns.
+     */
+    public int getTotalReturns() {
+        return totalReturns;
+    }
+
+    /**
+     * Gets the date of the first loan of the user.
+     *
+     * @return The date of the first loan, or null if the user never borrowed.
+     */
+    public LocalDate getFirstLoanDate() {
+        return firstLoanDate;
+    }
+
+    /**
+     * Gets the date of the last loan of the user.
+     *
+     * @return The date of the last loan, or null if the user never borrowed.
+     */
+    public LocalDate getLastLoanDate() {
+        return lastLoanDate;
+    }
+
+    /**
+     * Gets the fines owed by the user.
+     *
+     * @return The fines owed, in cents.
+     */
+    public long getFineBalance() {
+        return fineBalance;
+    }
+
+    /**
+     * Returns the user, their totals, their fines and their current loans.
+     *
+     * @return A string representation of the profile.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(user.toString()).append("\n\n");
+        result.append("Total loans: ").append(totalLoans).append(", Total returns: ").append(totalReturns)
+                .append(", First loan: ").append(firstLoanDate).append(", Last loan: ").append(lastLoanDate).append("\n");
+        result.append("Fines owed: ").append(fineBalance / 100).append('.')
+                .append(String.format("%02d", fineBalance % 100)).append("\n");
+        result.append("Current loans: ").append(currentLoans.size()).append(", Overdue: ").append(overdueCount).append("\n");
+        for (LoanPage.Item item : currentLoans) {
+            result.append(item).append("\n");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.cybooks.model;
+
+/**
+ * Represents the outcome of a renewal: how many open loans were asked for, and how many the policy allowed.
+ */
+public class RenewalResult {
+    private final int requested;
+    private final int renewed;
+
+    /**
+     * Constructs a new renewal result.
+     *
+     * @param requested The number of open loans matched by the renewal.
+     * @param renewed   The number of loans whose due date was extended.
+     */
+    public RenewalResult(int requested, int renewed) {
+        this.requested = requested;
+        this.renewed = renewed;
+    }
+
+    /**
+     * Gets the number of open loans matched by the renewal.
+     *
+     * @return The number of loans asked for.
+     */
+    public int getRequested() {
+        return requested;
+    }
+
+    /**
+     * Gets the number of loans whose due date was extended.
+     *
+     * @return The number of renewed loans.
+     */
+    public int getRenewed() {
+        return renewed;
+    }
+
+    /**
+     * Gets the number of loans the policy refused to renew.
+     *
+     * @return The number of refused loans.
+     */
+    public int getRefused() {
+        return requested - renewed;
+    }
+
+    /**
+     * Returns the numbers of renewed and refused loans.
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        if (requested == 0) {
+            return "No open loan to renew.";
+        }
+        String result = renewed + " of " + requested + " loan(s) renewed.";
+        if (getRefused() > 0) {
+            result += " " + getRefused() + " refused: overdue, renewed too many times, or fines owed.";
+        }
+        return result;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.cybooks.model;
+
+/**
+ * The length of the periods of a circulation report.
+ */
+public enum ReportPeriod {
+    /** One row per day. */
+    DAY("DATE_FORMAT(day, '%Y-%m-%d')"),
+    /** One row per ISO week. */
+    WEEK("DATE_FORMAT(day, '%x-W%v')"),
+    /** One row per month. */
+    MONTH("DATE_FORMAT(day, '%Y-%m')");
+
+    private final String sqlLabel;
+
+    ReportPeriod(String sqlLabel) {
+        this.sqlLabel = sqlLabel;
+    }
+
+    /**
+     * Gets the SQL expression giving the label of the period of a day column named "day".
+     *
+     * @return The SQL expression of the period label.
+     */
+    public String getSqlLabel() {
+        return sqlLabel;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.cybooks.model;
+
+import java.util.List;
+
+/**
+ * Represents the outcome of a bulk return: for each copy scanned, whether its open loan was closed.
+ */
+public class ReturnResult {
+    /**
+     * The outcome of one copy of the scan.
+     */
+    public enum Status {
+        /** The open loan of the copy was closed. */
+        RETURNED,
+        /** The copy had no open loan. */
+        NOT_LOANED,
+        /** The returns could not be recorded. */
+        FAILED
+    }
+
+    private final List<Item> items;
+
+    /**
+     * Constructs a new return result.
+     *
+     * @param items The outcomes of the copies, in the order of the scan.
+     */
+    public ReturnResult(List<Item> items) {
+        this.items = items;
+    }
+
+    /**
+     * Gets the outcomes of the copies, in the order of the scan.
+     *
+     * @return The outcomes.
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the number of copies returned.
+     *
+     * @return The number of loans closed.
+     */
+    public int getReturnedCount() {
+        int returned = 0;
+        for (Item item : items) {
+            if (item.getStatus() == Status.RETURNED) {
+                returned++;
+            }
+        }
+        return returned;
+    }
+
+    /**
+     * Returns the outcome of each copy of the scan.
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(getReturnedCount()).append(" of ").append(items.size()).append(" copy(ies) returned.\n");
+        for (Item item : items) {
+            result.append(" - ").append(item).append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * The outcome of one copy of the scan.
+     */
+    public static class Item {
+        private final int copyID;
+        private final Status status;
+        private final Loan loan;
+
+        /**
+         * Constructs the outcome of a copy.
+         *
+         * @param copyID The ID of the copy.
+         * @param status The outcome.
+         * @param loan   The loan closed, or null if the copy was not returned.
+         */
+        public Item(int copyID, Status status, Loan loan) {
+            this.copyID = copyID;
+            this.status = status;
+            this.loan = loan;
+        }
+
+        /**
+         * Gets the ID of the copy.
+         *
+         * @return The copy ID.
+         */
+        public int getCopyID() {
+            return copyID;
+        }
+
+        /**
+         * Gets the outcome of the copy.
+         *
+         * @return The status.
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Gets the loan closed for the copy.
+         *
+         * @return The loan, or null if the copy was not returned.
+         */
+        public Loan getLoan() {
+            return loan;
+        }
+
+        /**
+         * Returns the copy and its outcome.
+         *
+         * @return A string representation of the outcome.
+         */
+        @Override
+        public String toString() {
+            switch (status) {
+                case RETURNED:
+                    return "copy " + copyID + ": returned (loan " + loan.getLoanID() + " of user " + loan.getUserID() + ")";
+                case NOT_LOANED:
+                    return "copy " + copyID + ": not loaned";
+                default:
+                    return "copy " + copyID + ": not returned, the returns could not be recorded";
+            }
+        }
+    }
+}
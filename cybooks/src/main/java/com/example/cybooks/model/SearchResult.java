@@ -0,0 +1,112 @@
+package com.example.cybooks.model;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Represents the result of a search.
+ * It holds the records found, the total number of matches and the time the search took.
+ * Records are only rendered as text when a row is displayed, one record at a time.
+ *
+ * @param <T> The type of the records.
+ */
+public class SearchResult<T> {
+    private final List<T> records;
+    private final int totalCount;
+    private final long elapsedMillis;
+    private final Function<? super T, String> renderer;
+
+    /**
+     * Constructs a new search result.
+     *
+     * @param records       The records found, possibly limited to the first matches.
+     * @param totalCount    The total number of matches.
+     * @param elapsedMillis The time the search took, in milliseconds.
+     * @param renderer      The function used to render a record as text.
+     */
+    public SearchResult(List<T> records, int totalCount, long elapsedMillis, Function<? super T, String> renderer) {
+        this.records = List.copyOf(records);
+        this.totalCount = totalCount;
+        this.elapsedMillis = elapsedMillis;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Gets the records found.
+     *
+     * @return The records found.
+     */
+    public List<T> getRecords() {
+        return records;
+    }
+
+    /**
+     * Gets the total number of matches, which can be greater than the number of records.
+     *
+     * @return The total number of matches.
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Gets the time the search took.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Gets the number of records.
+     *
+     * @return The number of records.
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Gets the number of pages needed to show all the records.
+     *
+     * @param pageSize The number of records per page.
+     * @return The number of pages.
+     */
+    public int getPageCount(int pageSize) {
+        return (records.size() + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Gets the records of one page.
+     *
+     * @param pageIndex The index of the page, starting at 0.
+     * @param pageSize  The number of records per page.
+     * @return The records of the page, empty if the page is out of range.
+     */
+    public List<T> getPage(int pageIndex, int pageSize) {
+        int fromIndex = Math.min(pageIndex * pageSize, records.size());
+        int toIndex = Math.min(fromIndex + pageSize, records.size());
+        return records.subList(fromIndex, toIndex);
+    }
+
+    /**
+     * Renders a record as text.
+     *
+     * @param record The record to render.
+     * @return The text of the record.
+     */
+    public String render(T record) {
+        return renderer.apply(record);
+    }
+
+    /**
+     * Returns a summary of the result, without rendering the records.
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        return totalCount + " result(s), " + records.size() + " shown, found in " + elapsedMillis + " ms";
+    }
+}
@@ -85,6 +85,16 @@ public class User {
         return email;
     }
 
+    /**
+     * Checks the format of an email with the precompiled pattern.
+     *
+     * @param email The email to check.
+     * @return True if the email is well formed, false otherwise.
+     */
+    public static boolean isValidEmail(String email) {
+        return email != null && EMAIL_PATTERN.matcher(email).matches();
+    }
+
     /**
      * Sets the user's email.
      *
@@ -92,7 +102,7 @@ public class User {
      * @throws IllegalArgumentException if the email format is invalid.
      */
     public void setEmail(String email) throws IllegalArgumentException {
-        if(!EMAIL_PATTERN.matcher(email).matches()){
+        if(!isValidEmail(email)){
             throw new IllegalArgumentException("Invalid email format :" + email);
         }
         this.email = email;
@@ -134,10 +144,11 @@ public class User {
      * Updates the user's information in the database.
      *
      * @param db The DataBase object used to execute the query.
+     * @return True if the user was updated, false if the update failed or the user no longer exists.
      */
-    public void update(DataBase db) {
+    public boolean update(DataBase db) {
         String query = "UPDATE Users SET name = ?, email = ?, address = ? WHERE userID = ?";
-        db.executeUpdate(query, this.name, this.email, this.address, this.userID);
+        return db.executeUpdate(query, this.name, this.email, this.address, this.userID) > 0;
     }
 
     /**
@@ -0,0 +1,470 @@
+package com.example.cybooks.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import com.example.cybooks.exception.BookNotFoundException;
+import com.example.cybooks.exception.EmailAlreadyExistsException;
+import com.example.cybooks.exception.InvalidEmailFormatException;
+import com.example.cybooks.exception.NoCopyAvailableException;
+import com.example.cybooks.exception.NoCopyForTheBookException;
+import com.example.cybooks.exception.UserHasLoansException;
+import com.example.cybooks.exception.UserNotFoundException;
+import com.example.cybooks.manager.LibraryService;
+import com.example.cybooks.manager.ReportExporter;
+import com.example.cybooks.model.BookApi;
+import com.example.cybooks.model.CatalogHit;
+import com.example.cybooks.model.CheckoutResult;
+import com.example.cybooks.model.ExportReport;
+import com.example.cybooks.model.ImportResult;
+import com.example.cybooks.model.LoanFilter;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.PatronProfile;
+import com.example.cybooks.model.RenewalResult;
+import com.example.cybooks.model.ReportPeriod;
+import com.example.cybooks.model.ReturnResult;
+import com.example.cybooks.model.SearchResult;
+import com.example.cybooks.model.User;
+import com.example.cybooks.utils.Json;
+import com.example.cybooks.utils.RowEncoder;
+
+/**
+ * Sends the operations of a desk to a {@link LibraryServer}, so the desk holds no database connection nor cache.
+ * The exceptions of the operations are thrown again on the desk with the same type and message.
+ */
+public class LibraryClient implements LibraryService {
+    private final URI baseUri;
+    private final HttpClient client;
+
+    /**
+     * Constructs a client of the server at the given address.
+     *
+     * @param serverUrl The address of the server, such as {@code http://localhost:8080}.
+     */
+    public LibraryClient(String serverUrl) {
+        this.baseUri = URI.create(serverUrl.endsWith("/") ? serverUrl : serverUrl + "/");
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Does nothing: the manager of the server is initialized by the server.
+     */
+    @Override
+    public void initialize() {
+    }
+
+    /**
+     * Does nothing: the manager of the server is stopped with the server.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public void registerUser(String name, String email, String address) throws InvalidEmailFormatException, EmailAlreadyExistsException {
+        try {
+            call("registerUser", args("name", name, "email", email, "address", address));
+        } catch (RemoteException e) {
+            rethrow(e, InvalidEmailFormatException.class, InvalidEmailFormatException::new);
+            rethrow(e, EmailAlreadyExistsException.class, EmailAlreadyExistsException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public void updateUser(int userID, String name, String email, String address) throws UserNotFoundException, InvalidEmailFormatException, EmailAlreadyExistsException {
+        try {
+            call("updateUser", args("userID", userID, "name", name, "email", email, "address", address));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            rethrow(e, InvalidEmailFormatException.class, InvalidEmailFormatException::new);
+            rethrow(e, EmailAlreadyExistsException.class, EmailAlreadyExistsException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public void deleteUser(int userID) throws UserNotFoundException, UserHasLoansException {
+        try {
+            call("deleteUser", args("userID", userID));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            rethrow(e, UserHasLoansException.class, UserHasLoansException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public void loanBook(int userID, String isbn) throws UserNotFoundException, NoCopyAvailableException {
+        try {
+            call("loanBook", args("userID", userID, "isbn", isbn));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            rethrow(e, NoCopyAvailableException.class, NoCopyAvailableException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public CheckoutResult checkoutBasket(int userID, List<String> isbns) throws UserNotFoundException {
+        try {
+            return LibraryJson.toCheckout(LibraryJson.asObject(call("checkoutBasket", args("userID", userID, "isbns", isbns))));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public ReturnResult returnCopies(List<Integer> copyIDs) {
+        return LibraryJson.toReturn(LibraryJson.asObject(call("returnCopies", args("copyIDs", copyIDs))));
+    }
+
+    @Override
+    public void returnBook(int userID, String isbn) throws Exception {
+        try {
+            call("returnBook", args("userID", userID, "isbn", isbn));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            rethrow(e, NoCopyForTheBookException.class, NoCopyForTheBookException::new);
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    @Override
+    public RenewalResult renewLoan(int userID, String isbn) throws Exception {
+        try {
+            return LibraryJson.toRenewal(LibraryJson.asObject(call("renewLoan", args("userID", userID, "isbn", isbn))));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    @Override
+    public RenewalResult renewUserLoans(int userID) throws UserNotFoundException {
+        try {
+            return LibraryJson.toRenewal(LibraryJson.asObject(call("renewUserLoans", args("userID", userID))));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public RenewalResult renewLoansDueBefore(LocalDate lastDueDate) {
+        return LibraryJson.toRenewal(LibraryJson.asObject(call("renewLoansDueBefore", args("lastDueDate", lastDueDate))));
+    }
+
+    @Override
+    public int generateOverdueNotices() {
+        return ((Number) call("generateOverdueNotices", args())).intValue();
+    }
+
+    @Override
+    public String viewLoans(boolean onlyCurrentlyLoaned, boolean onlyOverdueLoans) {
+        return (String) call("viewLoans", args("onlyCurrentlyLoaned", onlyCurrentlyLoaned, "onlyOverdueLoans", onlyOverdueLoans));
+    }
+
+    @Override
+    public LoanPage listLoans(LoanFilter filter, String cursor, int pageSize) {
+        return LibraryJson.toPage(LibraryJson.asObject(call("listLoans",
+                args("filter", filter.name(), "cursor", cursor, "pageSize", pageSize))));
+    }
+
+    @Override
+    public LoanPage listUserLoans(int userID, String cursor, int pageSize) {
+        return LibraryJson.toPage(LibraryJson.asObject(call("listUserLoans",
+                args("userID", userID, "cursor", cursor, "pageSize", pageSize))));
+    }
+
+    @Override
+    public PatronProfile getPatronProfile(int userID) throws UserNotFoundException {
+        try {
+            return LibraryJson.toProfile(LibraryJson.asObject(call("getPatronProfile", args("userID", userID))));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean userExists(int userID) {
+        return Boolean.TRUE.equals(call("userExists", args("userID", userID)));
+    }
+
+    @Override
+    public int getCopiesAvailable(String isbn) {
+        return ((Number) call("getCopiesAvailable", args("isbn", isbn))).intValue();
+    }
+
+    @Override
+    public boolean isbnExistsInBNF(String isbn) {
+        return Boolean.TRUE.equals(call("isbnExistsInBNF", args("isbn", isbn)));
+    }
+
+    @Override
+    public User searchUser(int userID) throws UserNotFoundException {
+        try {
+            return LibraryJson.toUser(LibraryJson.asObject(call("searchUserByID", args("userID", userID))));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public User searchUser(String email) throws UserNotFoundException {
+        try {
+            return LibraryJson.toUser(LibraryJson.asObject(call("searchUserByEmail", args("email", email))));
+        } catch (RemoteException e) {
+            rethrow(e, UserNotFoundException.class, UserNotFoundException::new);
+            throw e;
+        }
+    }
+
+    @Override
+    public SearchResult<BookApi> searchBook(String searchTerm, String searchType) throws BookNotFoundException {
+        try {
+            return LibraryJson.toBooks(LibraryJson.asObject(call("searchBook",
+                    args("searchTerm", searchTerm, "searchType", searchType))));
+        } catch (RemoteException e) {
+            rethrow(e, BookNotFoundException.class, BookNotFoundException::new);
+            throw e;
+        }
+    }
+
+    /**
+     * Searches for a book in the local holdings and in the BNF catalogue at the same time.
+     * The hits come back from the server all at once, so they are passed to the callback after the search.
+     */
+    @Override
+    public SearchResult<CatalogHit> federatedSearch(String searchTerm, String searchType, Consumer<CatalogHit> onHit) throws BookNotFoundException {
+        SearchResult<CatalogHit> result;
+        try {
+            result = LibraryJson.toHits(LibraryJson.asObject(call("federatedSearch",
+                    args("searchTerm", searchTerm, "searchType", searchType))));
+        } catch (RemoteException e) {
+            rethrow(e, BookNotFoundException.class, BookNotFoundException::new);
+            throw e;
+        }
+        result.getRecords().forEach(onHit);
+        return result;
+    }
+
+    @Override
+    public String mostLoanedBooksLast30d() {
+        return (String) call("mostLoanedBooksLast30d", args());
+    }
+
+    @Override
+    public String circulationReport(LocalDate from, LocalDate to, ReportPeriod period) {
+        return (String) call("circulationReport", args("from", from, "to", to, "period", period.name()));
+    }
+
+    @Override
+    public String analyticsReport(int year) {
+        return (String) call("analyticsReport", args("year", year));
+    }
+
+    /**
+     * Exports a report of the server to a local file.
+     * The server streams the rows as JSON arrays, which are encoded in the format of the file as they arrive.
+     */
+    @Override
+    public ImportResult importUsers(Path csv, Path errorReport, LongConsumer progress) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("api/import-users"))
+                .header("Content-Type", "text/csv; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofFile(csv))
+                .build();
+        HttpResponse<String> response = send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        Map<String, Object> body = Json.parseObject(response.body());
+        if (response.statusCode() != 200) {
+            throw new IOException(LibraryJson.getString(body, "error"));
+        }
+        Map<String, Object> result = LibraryJson.getObject(body, "result");
+        Files.writeString(errorReport, LibraryJson.getString(result, "errorReport"), StandardCharsets.UTF_8);
+        ImportResult imported = LibraryJson.toImport(result);
+        progress.accept(imported.getRowsRead());
+        return imported;
+    }
+
+    @Override
+    public long exportReport(ExportReport report, Path file, RowEncoder encoder, LongConsumer progress,
+            BooleanSupplier cancelled) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("api/export?report="
+                + URLEncoder.encode(report.name(), StandardCharsets.UTF_8))).GET().build();
+        HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long rows = 0;
+        boolean completed = false;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8));
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 1 << 16)) {
+            if (response.statusCode() != 200) {
+                Map<String, Object> error = Json.parseObject(in.readLine());
+                throw new IOException(LibraryJson.getString(error, "error"));
+            }
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("The server sent no report");
+            }
+            List<Object> header = LibraryJson.asList(Json.parse(line));
+            encoder.writeHeader(out, header.toArray(new String[0]));
+            Object[] values = new Object[header.size()];
+            while ((line = in.readLine()) != null) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("Export cancelled after " + rows + " rows");
+                }
+                List<Object> row = LibraryJson.asList(Json.parse(line));
+                encoder.writeRow(out, row.toArray(values));
+                rows++;
+                if (rows % ReportExporter.PROGRESS_INTERVAL == 0) {
+                    progress.accept(rows);
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(file);
+            }
+        }
+        progress.accept(rows);
+        return rows;
+    }
+
+    /**
+     * Calls an operation of the server.
+     *
+     * @param operation The name of the operation.
+     * @param args      The arguments of the operation.
+     * @return The result of the operation, as a JSON value.
+     * @throws RemoteException if the operation failed on the server.
+     * @throws IllegalArgumentException if the server refused the arguments.
+     * @throws UncheckedIOException if the server cannot be reached.
+     */
+    private Object call(String operation, Map<String, Object> args) {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("api/" + operation))
+                .header("Content-Type", "application/json; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(Json.write(args), StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, Object> body = Json.parseObject(response.body());
+        if (response.statusCode() != 200) {
+            String type = LibraryJson.getString(body, "type");
+            String message = LibraryJson.getString(body, "error");
+            if (IllegalArgumentException.class.getSimpleName().equals(type)) {
+                throw new IllegalArgumentException(message);
+            }
+            throw new RemoteException(type, message);
+        }
+        return body.get("result");
+    }
+
+    /**
+     * Sends a request to the server.
+     *
+     * @param request The request.
+     * @param handler The reader of the response.
+     * @param <T>     The type of the body of the response.
+     * @return The response.
+     * @throws IOException if the server cannot be reached.
+     */
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the server", e);
+        }
+    }
+
+    /**
+     * Builds the arguments of an operation.
+     *
+     * @param keysAndValues The names of the arguments, each followed by its value.
+     * @return The arguments.
+     */
+    private static Map<String, Object> args(Object... keysAndValues) {
+        Map<String, Object> args = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            args.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return args;
+    }
+
+    /**
+     * Throws again the exception of an operation of the server if it has the given type.
+     *
+     * @param e       The failure of the operation.
+     * @param type    The type of the exception.
+     * @param factory Builds the exception from its message.
+     * @param <E>     The type of the exception.
+     * @throws E if the operation failed with this type of exception.
+     */
+    private static <E extends Exception> void rethrow(RemoteException e, Class<E> type, Function<String, E> factory) throws E {
+        if (type.getSimpleName().equals(e.getType())) {
+            throw factory.apply(e.getMessage());
+        }
+    }
+
+    /**
+     * The failure of an operation on the server, with the type of its exception.
+     */
+    private static class RemoteException extends RuntimeException {
+        private final String type;
+
+        /**
+         * Constructs a failure.
+         *
+         * @param type    The simple name of the type of the exception on the server.
+         * @param message The message of the exception.
+         */
+        private RemoteException(String type, String message) {
+            super(message);
+            this.type = type;
+        }
+
+        /**
+         * Gets the simple name of the type of the exception on the server.
+         *
+         * @return The name of the type.
+         */
+        private String getType() {
+            return type;
+        }
+    }
+}
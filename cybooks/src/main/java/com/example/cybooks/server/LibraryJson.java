@@ -0,0 +1,557 @@
+package com.example.cybooks.server;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.cybooks.model.BookApi;
+import com.example.cybooks.model.CatalogHit;
+import com.example.cybooks.model.CheckoutResult;
+import com.example.cybooks.model.ImportResult;
+import com.example.cybooks.model.Loan;
+import com.example.cybooks.model.LoanPage;
+import com.example.cybooks.model.PatronProfile;
+import com.example.cybooks.model.RenewalResult;
+import com.example.cybooks.model.ReturnResult;
+import com.example.cybooks.model.SearchResult;
+import com.example.cybooks.model.User;
+
+/**
+ * Converts the objects exchanged by the library server and its clients to and from JSON values.
+ * Objects are converted to maps written by {@link com.example.cybooks.utils.Json}, and read back from the maps it parses.
+ */
+final class LibraryJson {
+    private LibraryJson() {
+    }
+
+    /**
+     * Converts a user to JSON.
+     *
+     * @param user The user.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromUser(User user) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("userID", user.getUserID());
+        json.put("name", user.getName());
+        json.put("email", user.getEmail());
+        json.put("address", user.getAddress());
+        return json;
+    }
+
+    /**
+     * Reads a user from JSON.
+     *
+     * @param json The JSON object.
+     * @return The user.
+     */
+    static User toUser(Map<String, Object> json) {
+        return new User(getInt(json, "userID"), getString(json, "name"), getString(json, "email"), getString(json, "address"));
+    }
+
+    /**
+     * Converts a page of loans to JSON.
+     *
+     * @param page The page.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromPage(LoanPage page) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", fromItems(page.getItems()));
+        json.put("nextCursor", page.getNextCursor());
+        return json;
+    }
+
+    /**
+     * Reads a page of loans from JSON.
+     *
+     * @param json The JSON object.
+     * @return The page.
+     */
+    static LoanPage toPage(Map<String, Object> json) {
+        return new LoanPage(toItems(getList(json, "items")), getString(json, "nextCursor"));
+    }
+
+    /**
+     * Converts the profile of a patron to JSON.
+     *
+     * @param profile The profile.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromProfile(PatronProfile profile) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("user", fromUser(profile.getUser()));
+        json.put("currentLoans", fromItems(profile.getCurrentLoans()));
+        json.put("overdueCount", profile.getOverdueCount());
+        json.put("totalLoans", profile.getTotalLoans());
+        json.put("totalReturns", profile.getTotalReturns());
+        json.put("firstLoanDate", profile.getFirstLoanDate());
+        json.put("lastLoanDate", profile.getLastLoanDate());
+        json.put("fineBalance", profile.getFineBalance());
+        return json;
+    }
+
+    /**
+     * Reads the profile of a patron from JSON.
+     *
+     * @param json The JSON object.
+     * @return The profile.
+     */
+    static PatronProfile toProfile(Map<String, Object> json) {
+        return new PatronProfile(toUser(getObject(json, "user")), toItems(getList(json, "currentLoans")),
+                getInt(json, "overdueCount"), getInt(json, "totalLoans"), getInt(json, "totalReturns"),
+                getDate(json, "firstLoanDate"), getDate(json, "lastLoanDate"), getLong(json, "fineBalance"));
+    }
+
+    /**
+     * Converts the result of a renewal to JSON.
+     *
+     * @param result The result.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromRenewal(RenewalResult result) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("requested", result.getRequested());
+        json.put("renewed", result.getRenewed());
+        return json;
+    }
+
+    /**
+     * Reads the result of a renewal from JSON.
+     *
+     * @param json The JSON object.
+     * @return The result.
+     */
+    static RenewalResult toRenewal(Map<String, Object> json) {
+        return new RenewalResult(getInt(json, "requested"), getInt(json, "renewed"));
+    }
+
+    /**
+     * Converts the result of an import of users to JSON, with its error report.
+     *
+     * @param result      The result.
+     * @param errorReport The CSV error report of the import.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromImport(ImportResult result, String errorReport) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("rowsRead", result.getRowsRead());
+        json.put("imported", result.getImported());
+        json.put("rejected", result.getRejected());
+        json.put("errorReport", errorReport);
+        return json;
+    }
+
+    /**
+     * Reads the result of an import of users from JSON.
+     *
+     * @param json The JSON object.
+     * @return The result.
+     */
+    static ImportResult toImport(Map<String, Object> json) {
+        return new ImportResult(getLong(json, "rowsRead"), getLong(json, "imported"), getLong(json, "rejected"));
+    }
+
+    /**
+     * Converts the outcome of a basket checkout to JSON.
+     *
+     * @param result The outcome.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromCheckout(CheckoutResult result) {
+        List<Object> items = new ArrayList<>(result.getItems().size());
+        for (CheckoutResult.Item item : result.getItems()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("isbn", item.getIsbn());
+            json.put("status", item.getStatus().name());
+            json.put("loan", item.getLoan() != null ? fromLoan(item.getLoan()) : null);
+            items.add(json);
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", items);
+        return json;
+    }
+
+    /**
+     * Reads the outcome of a basket checkout from JSON.
+     *
+     * @param json The JSON object.
+     * @return The outcome.
+     */
+    static CheckoutResult toCheckout(Map<String, Object> json) {
+        List<CheckoutResult.Item> items = new ArrayList<>();
+        for (Object value : getList(json, "items")) {
+            Map<String, Object> itemJson = asObject(value);
+            Loan loan = itemJson.get("loan") != null ? toLoan(getObject(itemJson, "loan")) : null;
+            items.add(new CheckoutResult.Item(getString(itemJson, "isbn"),
+                    CheckoutResult.Status.valueOf(getString(itemJson, "status")), loan));
+        }
+        return new CheckoutResult(items);
+    }
+
+    /**
+     * Converts the outcome of a bulk return to JSON.
+     *
+     * @param result The outcome.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromReturn(ReturnResult result) {
+        List<Object> items = new ArrayList<>(result.getItems().size());
+        for (ReturnResult.Item item : result.getItems()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("copyID", item.getCopyID());
+            json.put("status", item.getStatus().name());
+            json.put("loan", item.getLoan() != null ? fromLoan(item.getLoan()) : null);
+            items.add(json);
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", items);
+        return json;
+    }
+
+    /**
+     * Reads the outcome of a bulk return from JSON.
+     *
+     * @param json The JSON object.
+     * @return The outcome.
+     */
+    static ReturnResult toReturn(Map<String, Object> json) {
+        List<ReturnResult.Item> items = new ArrayList<>();
+        for (Object value : getList(json, "items")) {
+            Map<String, Object> itemJson = asObject(value);
+            Loan loan = itemJson.get("loan") != null ? toLoan(getObject(itemJson, "loan")) : null;
+            items.add(new ReturnResult.Item(getInt(itemJson, "copyID"),
+                    ReturnResult.Status.valueOf(getString(itemJson, "status")), loan));
+        }
+        return new ReturnResult(items);
+    }
+
+    /**
+     * Converts the books found by a search to JSON.
+     *
+     * @param result The result of the search.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromBooks(SearchResult<BookApi> result) {
+        List<Object> records = new ArrayList<>(result.size());
+        for (BookApi book : result.getRecords()) {
+            records.add(fromBook(book));
+        }
+        return fromSearch(records, result);
+    }
+
+    /**
+     * Reads the books found by a search from JSON.
+     *
+     * @param json The JSON object.
+     * @return The result of the search.
+     */
+    static SearchResult<BookApi> toBooks(Map<String, Object> json) {
+        List<BookApi> records = new ArrayList<>();
+        for (Object record : getList(json, "records")) {
+            records.add(toBook(asObject(record)));
+        }
+        return new SearchResult<>(records, getInt(json, "totalCount"), getLong(json, "elapsedMillis"), BookApi::toString);
+    }
+
+    /**
+     * Converts the hits of a federated search to JSON.
+     *
+     * @param result The result of the search.
+     * @return The JSON object.
+     */
+    static Map<String, Object> fromHits(SearchResult<CatalogHit> result) {
+        List<Object> records = new ArrayList<>(result.size());
+        for (CatalogHit hit : result.getRecords()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("isbn", hit.getIsbn());
+            json.put("record", hit.getRecord() != null ? fromBook(hit.getRecord()) : null);
+            json.put("held", hit.isHeld());
+            json.put("copiesAvailable", hit.getCopiesAvailable());
+            json.put("totalCopies", hit.getTotalCopies());
+            records.add(json);
+        }
+        return fromSearch(records, result);
+    }
+
+    /**
+     * Reads the hits of a federated search from JSON.
+     *
+     * @param json The JSON object.
+     * @return The result of the search.
+     */
+    static SearchResult<CatalogHit> toHits(Map<String, Object> json) {
+        List<CatalogHit> records = new ArrayList<>();
+        for (Object record : getList(json, "records")) {
+            Map<String, Object> hitJson = asObject(record);
+            CatalogHit hit = new CatalogHit(getLong(hitJson, "isbn"));
+            if (hitJson.get("record") != null) {
+                hit.setRecord(toBook(getObject(hitJson, "record")));
+            }
+            if (Boolean.TRUE.equals(hitJson.get("held"))) {
+                hit.setHoldings(getInt(hitJson, "copiesAvailable"), getInt(hitJson, "totalCopies"));
+            }
+            records.add(hit);
+        }
+        return new SearchResult<>(records, getInt(json, "totalCount"), getLong(json, "elapsedMillis"), CatalogHit::toString);
+    }
+
+    /**
+     * Converts the records of a search to JSON with the totals of the search.
+     *
+     * @param records The records, already converted.
+     * @param result  The result of the search.
+     * @return The JSON object.
+     */
+    private static Map<String, Object> fromSearch(List<Object> records, SearchResult<?> result) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("records", records);
+        json.put("totalCount", result.getTotalCount());
+        json.put("elapsedMillis", result.getElapsedMillis());
+        return json;
+    }
+
+    /**
+     * Converts a book of the BNF catalogue to JSON.
+     *
+     * @param book The book.
+     * @return The JSON object.
+     */
+    private static Map<String, Object> fromBook(BookApi book) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("identifiers", book.getIdentifiers());
+        json.put("isbn", book.getIsbn());
+        json.put("title", book.getTitle());
+        json.put("authors", book.getAuthors());
+        json.put("publisher", book.getPublisher());
+        json.put("date", book.getDate());
+        json.put("descriptions", book.getDescriptions());
+        json.put("format", book.getFormat());
+        json.put("languages", book.getLanguages());
+        json.put("types", book.getTypes());
+        json.put("rights", book.getRights());
+        return json;
+    }
+
+    /**
+     * Reads a book of the BNF catalogue from JSON.
+     *
+     * @param json The JSON object.
+     * @return The book.
+     */
+    private static BookApi toBook(Map<String, Object> json) {
+        BookApi.Builder builder = BookApi.builder()
+                .isbn(getString(json, "isbn"))
+                .title(getString(json, "title"))
+                .publisher(getString(json, "publisher"))
+                .date(getString(json, "date"))
+                .format(getString(json, "format"));
+        for (Object value : getList(json, "identifiers")) {
+            builder.addIdentifier((String) value);
+        }
+        for (Object value : getList(json, "authors")) {
+            builder.addAuthor((String) value);
+        }
+        for (Object value : getList(json, "descriptions")) {
+            builder.addDescription((String) value);
+        }
+        for (Object value : getList(json, "languages")) {
+            builder.addLanguage((String) value);
+        }
+        for (Object value : getList(json, "types")) {
+            builder.addType((String) value);
+        }
+        for (Object value : getList(json, "rights")) {
+            builder.addRight((String) value);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Converts loans with their ISBN and user name to JSON.
+     *
+     * @param items The loans.
+     * @return The JSON array.
+     */
+    private static List<Object> fromItems(List<LoanPage.Item> items) {
+        List<Object> json = new ArrayList<>(items.size());
+        for (LoanPage.Item item : items) {
+            Map<String, Object> itemJson = fromLoan(item.getLoan());
+            itemJson.put("isbn", item.getIsbn());
+            itemJson.put("userName", item.getUserName());
+            json.add(itemJson);
+        }
+        return json;
+    }
+
+    /**
+     * Reads loans with their ISBN and user name from JSON.
+     *
+     * @param json The JSON array.
+     * @return The loans.
+     */
+    private static List<LoanPage.Item> toItems(List<Object> json) {
+        List<LoanPage.Item> items = new ArrayList<>(json.size());
+        for (Object value : json) {
+            Map<String, Object> itemJson = asObject(value);
+            Loan loan = toLoan(itemJson);
+            items.add(new LoanPage.Item(loan, getLong(itemJson, "isbn"), getString(itemJson, "userName")));
+        }
+        return items;
+    }
+
+    /**
+     * Converts a loan to JSON.
+     *
+     * @param loan The loan.
+     * @return The JSON object.
+     */
+    private static Map<String, Object> fromLoan(Loan loan) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("loanID", loan.getLoanID());
+        json.put("userID", loan.getUserID());
+        json.put("copyID", loan.getCopyID());
+        json.put("loanDate", loan.getLoanDate());
+        json.put("numberOfDays", loan.getNumberOfDays());
+        json.put("dueDate", loan.getDueDate());
+        json.put("returnDate", loan.getReturnDate());
+        json.put("isReturned", loan.getIsReturned());
+        return json;
+    }
+
+    /**
+     * Reads a loan from JSON.
+     *
+     * @param json The JSON object.
+     * @return The loan.
+     */
+    private static Loan toLoan(Map<String, Object> json) {
+        Loan loan = new Loan(getInt(json, "userID"), getInt(json, "copyID"));
+        loan.setLoanID(getInt(json, "loanID"));
+        loan.setLoanDate(getDate(json, "loanDate"));
+        loan.setNumberOfDays(getInt(json, "numberOfDays"));
+        loan.setDueDate(getDate(json, "dueDate"));
+        loan.setReturnDate(getDate(json, "returnDate"));
+        loan.setIsReturned(getBoolean(json, "isReturned"));
+        return loan;
+    }
+
+    /**
+     * Gets a string of a JSON object.
+     *
+     * @param json The JSON object.
+     * @param key  The key of the value.
+     * @return The string, or null if it is missing.
+     */
+    static String getString(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Gets an integer of a JSON object.
+     *
+     * @param json The JSON object.
+     * @param key  The key of the value.
+     * @return The integer.
+     * @throws IllegalArgumentException if the value is missing or not a number.
+     */
+    static int getInt(Map<String, Object> json, String key) {
+        return (int) getLong(json, key);
+    }
+
+    /**
+     * Gets a long integer of a JSON object.
+     *
+     * @param json The JSON object.
+     * @param key  The key of the value.
+     * @return The long integer.
+     * @throws IllegalArgumentException if the value is missing or not a number.
+     */
+    static long getLong(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Missing number: " + key);
+        }
+        return ((Number) value).longValue();
+    }
+
+    /**
+     * Gets a boolean of a JSON object.
+     *
+     * @param json The JSON object.
+     * @param key  The key of the value.
+     * @return The boolean, false if it is missing.
+     */
+    static boolean getBoolean(Map<String, Object> json, String key) {
+        return Boolean.TRUE.equals(json.get(key));
+    }
+
+    /**
+     * Gets a date of a JSON object, written as YYYY-MM-DD.
+     *
+     * @param json The JSON object.
+     * @param key  The key of the value.
+     * @return The date, or null if it is missing.
+     */
+    static LocalDate getDate(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        return value != null ? LocalDate.parse(value.toString()) : null;
+    }
+
+    /**
+     * Gets a nested object of a JSON object.
+     *
+     * @param json The JSON object.
+     * @param key  The key of the value.
+     * @return The nested object.
+     */
+    static Map<String, Object> getObject(Map<String, Object> json, String key) {
+        return asObject(json.get(key));
+    }
+
+    /**
+     * Gets an array of a JSON object.
+     *
+     * @param json The JSON object.
+     * @param key  The key of the value.
+     * @return The array, empty if it is missing.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> getList(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        return value instanceof List ? (List<Object>) value : List.of();
+    }
+
+    /**
+     * Casts a JSON value to an array.
+     *
+     * @param value The JSON value.
+     * @return The array.
+     * @throws IllegalArgumentException if the value is not an array.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> asList(Object value) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Expected a JSON array");
+        }
+        return (List<Object>) value;
+    }
+
+    /**
+     * Casts a JSON value to an object.
+     *
+     * @param value The JSON value.
+     * @return The object.
+     * @throws IllegalArgumentException if the value is not an object.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> asObject(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        return (Map<String, Object>) value;
+    }
+}
@@ -0,0 +1,418 @@
+package com.example.cybooks.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.cybooks.exception.BookNotFoundException;
+import com.example.cybooks.exception.EmailAlreadyExistsException;
+import com.example.cybooks.exception.InvalidEmailFormatException;
+import com.example.cybooks.exception.NoCopyAvailableException;
+import com.example.cybooks.exception.NoCopyForTheBookException;
+import com.example.cybooks.exception.UserHasLoansException;
+import com.example.cybooks.exception.UserNotFoundException;
+import com.example.cybooks.manager.LibraryManager;
+import com.example.cybooks.model.DataBase;
+import com.example.cybooks.model.ExportReport;
+import com.example.cybooks.model.ImportResult;
+import com.example.cybooks.model.LoanFilter;
+import com.example.cybooks.model.ReportPeriod;
+import com.example.cybooks.utils.Config;
+import com.example.cybooks.utils.Json;
+import com.example.cybooks.utils.RowEncoder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the operations of one library manager over HTTP, so that all the desks share its caches,
+ * its background jobs and the connection pool of its database.
+ * The requests run on a bounded pool of platform threads. Virtual threads would be pinned to their carrier
+ * inside the monitors of the JDBC driver and of the listeners writing to the database, and could then
+ * wait there for a pooled connection while the threads holding the connections have no carrier left.
+ * The server listens on the loopback address unless {@link Config#SERVER_BIND_ADDRESS} says otherwise,
+ * as the operations are not authenticated.
+ * <p>
+ * An operation is called with {@code POST /api/<operation>} and a JSON object of its arguments.
+ * The response is {@code {"result": ...}}, or {@code {"error": ..., "type": ...}} with the
+ * simple name of the exception when the operation fails.
+ * Reports are exported with {@code GET /api/export?report=<report>}, streamed as one JSON array per line:
+ * the column names first, then the values of each row.
+ * Users are imported with {@code POST /api/import-users} and a CSV body; the result holds the counts
+ * of the import and its CSV error report.
+ */
+public class LibraryServer {
+    private final LibraryManager libraryManager;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Constructs a server for the given manager.
+     *
+     * @param libraryManager The manager serving the operations, already initialized.
+     */
+    public LibraryServer(LibraryManager libraryManager) {
+        this.libraryManager = libraryManager;
+    }
+
+    /**
+     * Starts the server on an address and a port, with a bounded pool of threads for the requests.
+     *
+     * @param address The address to listen on, such as 127.0.0.1 for the local desks only.
+     * @param port    The port to listen on.
+     * @param backlog The number of connections waiting to be accepted.
+     * @param threads The number of threads handling the requests.
+     * @throws IOException if the port cannot be opened.
+     */
+    public synchronized void start(String address, int port, int backlog, int threads) throws IOException {
+        if (server != null) {
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "library-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(address), port), backlog);
+        server.createContext("/api/export", this::handleExport);
+        server.createContext("/api/import-users", this::handleImport);
+        server.createContext("/api/", this::handleOperation);
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Library server listening on " + address + ":" + port + ".");
+    }
+
+    /**
+     * Stops the server, waiting at most a second for the running requests.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * Handles the call of an operation.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be written.
+     */
+    private void handleOperation(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, new IllegalArgumentException("Operations are called with POST"));
+                return;
+            }
+            String operation = exchange.getRequestURI().getPath().substring("/api/".length());
+            Map<String, Object> response = new LinkedHashMap<>();
+            try {
+                Map<String, Object> args;
+                try (InputStream in = exchange.getRequestBody()) {
+                    String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    args = body.isBlank() ? new LinkedHashMap<>() : Json.parseObject(body);
+                }
+                response.put("result", call(operation, args));
+            } catch (Exception e) {
+                sendError(exchange, statusOf(e), e);
+                return;
+            }
+            send(exchange, 200, response);
+        }
+    }
+
+    /**
+     * Calls an operation of the manager.
+     *
+     * @param operation The name of the operation.
+     * @param args      The arguments of the operation.
+     * @return The result of the operation, as a JSON value.
+     * @throws Exception if the operation fails.
+     */
+    private Object call(String operation, Map<String, Object> args) throws Exception {
+        switch (operation) {
+            case "registerUser":
+                libraryManager.registerUser(LibraryJson.getString(args, "name"), LibraryJson.getString(args, "email"),
+                        LibraryJson.getString(args, "address"));
+                return null;
+            case "updateUser":
+                libraryManager.updateUser(LibraryJson.getInt(args, "userID"), LibraryJson.getString(args, "name"),
+                        LibraryJson.getString(args, "email"), LibraryJson.getString(args, "address"));
+                return null;
+            case "deleteUser":
+                libraryManager.deleteUser(LibraryJson.getInt(args, "userID"));
+                return null;
+            case "loanBook":
+                libraryManager.loanBook(LibraryJson.getInt(args, "userID"), LibraryJson.getString(args, "isbn"));
+                return null;
+            case "checkoutBasket": {
+                List<String> isbns = new ArrayList<>();
+                for (Object isbn : LibraryJson.getList(args, "isbns")) {
+                    isbns.add(String.valueOf(isbn));
+                }
+                return LibraryJson.fromCheckout(libraryManager.checkoutBasket(LibraryJson.getInt(args, "userID"), isbns));
+            }
+            case "returnCopies": {
+                List<Integer> copyIDs = new ArrayList<>();
+                for (Object copyID : LibraryJson.getList(args, "copyIDs")) {
+                    if (!(copyID instanceof Number)) {
+                        throw new IllegalArgumentException("Invalid copy ID: " + copyID);
+                    }
+                    copyIDs.add(((Number) copyID).intValue());
+                }
+                return LibraryJson.fromReturn(libraryManager.returnCopies(copyIDs));
+            }
+            case "returnBook":
+                libraryManager.returnBook(LibraryJson.getInt(args, "userID"), LibraryJson.getString(args, "isbn"));
+                return null;
+            case "renewLoan":
+                return LibraryJson.fromRenewal(libraryManager.renewLoan(LibraryJson.getInt(args, "userID"),
+                        LibraryJson.getString(args, "isbn")));
+            case "renewUserLoans":
+                return LibraryJson.fromRenewal(libraryManager.renewUserLoans(LibraryJson.getInt(args, "userID")));
+            case "renewLoansDueBefore":
+                return LibraryJson.fromRenewal(libraryManager.renewLoansDueBefore(LibraryJson.getDate(args, "lastDueDate")));
+            case "generateOverdueNotices":
+                return libraryManager.generateOverdueNotices();
+            case "viewLoans":
+                return libraryManager.viewLoans(LibraryJson.getBoolean(args, "onlyCurrentlyLoaned"),
+                        LibraryJson.getBoolean(args, "onlyOverdueLoans"));
+            case "listLoans":
+                return LibraryJson.fromPage(libraryManager.listLoans(LoanFilter.valueOf(LibraryJson.getString(args, "filter")),
+                        LibraryJson.getString(args, "cursor"), LibraryJson.getInt(args, "pageSize")));
+            case "listUserLoans":
+                return LibraryJson.fromPage(libraryManager.listUserLoans(LibraryJson.getInt(args, "userID"),
+                        LibraryJson.getString(args, "cursor"), LibraryJson.getInt(args, "pageSize")));
+            case "getPatronProfile":
+                return LibraryJson.fromProfile(libraryManager.getPatronProfile(LibraryJson.getInt(args, "userID")));
+            case "userExists":
+                return libraryManager.userExists(LibraryJson.getInt(args, "userID"));
+            case "getCopiesAvailable":
+                return libraryManager.getCopiesAvailable(LibraryJson.getString(args, "isbn"));
+            case "isbnExistsInBNF":
+                return libraryManager.isbnExistsInBNF(LibraryJson.getString(args, "isbn"));
+            case "searchUserByID":
+                return LibraryJson.fromUser(libraryManager.searchUser(LibraryJson.getInt(args, "userID")));
+            case "searchUserByEmail":
+                return LibraryJson.fromUser(libraryManager.searchUser(LibraryJson.getString(args, "email")));
+            case "searchBook":
+                return LibraryJson.fromBooks(libraryManager.searchBook(LibraryJson.getString(args, "searchTerm"),
+                        LibraryJson.getString(args, "searchType")));
+            case "federatedSearch":
+                return LibraryJson.fromHits(libraryManager.federatedSearch(LibraryJson.getString(args, "searchTerm"),
+                        LibraryJson.getString(args, "searchType"), hit -> { }));
+            case "mostLoanedBooksLast30d":
+                return libraryManager.mostLoanedBooksLast30d();
+            case "circulationReport":
+                return libraryManager.circulationReport(LibraryJson.getDate(args, "from"), LibraryJson.getDate(args, "to"),
+                        ReportPeriod.valueOf(LibraryJson.getString(args, "period")));
+            case "analyticsReport":
+                return libraryManager.analyticsReport(LibraryJson.getInt(args, "year"));
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    /**
+     * Handles the export of a report, streaming its rows as they are read.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be written.
+     */
+    private void handleExport(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            ExportReport report;
+            try {
+                report = ExportReport.valueOf(queryParameter(exchange, "report").toUpperCase(Locale.ROOT));
+            } catch (RuntimeException e) {
+                sendError(exchange, 400, new IllegalArgumentException("Unknown report"));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+            // A length of 0 makes the response chunked, so the rows are sent while the report is read
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                    StandardCharsets.UTF_8), 1 << 16)) {
+                libraryManager.exportReport(report, out, new ArrayLinesEncoder(), rows -> { }, () -> false);
+            } catch (IOException e) {
+                // The client went away or the report could not be read; the truncated response tells the client
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Handles the import of users, reading the CSV body as it arrives.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the response cannot be written.
+     */
+    private void handleImport(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, new IllegalArgumentException("Users are imported with POST"));
+                return;
+            }
+            StringWriter errors = new StringWriter();
+            Map<String, Object> response = new LinkedHashMap<>();
+            try (Reader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                ImportResult result = libraryManager.importUsers(in, errors, rows -> { });
+                response.put("result", LibraryJson.fromImport(result, errors.toString()));
+            } catch (Exception e) {
+                sendError(exchange, statusOf(e), e);
+                return;
+            }
+            send(exchange, 200, response);
+        }
+    }
+
+    /**
+     * Gets a parameter of the query string of a request.
+     *
+     * @param exchange The request.
+     * @param name     The name of the parameter.
+     * @return The decoded value of the parameter, or an empty string if it is missing.
+     */
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                    return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Gets the HTTP status of a failed operation.
+     *
+     * @param e The exception of the operation.
+     * @return The status.
+     */
+    private static int statusOf(Exception e) {
+        if (e instanceof UserNotFoundException || e instanceof BookNotFoundException) {
+            return 404;
+        }
+        if (e instanceof EmailAlreadyExistsException || e instanceof UserHasLoansException
+                || e instanceof NoCopyAvailableException || e instanceof NoCopyForTheBookException) {
+            return 409;
+        }
+        if (e instanceof IllegalArgumentException || e instanceof InvalidEmailFormatException) {
+            return 400;
+        }
+        return 500;
+    }
+
+    /**
+     * Sends the error of a failed operation.
+     *
+     * @param exchange The request and its response.
+     * @param status   The HTTP status.
+     * @param e        The exception of the operation.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void sendError(HttpExchange exchange, int status, Exception e) throws IOException {
+        if (status == 500) {
+            e.printStackTrace();
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", e.getMessage());
+        response.put("type", e.getClass().getSimpleName());
+        send(exchange, status, response);
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange The request and its response.
+     * @param status   The HTTP status.
+     * @param response The JSON value of the response.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void send(HttpExchange exchange, int status, Object response) throws IOException {
+        byte[] body = Json.write(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Starts the database, its connection pool, a library manager and the server, until the process is stopped.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        DataBase db = new DataBase();
+        db.startServer();
+        try {
+            db.startPool(Config.DB_POOL_SIZE);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        LibraryManager libraryManager = new LibraryManager(db);
+        libraryManager.initialize();
+        LibraryServer server = new LibraryServer(libraryManager);
+        try {
+            server.start(Config.SERVER_BIND_ADDRESS, Config.SERVER_PORT, Config.SERVER_BACKLOG, Config.SERVER_THREADS);
+        } catch (IOException e) {
+            e.printStackTrace();
+            libraryManager.shutdown();
+            db.stopServer();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            libraryManager.shutdown();
+            db.stopServer();
+        }, "library-server-shutdown"));
+    }
+
+    /**
+     * Encodes the rows of an export as JSON arrays, one per line, the column names first.
+     * The client encodes them again in the format of its file.
+     */
+    private static class ArrayLinesEncoder implements RowEncoder {
+        @Override
+        public String getExtension() {
+            return "ndjson";
+        }
+
+        @Override
+        public void writeHeader(Writer out, String[] columns) throws IOException {
+            Json.write(out, columns);
+            out.write('\n');
+        }
+
+        @Override
+        public void writeRow(Writer out, Object[] values) throws IOException {
+            Json.write(out, values);
+            out.write('\n');
+        }
+    }
+}
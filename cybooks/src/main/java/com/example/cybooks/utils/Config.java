@@ -6,4 +6,115 @@ package com.example.cybooks.utils;
 public class Config {
     /** The base URL for the BNF API. */
     public static String API_BASE_URL = "https://catalogue.bnf.fr/api/SRU?version=1.2&operation=searchRetrieve&query=";
+
+    /** The maximum number of users kept in the user cache. */
+    public static int USER_CACHE_SIZE = 10_000;
+
+    /** Whether the users with current loans are loaded in the user cache at startup. */
+    public static boolean PRELOAD_ACTIVE_USERS = true;
+
+    /** The delay between two runs of the availability reconciler, in seconds. */
+    public static long RECONCILE_INTERVAL_SECONDS = 300;
+
+    /** The number of books checked by each run of the availability reconciler. */
+    public static int RECONCILE_BATCH_SIZE = 500;
+
+    /** The number of days counted by the most loaned books report, including today. */
+    public static int POPULARITY_WINDOW_DAYS = 30;
+
+    /** The number of books shown by the most loaned books report. */
+    public static int POPULARITY_TOP_SIZE = 5;
+
+    /** The delay between two checks of the due dates of the open loans, in minutes. */
+    public static long OVERDUE_CHECK_INTERVAL_MINUTES = 60;
+
+    /** The number of loans per page of the loan listings. */
+    public static int LOAN_PAGE_SIZE = 20;
+
+    /** The number of books and patrons listed by the circulation report. */
+    public static int REPORT_TOP_SIZE = 10;
+
+    /** The precision of the distinct borrower sketches: 10 gives a standard error of 3.25% with 1 KB per sketch. */
+    public static int DISTINCT_SKETCH_PRECISION = 10;
+
+    /** The delay between two saves of the analytics sketches, in minutes. */
+    public static long ANALYTICS_SAVE_INTERVAL_MINUTES = 15;
+
+    /** The number of days after their return during which loans stay in the Loans table before being archived. */
+    public static int ARCHIVE_HORIZON_DAYS = 365;
+
+    /** The number of loans moved to the archive per transaction. */
+    public static int ARCHIVE_BATCH_SIZE = 500;
+
+    /** The pause between two archive batches, in milliseconds. */
+    public static long ARCHIVE_PAUSE_MILLIS = 200;
+
+    /** The delay between two runs of the archiver, in hours. */
+    public static long ARCHIVE_INTERVAL_HOURS = 24;
+
+    /** The fine per day of delay of a loan, in cents. */
+    public static long FINE_PER_DAY_CENTS = 20;
+
+    /** The number of loans charged per transaction by the fine accrual. */
+    public static int FINE_BATCH_SIZE = 500;
+
+    /** The delay between two runs of the fine accrual, in minutes; each loan is charged at most once per day. */
+    public static long FINE_CHECK_INTERVAL_MINUTES = 60;
+
+    /** The number of days added to the due date of a loan by a renewal. */
+    public static int RENEWAL_DAYS = 14;
+
+    /** The number of times a loan can be renewed. */
+    public static int MAX_RENEWALS = 2;
+
+    /** The fines a user can owe and still renew their loans, in cents. */
+    public static long RENEWAL_MAX_FINE_CENTS = 0;
+
+    /** The directory where the overdue notices are written, in a subdirectory per day. */
+    public static String NOTICE_OUTBOX_DIR = "outbox";
+
+    /** The number of threads rendering the overdue notices. */
+    public static int NOTICE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** The number of overdue notices waiting to be rendered before the reading of the loans slows down. */
+    public static int NOTICE_QUEUE_SIZE = 256;
+
+    /** The number of overdue notices written between two saves of the checkpoint. */
+    public static int NOTICE_CHECKPOINT_INTERVAL = 100;
+
+    /** The hour of the nightly run of the overdue notices, from 0 to 23. */
+    public static int NOTICE_HOUR = 2;
+
+    /** The address of the library server used by the desks, such as http://localhost:8080; empty to work on the database directly. */
+    public static String SERVER_URL = System.getProperty("cybooks.server", "");
+
+    /** The port of the library server. */
+    public static int SERVER_PORT = 8080;
+
+    /** The address the library server listens on; the loopback by default, as the server has no authentication. */
+    public static String SERVER_BIND_ADDRESS = System.getProperty("cybooks.server.bind", "127.0.0.1");
+
+    /** The number of threads of the library server, the most requests handled at once. */
+    public static int SERVER_THREADS = 64;
+
+    /** The number of connections waiting to be accepted by the library server. */
+    public static int SERVER_BACKLOG = 512;
+
+    /** The number of database connections shared by the requests of the library server. */
+    public static int DB_POOL_SIZE = 16;
+
+    /** The longest time the JavaFX thread can go without processing its events before a stall is reported, in milliseconds. */
+    public static long FX_STALL_THRESHOLD_MILLIS = 50;
+
+    /** The delay between two checks of the JavaFX thread by the stall monitor, in milliseconds. */
+    public static long FX_STALL_CHECK_MILLIS = 10;
+
+    /** The number of locks serializing the loans and returns of the same book or user; a power of two. */
+    public static int LOCK_STRIPES = 256;
+
+    /** The largest number of copies returned with one query and one update by a bulk return. */
+    public static int RETURN_BATCH_SIZE = 500;
+
+    /** The number of users registered per statement and per transaction by an import from CSV. */
+    public static int IMPORT_BATCH_SIZE = 1000;
 }
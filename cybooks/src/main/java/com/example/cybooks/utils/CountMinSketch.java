@@ -0,0 +1,184 @@
+package com.example.cybooks.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how many times each key was added, in constant memory, and keeps the most frequent keys.
+ * With a width w and a depth d, an estimate never undercounts, and overcounts by more than
+ * e / w times the total count with a probability of at most e^-d. The default of 2719 x 5 counters
+ * (54 KB) overcounts by more than 0.1% of the total in less than 1% of the estimates.
+ * The heavy hitters are the keys with the highest estimates seen when they were added,
+ * so a key is only missed if its count is close to the smallest count of the list.
+ * Two sketches of the same dimensions can be merged. This class is not thread-safe.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final int[][] counts;
+    private final int heavyHitterCount;
+    private final Map<Long, Long> heavyHitters = new HashMap<>();
+    private long total;
+
+    /**
+     * Constructs an empty sketch.
+     *
+     * @param width            The number of counters per row; the error is about e / width of the total.
+     * @param depth            The number of rows; the error bound fails with a probability of about e^-depth.
+     * @param heavyHitterCount The number of most frequent keys to keep.
+     */
+    public CountMinSketch(int width, int depth, int heavyHitterCount) {
+        this.width = width;
+        this.depth = depth;
+        this.counts = new int[depth][width];
+        this.heavyHitterCount = heavyHitterCount;
+    }
+
+    /**
+     * Counts one occurrence of a key.
+     *
+     * @param key The key, such as an ISBN.
+     */
+    public void add(long key) {
+        long hash = HyperLogLog.hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = Math.floorMod(h1 + row * h2, width);
+            estimate = Math.min(estimate, ++counts[row][column]);
+        }
+        total++;
+        offerHeavyHitter(key, estimate);
+    }
+
+    /**
+     * Estimates how many times a key was added.
+     *
+     * @param key The key.
+     * @return The estimated count, which is never lower than the real count.
+     */
+    public long estimate(long key) {
+        long hash = HyperLogLog.hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row][Math.floorMod(h1 + row * h2, width)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Gets the most frequent keys, most frequent first.
+     *
+     * @param limit The maximum number of keys.
+     * @return The keys with their estimated counts.
+     */
+    public List<Map.Entry<Long, Long>> getHeavyHitters(int limit) {
+        List<Map.Entry<Long, Long>> result = new ArrayList<>(heavyHitters.entrySet());
+        result.sort(Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Gets the number of keys added.
+     *
+     * @return The total count.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Adds the counts of another sketch to this one.
+     *
+     * @param other The sketch to merge, which must have the same width and depth.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge sketches of different dimensions");
+        }
+        for (int row = 0; row < depth; row++) {
+            for (int column = 0; column < width; column++) {
+                counts[row][column] += other.counts[row][column];
+            }
+        }
+        total += other.total;
+        List<Long> candidates = new ArrayList<>(heavyHitters.keySet());
+        candidates.addAll(other.heavyHitters.keySet());
+        heavyHitters.clear();
+        for (long key : candidates) {
+            offerHeavyHitter(key, estimate(key));
+        }
+    }
+
+    /**
+     * Serializes the sketch: its dimensions, total, counters and heavy hitters.
+     *
+     * @return The serialized sketch.
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(24 + 4 * width * depth + 16 * heavyHitters.size());
+        buffer.putInt(width).putInt(depth).putInt(heavyHitterCount).putLong(total);
+        for (int[] row : counts) {
+            for (int count : row) {
+                buffer.putInt(count);
+            }
+        }
+        buffer.putInt(heavyHitters.size());
+        for (Map.Entry<Long, Long> entry : heavyHitters.entrySet()) {
+            buffer.putLong(entry.getKey()).putLong(entry.getValue());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads a sketch serialized by {@link #toBytes()}.
+     *
+     * @param bytes The serialized sketch.
+     * @return The sketch.
+     */
+    public static CountMinSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CountMinSketch sketch = new CountMinSketch(buffer.getInt(), buffer.getInt(), buffer.getInt());
+        sketch.total = buffer.getLong();
+        for (int[] row : sketch.counts) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = buffer.getInt();
+            }
+        }
+        int hitters = buffer.getInt();
+        for (int i = 0; i < hitters; i++) {
+            sketch.heavyHitters.put(buffer.getLong(), buffer.getLong());
+        }
+        return sketch;
+    }
+
+    /**
+     * Updates the heavy hitters with the new estimate of a key, evicting the least frequent key if the list is full.
+     *
+     * @param key      The key.
+     * @param estimate The estimated count of the key.
+     */
+    private void offerHeavyHitter(long key, long estimate) {
+        if (heavyHitters.containsKey(key) || heavyHitters.size() < heavyHitterCount) {
+            heavyHitters.put(key, estimate);
+            return;
+        }
+        Map.Entry<Long, Long> smallest = null;
+        for (Map.Entry<Long, Long> entry : heavyHitters.entrySet()) {
+            if (smallest == null || entry.getValue() < smallest.getValue()) {
+                smallest = entry;
+            }
+        }
+        if (smallest != null && estimate > smallest.getValue()) {
+            heavyHitters.remove(smallest.getKey());
+            heavyHitters.put(key, estimate);
+        }
+    }
+}
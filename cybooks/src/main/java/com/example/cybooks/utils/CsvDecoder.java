@@ -0,0 +1,143 @@
+package com.example.cybooks.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads rows of CSV (RFC 4180) one at a time, the counterpart of {@link CsvEncoder}.
+ * Quoted values can contain commas, doubled quotes and line breaks.
+ * The input is read through a buffer of its own, so it does not need to be buffered.
+ */
+public class CsvDecoder {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long line = 1;
+    private long rowLine;
+    private final StringBuilder value = new StringBuilder();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * Constructs a decoder reading the given input.
+     *
+     * @param in The input.
+     */
+    public CsvDecoder(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next row.
+     *
+     * @return The values of the row, or null at the end of the input.
+     * @throws IOException if the input cannot be read.
+     */
+    public String[] readRow() throws IOException {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        rowLine = line;
+        values.clear();
+        value.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted value in the row of line " + rowLine);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        value.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    value.append((char) c);
+                }
+            } else if (c == '"' && value.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (c != -1) {
+                    line++;
+                }
+                values.add(value.toString());
+                return values.toArray(new String[0]);
+            } else {
+                value.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Gets the line of the input where the last row read starts, counting from 1.
+     *
+     * @return The line number.
+     */
+    public long getRowLine() {
+        return rowLine;
+    }
+
+    /**
+     * Reads the next character.
+     *
+     * @return The character, or -1 at the end of the input.
+     * @throws IOException if the input cannot be read.
+     */
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Gets the next character without reading it.
+     *
+     * @return The character, or -1 at the end of the input.
+     * @throws IOException if the input cannot be read.
+     */
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Fills the buffer from the input.
+     *
+     * @return False at the end of the input.
+     * @throws IOException if the input cannot be read.
+     */
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.cybooks.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Encodes rows as CSV (RFC 4180): comma-separated values with a header line,
+ * where values containing a comma, a quote or a line break are quoted.
+ */
+public class CsvEncoder implements RowEncoder {
+    @Override
+    public String getExtension() {
+        return "csv";
+    }
+
+    @Override
+    public void writeHeader(Writer out, String[] columns) throws IOException {
+        writeRow(out, columns);
+    }
+
+    @Override
+    public void writeRow(Writer out, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            if (values[i] != null) {
+                writeValue(out, values[i].toString());
+            }
+        }
+        out.write("\r\n");
+    }
+
+    /**
+     * Writes a value, quoted if needed.
+     *
+     * @param out   The output.
+     * @param value The value.
+     * @throws IOException if the output cannot be written.
+     */
+    private static void writeValue(Writer out, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.cybooks.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct values added to it, in constant memory.
+ * With a precision p, the sketch uses 2^p one-byte registers and its standard error is about 1.04 / sqrt(2^p):
+ * 3.25% for p = 10 (1 KB), 1.63% for p = 12 (4 KB). Small cardinalities are counted with linear counting,
+ * which is nearly exact below a few hundred values.
+ * A new sketch only keeps the registers that are set, and switches to the full array of registers once
+ * more than 2^p / 8 of them are set, so the many sketches of small sets, such as the borrowers of one book,
+ * take a few bytes instead of 2^p. Both forms give the same estimates.
+ * Two sketches of the same precision can be merged, which gives the sketch of the union of their values.
+ * This class is not thread-safe.
+ */
+public class HyperLogLog {
+    private final int precision;
+    // The registers set while the sketch is sparse, as index << 8 | rank sorted by index
+    private int[] sparse = new int[4];
+    private int sparseSize;
+    // All the registers once the sketch is dense, null before
+    private byte[] registers;
+
+    /**
+     * Constructs an empty sketch.
+     *
+     * @param precision The number of bits used to choose a register, between 4 and 16.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16: " + precision);
+        }
+        this.precision = precision;
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value The value, such as a user ID.
+     */
+    public void add(long value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - precision));
+        // The rank is the position of the first 1 bit in the remaining bits
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        setRegister(index, rank);
+    }
+
+    /**
+     * Estimates the number of distinct values added to the sketch.
+     *
+     * @return The estimated cardinality.
+     */
+    public long estimate() {
+        int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+        if (registers == null) {
+            // The registers that are not set are zeros
+            zeros = m - sparseSize;
+            sum = zeros;
+            for (int i = 0; i < sparseSize; i++) {
+                sum += 1.0 / (1L << (sparse[i] & 0xFF));
+            }
+        } else {
+            for (byte register : registers) {
+                sum += 1.0 / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds the values of another sketch to this one.
+     *
+     * @param other The sketch to merge, which must have the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches of precision " + precision + " and " + other.precision);
+        }
+        if (other.registers == null) {
+            for (int i = 0; i < other.sparseSize; i++) {
+                setRegister(other.sparse[i] >>> 8, other.sparse[i] & 0xFF);
+            }
+            return;
+        }
+        if (registers == null) {
+            toDense();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the precision of the sketch.
+     *
+     * @return The precision.
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Serializes the sketch: one byte for the precision followed by the registers,
+     * or while the sketch is sparse, the precision with its high bit set followed by
+     * the index (two bytes) and the rank (one byte) of each register set.
+     *
+     * @return The serialized sketch.
+     */
+    public byte[] toBytes() {
+        if (registers == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + 3 * sparseSize);
+            buffer.put((byte) (precision | 0x80));
+            for (int i = 0; i < sparseSize; i++) {
+                buffer.putShort((short) (sparse[i] >>> 8));
+                buffer.put((byte) sparse[i]);
+            }
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 + registers.length);
+        buffer.put((byte) precision);
+        buffer.put(registers);
+        return buffer.array();
+    }
+
+    /**
+     * Reads a sketch serialized by {@link #toBytes()}.
+     *
+     * @param bytes The serialized sketch.
+     * @return The sketch.
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog(bytes[0] & 0x7F);
+        if ((bytes[0] & 0x80) != 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            while (buffer.remaining() >= 3) {
+                int index = buffer.getShort() & 0xFFFF;
+                sketch.setRegister(index, buffer.get() & 0xFF);
+            }
+            return sketch;
+        }
+        sketch.toDense();
+        System.arraycopy(bytes, 1, sketch.registers, 0, sketch.registers.length);
+        return sketch;
+    }
+
+    /**
+     * Raises a register to a rank, if it is lower.
+     * A sparse sketch becomes dense when one more register than its limit is set.
+     *
+     * @param index The index of the register.
+     * @param rank  The rank, at least 1.
+     */
+    private void setRegister(int index, int rank) {
+        if (registers != null) {
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+            }
+            return;
+        }
+        int position = Arrays.binarySearch(sparse, 0, sparseSize, index << 8);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        if (position < sparseSize && sparse[position] >>> 8 == index) {
+            if (rank > (sparse[position] & 0xFF)) {
+                sparse[position] = index << 8 | rank;
+            }
+            return;
+        }
+        if (sparseSize == (1 << precision) / 8) {
+            toDense();
+            registers[index] = (byte) rank;
+            return;
+        }
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, sparseSize * 2);
+        }
+        System.arraycopy(sparse, position, sparse, position + 1, sparseSize - position);
+        sparse[position] = index << 8 | rank;
+        sparseSize++;
+    }
+
+    /**
+     * Switches the sketch to the full array of registers.
+     */
+    private void toDense() {
+        registers = new byte[1 << precision];
+        for (int i = 0; i < sparseSize; i++) {
+            registers[sparse[i] >>> 8] = (byte) sparse[i];
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    /**
+     * Hashes a value with the 64-bit finalizer of MurmurHash3, which spreads consecutive IDs over all the bits.
+     *
+     * @param value The value.
+     * @return The hash of the value.
+     */
+    public static long hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.cybooks.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A utility class that deduplicates strings which repeat across many records,
+ * such as publishers, languages, types and rights of BNF records.
+ * Unlike {@link String#intern()}, the pool is bounded and lives on the regular heap.
+ * The pool never evicts, so only values drawn from a small vocabulary should be interned;
+ * values that rarely repeat, such as authors or dates, would fill it and keep the vocabulary out.
+ */
+public class Interner {
+    /** The shared pool used for the vocabulary of catalogue records. */
+    public static final Interner VOCABULARY = new Interner(50_000);
+
+    private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * Constructs an interner holding at most the given number of distinct strings.
+     *
+     * @param maxSize The maximum number of strings kept in the pool.
+     */
+    public Interner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the canonical instance of the given string.
+     * Once the pool is full, strings that are not already in it are returned as is.
+     *
+     * @param value The string to deduplicate, may be null.
+     * @return The canonical instance of the string, or null if the string is null.
+     */
+    public String intern(String value) {
+        if (value == null || value.isEmpty()) {
+            return value == null ? null : "";
+        }
+        String canonical = pool.get(value);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (pool.size() >= maxSize) {
+            return value;
+        }
+        canonical = pool.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
+
+    /**
+     * Gets the number of distinct strings in the pool.
+     *
+     * @return The size of the pool.
+     */
+    public int size() {
+        return pool.size();
+    }
+}
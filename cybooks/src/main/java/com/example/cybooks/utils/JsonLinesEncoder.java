@@ -0,0 +1,82 @@
+package com.example.cybooks.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Encodes rows as JSON Lines: one JSON object per line, keyed by column name.
+ * Numbers and booleans are written as JSON values, everything else as strings.
+ */
+public class JsonLinesEncoder implements RowEncoder {
+    private String[] columns;
+
+    @Override
+    public String getExtension() {
+        return "jsonl";
+    }
+
+    @Override
+    public void writeHeader(Writer out, String[] columns) throws IOException {
+        this.columns = columns;
+    }
+
+    @Override
+    public void writeRow(Writer out, Object[] values) throws IOException {
+        out.write('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeString(out, columns[i]);
+            out.write(':');
+            Object value = values[i];
+            if (value == null) {
+                out.write("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                out.write(value.toString());
+            } else {
+                writeString(out, value.toString());
+            }
+        }
+        out.write("}\n");
+    }
+
+    /**
+     * Writes a JSON string, escaping quotes, backslashes and control characters.
+     *
+     * @param out   The output.
+     * @param value The string.
+     * @throws IOException if the output cannot be written.
+     */
+    public static void writeString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+                    break;
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.cybooks.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Encodes the rows of a report to a text format, one row at a time.
+ * An encoder keeps no row in memory, so reports of any size can be written with constant memory.
+ */
+public interface RowEncoder {
+    /**
+     * Gets the usual file extension of the format, without the dot.
+     *
+     * @return The file extension.
+     */
+    String getExtension();
+
+    /**
+     * Writes what comes before the first row, such as a header line.
+     *
+     * @param out     The output.
+     * @param columns The names of the columns.
+     * @throws IOException if the output cannot be written.
+     */
+    void writeHeader(Writer out, String[] columns) throws IOException;
+
+    /**
+     * Writes one row.
+     *
+     * @param out    The output.
+     * @param values The values of the row, in the order of the columns; a value can be null.
+     * @throws IOException if the output cannot be written.
+     */
+    void writeRow(Writer out, Object[] values) throws IOException;
+
+    /**
+     * Gets the encoder of a format.
+     *
+     * @param format The name of the format: csv or jsonl.
+     * @return The encoder of the format.
+     * @throws IllegalArgumentException if the format is unknown.
+     */
+    static RowEncoder forFormat(String format) {
+        switch (format.trim().toLowerCase(Locale.ROOT)) {
+            case "csv":
+                return new CsvEncoder();
+            case "jsonl":
+            case "json":
+                return new JsonLinesEncoder();
+            default:
+                throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+    }
+}
@@ -3,6 +3,7 @@ module com.example.cybooks {
     requires javafx.fxml;
     requires java.sql;
     requires java.net.http;
+    requires jdk.httpserver;
 
     opens com.example.cybooks.gui to javafx.graphics;   
     exports com.example.cybooks.gui;
@@ -0,0 +1,120 @@
+package com.example.cybooks.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Stress tests of the striped locks: many threads loan and return overlapping sets of books
+ * for overlapping users against a copy counter that only the locks protect.
+ */
+class StripedLocksTest {
+    private static final int THREADS = 32;
+    private static final int OPERATIONS = 20_000;
+    private static final int BOOKS = 64;
+    private static final int USERS = 48;
+    private static final int COPIES = 2;
+
+    /**
+     * Checks that no copy is loaned twice, that the counters are never left inconsistent,
+     * and that the operations always finish, even when they lock several users and books in any order.
+     *
+     * @throws Exception if a thread fails.
+     */
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void overlappingLoansAndReturnsNeverLendTwiceNorDeadlock() throws Exception {
+        // Few stripes, so that different keys often share a lock
+        StripedLocks locks = new StripedLocks(16);
+        // Plain arrays: only the locks keep them consistent
+        int[] available = new int[BOOKS];
+        int[][] loans = new int[USERS][BOOKS];
+        AtomicInteger[] inside = new AtomicInteger[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            available[i] = COPIES;
+            inside[i] = new AtomicInteger();
+        }
+        AtomicInteger violations = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < OPERATIONS; n++) {
+                    int[] users = { random.nextInt(USERS), random.nextInt(USERS) };
+                    long[] books = new long[1 + random.nextInt(4)];
+                    for (int i = 0; i < books.length; i++) {
+                        books[i] = random.nextInt(BOOKS);
+                    }
+                    StripedLocks.Held held = random.nextBoolean()
+                            ? locks.lockUserAndBooks(users[0], books)
+                            : locks.lockUsersAndBooks(users, books);
+                    try {
+                        for (long key : books) {
+                            int book = (int) key;
+                            if (inside[book].incrementAndGet() != 1) {
+                                violations.incrementAndGet();
+                            }
+                            int user = users[0];
+                            if (loans[user][book] > 0 && random.nextBoolean()) {
+                                loans[user][book]--;
+                                available[book]++;
+                            } else if (available[book] > 0) {
+                                int before = available[book];
+                                Thread.yield();
+                                available[book] = before - 1;
+                                loans[user][book]++;
+                            }
+                            if (available[book] < 0 || available[book] > COPIES) {
+                                violations.incrementAndGet();
+                            }
+                            inside[book].decrementAndGet();
+                        }
+                    } finally {
+                        held.unlock();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, violations.get(), "operations on the same book overlapped");
+        for (int book = 0; book < BOOKS; book++) {
+            int loaned = 0;
+            for (int user = 0; user < USERS; user++) {
+                loaned += loans[user][book];
+            }
+            assertEquals(COPIES, available[book] + loaned, "copies of book " + book + " lost or lent twice");
+        }
+    }
+
+    /**
+     * Checks that the same key given several times is locked once, so the operation does not wait for itself.
+     */
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    void repeatedKeysAreLockedOnce() {
+        StripedLocks locks = new StripedLocks(4);
+        StripedLocks.Held held = locks.lockUsersAndBooks(new int[] { 7, 7 }, new long[] { 3, 3, 3 });
+        held.unlock();
+        // Another thread can take the same locks once they are released
+        StripedLocks.Held again = locks.lockUserAndBooks(7, 3);
+        again.unlock();
+    }
+}